@@ -2,6 +2,7 @@ package com.dreamcloud.esa;
 
 import com.dreamcloud.esa.documentPreprocessor.DocumentPreprocessor;
 import com.dreamcloud.esa.vectorizer.PruneOptions;
+import com.dreamcloud.esa.vectorizer.VectorCache;
 import org.apache.lucene.analysis.Analyzer;
 
 import java.io.IOException;
@@ -20,6 +21,7 @@ public class EsaOptions {
     public SourceOptions sourceOptions;
     public String tfIdfQueryMode;
     public String tfIdfDocumentMode;
+    public VectorCache vectorCache;
 
     public void displayInfo() throws IOException {
         System.out.println("ESA options:");
@@ -6,6 +6,7 @@ import java.text.NumberFormat;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import com.dreamcloud.esa.analyzer.*;
 import com.dreamcloud.esa.annoatation.*;
@@ -117,10 +118,14 @@ public class Main {
         threadCountOption.setRequired(false);
         options.addOption(threadCountOption);
 
-        Option batchSizeOption = new Option(null, "batch-size", true, "int / (indexing)\tThe number of documents to process at once, distributed across the threads.");
+        Option batchSizeOption = new Option(null, "batch-size", true, "int / (indexing)\tThe number of documents queued per thread ahead of the workers.");
         batchSizeOption.setRequired(false);
         options.addOption(batchSizeOption);
 
+        Option singlePassOption = new Option(null, "single-pass", false, "(indexing)\tCount document frequencies while writing scores instead of in a separate pass (holds the term frequencies in memory).");
+        singlePassOption.setRequired(false);
+        options.addOption(singlePassOption);
+
         Option maximumDocumentCountOption = new Option(null, "max-docs", true, "int / (indexing)\tThe maximum number of documents we can process before throwing an error (defaults to 512,000).");
         maximumDocumentCountOption.setRequired(false);
         options.addOption(maximumDocumentCountOption);
@@ -148,6 +153,24 @@ public class Main {
         limitOption.setRequired(false);
         options.addOption(limitOption);
 
+        Option earlyTerminationOption = new Option(null, "early-termination", false, "/ With --vector-limit, stops scoring the postings of short texts once their top concepts are certain. The vectors are the same.");
+        earlyTerminationOption.setRequired(false);
+        options.addOption(earlyTerminationOption);
+
+        Option scoreCacheOption = new Option(null, "score-cache", true, "int [128] / The size of the cache of term postings in megabytes (0 disables it).");
+        scoreCacheOption.setRequired(false);
+        options.addOption(scoreCacheOption);
+
+        Option pinTermsOption = new Option(null, "pin-terms", true, "count [query stats file] / (fs)\tKeeps the postings of the heaviest terms decoded off-heap. Terms are ranked by their number of postings, weighted by the 'term count' lines of the query stats file if given.");
+        pinTermsOption.setRequired(false);
+        pinTermsOption.setArgs(2);
+        pinTermsOption.setOptionalArg(true);
+        options.addOption(pinTermsOption);
+
+        Option vectorCacheOption = new Option(null, "vector-cache", true, "int [256] / The size of the cache of built vectors in megabytes (0 disables it).");
+        vectorCacheOption.setRequired(false);
+        options.addOption(vectorCacheOption);
+
         Option stopWordsOption = new Option(null, "stopwords", true, "stopwords file / A file containing stopwords each on their own line");
         stopWordsOption.setRequired(false);
         options.addOption(stopWordsOption);
@@ -225,6 +248,14 @@ public class Main {
         repeatContentOption.setArgs(2);
         options.addOption(repeatContentOption);
 
+        Option outputCodecOption = new Option(null, "output-codec", true, "[bzip2|zstd|gzip|none] / (annotating)\tThe compression of the XML written by --preprocess, --count-links-and-terms and --repeat-content (defaults to bzip2). Use bzip2 for files read by other tools.");
+        outputCodecOption.setRequired(false);
+        options.addOption(outputCodecOption);
+
+        Option outputFormatOption = new Option(null, "output-format", true, "[xml|records] / (annotating)\tThe format written by --preprocess, --count-links-and-terms and --repeat-content (defaults to xml). Records are a compact binary format that only our own tools read.");
+        outputFormatOption.setRequired(false);
+        options.addOption(outputFormatOption);
+
         Option categoryInfoOption = new Option(null, "category-info", true, "inputFile / Displays category information about the processed dump file.");
         categoryInfoOption.setRequired(false);
         options.addOption(categoryInfoOption);
@@ -256,13 +287,21 @@ public class Main {
         indexOption.setRequired(false);
         options.addOption(indexOption);
 
+        Option postingCodecOption = new Option(null, "posting-codec", true, "[raw|quantized] / (indexing:fs)\tThe encoding of the postings in term-scores.dc (defaults to raw).");
+        postingCodecOption.setRequired(false);
+        options.addOption(postingCodecOption);
+
+        Option writerMemoryOption = new Option(null, "writer-memory", true, "int / (indexing:fs)\tSpills postings to temporary files once they use this many megabytes, keeping peak memory independent of the corpus size.");
+        writerMemoryOption.setRequired(false);
+        options.addOption(writerMemoryOption);
+
         //Index path
         Option indexPathOption = new Option(null, "index-path", true, "input directory / The path to the input directory (defaults to ./index/$doctype)");
         indexPathOption.setRequired(false);
         options.addOption(indexPathOption);
 
         //Prune index option
-        Option pruneOption = new Option(null, "prune", false, "Creates an inverse index mapping pruned to include only relevant concepts");
+        Option pruneOption = new Option(null, "prune", false, "/ (fs)\tPrunes each term's postings with --prune-window-size and --prune-dropoff as the index is written, or on its own rewrites the existing index pruned. Vectors are the same as when pruning at query time.");
         pruneOption.setRequired(false);
         options.addOption(pruneOption);
 
@@ -291,6 +330,12 @@ public class Main {
             String[] relevanceArgs = cmd.getOptionValues("relevance");
             String[] weightArgs = cmd.getOptionValues("weight");
             String[] wikiPreprocessorArgs = cmd.getOptionValues("preprocess");
+            StreamCodec outputCodec = StreamCodec.valueOfLabel(cmd.getOptionValue("output-codec", "bzip2"));
+            String outputFormat = cmd.getOptionValue("output-format", "xml");
+            if (!"xml".equals(outputFormat) && !"records".equals(outputFormat)) {
+                throw new IllegalArgumentException("Output format " + outputFormat + " is not recognized (xml|records).");
+            }
+            boolean recordOutput = "records".equals(outputFormat);
             String[] findArticleArgs = cmd.getOptionValues("find-article");
             String[] countLinkArgs = cmd.getOptionValues("count-links-and-terms");
             String[] repeatContentArgs = cmd.getOptionValues("repeat-content");
@@ -310,9 +355,30 @@ public class Main {
             String titleRepeat = cmd.getOptionValue("repeat-title");
             String linkRepeat = cmd.getOptionValue("repeat-link");
             String categoryInfo = cmd.getOptionValue("category-info");
+            String postingCodec = cmd.getOptionValue("posting-codec", "raw");
+            String writerMemory = cmd.getOptionValue("writer-memory");
+            String[] pinTermArgs = cmd.getOptionValues("pin-terms");
+
+            PruneOptions pruneOptions = new PruneOptions();
+            if (nonEmpty(pruneWindowSize)) {
+                pruneOptions.windowSize = Integer.parseInt(pruneWindowSize);
+            }
+            if (nonEmpty(pruneDropOff)) {
+                pruneOptions.dropOff = Float.parseFloat(pruneDropOff);
+            }
+            String limit = cmd.getOptionValue("vector-limit");
+            if (nonEmpty(limit)) {
+                pruneOptions.vectorLimit = Integer.parseInt(limit);
+            }
+            pruneOptions.earlyTermination = cmd.hasOption("early-termination");
+            //With an indexing command, postings are pruned as the fs index is written
+            PruneOptions indexPruneOptions = cmd.hasOption("prune") ? pruneOptions : null;
 
             SourceOptions sourceOptions = new SourceOptions();
+            String index = cmd.getOptionValue("index");
             String source = sourceArgs[0];
+            TermIndex termIndex = null;
+            ScoreReader fileScoreReader = null;
             if (source.equals("db")) {
                 TfIdfScoreRepository repo = new TfIdfScoreRepository();
                 sourceOptions.collectionInfo = new CollectionInfo(repo.getDocumentCount(), repo.getAverageDocumentLength(), repo.getDocumentFrequencies());
@@ -321,15 +387,47 @@ public class Main {
             } else if(source.equals("fs")) {
                 File termIndexFile = new File("index/term-index.dc");
                 File documentScoreFile = new File("index/term-scores.dc");
-                TermIndexReader termIndexReader = new TermIndexReader();
-                termIndexReader.open(termIndexFile);
-                TermIndex termIndex = termIndexReader.readIndex();
-                DocumentScoreDataReader scoreFileReader = new DocumentScoreMemoryReader(documentScoreFile);
-                sourceOptions.collectionInfo = new CollectionInfo(termIndex.getDocumentCount(), termIndex.getAverageDocumentLength(), termIndex.getDocumentFrequencies());
-                sourceOptions.scoreReader = new ScoreReader(termIndex, scoreFileReader);
-                sourceOptions.collectionWriter = new DiskCollectionWriter(termIndexFile, documentScoreFile);
-            }
-            //sourceOptions.scoreReader = new DocumentScoreCachingReader(sourceOptions.scoreReader);
+                //Indexing truncates both files, so they mustn't be mapped (and may not exist yet)
+                if (!nonEmpty(index)) {
+                    TermIndexReader termIndexReader = new TermIndexReader();
+                    termIndexReader.open(termIndexFile);
+                    termIndex = termIndexReader.readIndex();
+                    //The dictionary stays mapped after the file is closed
+                    termIndexReader.close();
+                    DocumentScoreDataReader scoreFileReader = new DocumentScoreMappedReader(documentScoreFile);
+                    sourceOptions.collectionInfo = new CollectionInfo(termIndex.getDocumentCount(), termIndex.getAverageDocumentLength(), termIndex.getDocumentFrequencies());
+                    sourceOptions.collectionInfo.setIdfTables(termIndex.getIdfTables());
+                    fileScoreReader = new ScoreReader(termIndex, scoreFileReader);
+                    sourceOptions.scoreReader = fileScoreReader;
+                }
+                //Store idf tables for the modes documents and queries will be scored with
+                String idfModes = getIdfModes(tfIdfDocumentMode, tfIdfQueryMode);
+                if (writerMemory != null) {
+                    long memoryBudget = Long.parseLong(writerMemory) * 1024 * 1024;
+                    ExternalSortCollectionWriter collectionWriter = new ExternalSortCollectionWriter(termIndexFile, documentScoreFile, memoryBudget, PostingCodecFactory.getCodec(postingCodec));
+                    collectionWriter.setIdfModes(idfModes);
+                    collectionWriter.setPruneOptions(indexPruneOptions);
+                    sourceOptions.collectionWriter = collectionWriter;
+                } else {
+                    DiskCollectionWriter collectionWriter = new DiskCollectionWriter(termIndexFile, documentScoreFile, indexPruneOptions, PostingCodecFactory.getCodec(postingCodec));
+                    collectionWriter.setIdfModes(idfModes);
+                    sourceOptions.collectionWriter = collectionWriter;
+                }
+            }
+            long scoreCacheBytes = Long.parseLong(cmd.getOptionValue("score-cache", "128")) * 1024 * 1024;
+            if (scoreCacheBytes > 0) {
+                sourceOptions.scoreReader = new DocumentScoreCachingReader(sourceOptions.scoreReader, DocumentScoreCachingReader.getCapacityForBytes(scoreCacheBytes));
+            }
+            if (hasLength(pinTermArgs, 1)) {
+                if (termIndex == null) {
+                    throw new IllegalArgumentException("Pinning terms requires the fs source.");
+                }
+                File queryStatistics = pinTermArgs.length > 1 ? new File(pinTermArgs[1]) : null;
+                List<String> pinnedTerms = PinnedScoreReader.getHeaviestTerms(termIndex, Integer.parseInt(pinTermArgs[0]), queryStatistics);
+                PinnedScoreReader pinnedScoreReader = new PinnedScoreReader(sourceOptions.scoreReader, fileScoreReader, pinnedTerms);
+                System.out.println("Pinned " + pinnedScoreReader.getPinnedTermCount() + " terms (" + pinnedScoreReader.getPinnedPostings() + " postings).");
+                sourceOptions.scoreReader = pinnedScoreReader;
+            }
             LoggingScoreReader scoreReader = new LoggingScoreReader(sourceOptions.scoreReader);
             sourceOptions.scoreReader = scoreReader;
 
@@ -338,19 +436,13 @@ public class Main {
             esaOptions.tfIdfQueryMode = tfIdfQueryMode;
             esaOptions.tfIdfDocumentMode = tfIdfDocumentMode;
 
-            PruneOptions pruneOptions = new PruneOptions();
-            if (nonEmpty(pruneWindowSize)) {
-                pruneOptions.windowSize = Integer.parseInt(pruneWindowSize);
-            }
-            if (nonEmpty(pruneDropOff)) {
-                pruneOptions.dropOff = Float.parseFloat(pruneDropOff);
-            }
-            String limit = cmd.getOptionValue("vector-limit");
-            if (nonEmpty(limit)) {
-                pruneOptions.vectorLimit = Integer.parseInt(limit);
-            }
             esaOptions.pruneOptions = pruneOptions;
 
+            long vectorCacheBytes = Long.parseLong(cmd.getOptionValue("vector-cache", "256")) * 1024 * 1024;
+            if (vectorCacheBytes > 0) {
+                esaOptions.vectorCache = new TinyLfuVectorCache(vectorCacheBytes);
+            }
+
             if (!nonEmpty(docType)) {
                 docType = "wiki";
             }
@@ -415,6 +507,8 @@ public class Main {
             //Load indexer options from command line and ESA options
             WikiIndexerOptions indexerOptions = new WikiIndexerOptions();
             loadIndexerOptions(indexerOptions, esaOptions, cmd);
+            //--threads also sets how many threads (de)compress the annotated XML, otherwise every core is used
+            int codecThreadCount = nonEmpty(cmd.getOptionValue("threads")) ? indexerOptions.threadCount : BZipFileReader.DEFAULT_THREAD_COUNT;
             indexerOptions.preprocessor = esaOptions.preprocessor;
             indexerOptions.analyzerFactory = analyzerFactory;
             indexerOptions.indexDirectory = FSDirectory.open(esaOptions.indexPath);
@@ -423,7 +517,6 @@ public class Main {
 
             String server = cmd.getOptionValue("server");
             String debug = cmd.getOptionValue("debug");
-            String index = cmd.getOptionValue("index");
             esaOptions.indexFile = index;
 
             esaOptions.displayInfo();
@@ -473,7 +566,7 @@ public class Main {
                 System.out.println("Getting top concepts for '" + sourceDesc + "':");
                 TextVectorizer textVectorizer = vectorizerFactory.getVectorizer();
                 ConceptVector vector = textVectorizer.vectorize(sourceText);
-                for (Integer documentId: vector.getSortedDocumentIds()) {
+                for (int documentId: vector.getSortedDocumentIds()) {
                     System.out.println(documentId + ": " + format.format(vector.getScore(documentId)));
                 }
             }
@@ -601,7 +694,11 @@ public class Main {
                 File titleMapOutputFile = new File(wikiPreprocessorArgs[2]);
                 WikiPreprocessorOptions wikiPreprocessorOptions = new WikiPreprocessorOptions();
                 wikiPreprocessorOptions.titleExclusionRegExList = indexerOptions.titleExclusionRegExList;
-                try (WikiPreprocessor wikiPreprocessor = new WikiPreprocessor(wikiPreprocessorOptions);) { wikiPreprocessor.preprocess(inputFile, outputFile, titleMapOutputFile);
+                try (WikiPreprocessor wikiPreprocessor = new WikiPreprocessor(wikiPreprocessorOptions);) {
+                    wikiPreprocessor.setThreadCount(codecThreadCount);
+                    wikiPreprocessor.setOutputCodec(outputCodec);
+                    wikiPreprocessor.setRecordOutput(recordOutput);
+                    wikiPreprocessor.preprocess(inputFile, outputFile, titleMapOutputFile);
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
@@ -617,6 +714,9 @@ public class Main {
                 wikiLinkAnnotatorOptions.minimumTerms = indexerOptions.minimumTermCount;
                 wikiLinkAnnotatorOptions.analyzer = indexerOptions.analyzerFactory.getAnalyzer();
                 try(WikiLinkAndTermAnnotator annotator = new WikiLinkAndTermAnnotator(wikiLinkAnnotatorOptions)) {
+                    annotator.setThreadCount(codecThreadCount);
+                    annotator.setOutputCodec(outputCodec);
+                    annotator.setRecordOutput(recordOutput);
                     annotator.annotate(strippedFile, titleMapFile, outputFile);
                 }
             }
@@ -632,6 +732,9 @@ public class Main {
                     repeatOptions.linkRepeat = Integer.parseInt(linkRepeat);
                 }
                 try(WikiContentRepeater repeater = new WikiContentRepeater(repeatOptions)) {
+                    repeater.setThreadCount(codecThreadCount);
+                    repeater.setOutputCodec(outputCodec);
+                    repeater.setRecordOutput(recordOutput);
                     repeater.repeatContent(inputFile, outputFile);
                 }
             }
@@ -669,7 +772,12 @@ public class Main {
                 indexFile(esaOptions, indexerOptions);
             } else if(cmd.hasOption("prune")) {
               IndexPruner pruner = new IndexPruner(pruneOptions);
-              pruner.prune(new TfIdfScoreRepository());
+              if (termIndex != null) {
+                  pruner.pruneInPlace(termIndex, fileScoreReader, new File("index/term-index.dc"), new File("index/term-scores.dc"));
+                  System.out.println("Pruned " + pruner.getPostingsRead() + " postings to " + pruner.getPostingsWritten() + ".");
+              } else {
+                  pruner.prune(new TfIdfScoreRepository());
+              }
             } else if(nonEmpty(server)) {
                 EsaHttpServer esaServer = new EsaHttpServer(vectorizerFactory.getVectorizer(), esaOptions);
                 esaServer.start(Integer.parseInt(server));
@@ -682,6 +790,9 @@ public class Main {
             System.out.println("----------------------------------------");
             System.out.println("Process finished in " + (endTime - startTime) + " seconds.");
             System.out.println("Read " + scoreReader.getTermsRead() + " terms @ " + format.format(scoreReader.getTermsReadPerSecond()) + " terms/s.");
+            if (pruneOptions.earlyTermination) {
+                System.out.println("Top-k: scored " + TopKEvaluator.getPostingsScored() + " postings, checked " + TopKEvaluator.getPostingsChecked() + ", skipped " + TopKEvaluator.getPostingsSkipped() + ".");
+            }
         } catch (org.apache.commons.cli.ParseException e) {
             System.out.println(e.getMessage());
             formatter.printHelp("wiki-esa", options);
@@ -713,6 +824,8 @@ public class Main {
             indexerOptions.batchSize = Integer.parseInt(batchSize);
         }
 
+        indexerOptions.singlePass = cmd.hasOption("single-pass");
+
         String maximumDocumentCount = cmd.getOptionValue("max-docs");
         if (nonEmpty(maximumDocumentCount)) {
             indexerOptions.maximumDocumentCount = Integer.parseInt(maximumDocumentCount);
@@ -735,9 +848,29 @@ public class Main {
         }
     }
 
+    private static String getIdfModes(String... tfIdfModes) {
+        StringBuilder idfModes = new StringBuilder();
+        for (String tfIdfMode: tfIdfModes) {
+            if (tfIdfMode.length() != 3) {
+                throw new IllegalArgumentException("TF-IDF mode must be 3 characters long.");
+            }
+            if (idfModes.indexOf(String.valueOf(tfIdfMode.charAt(1))) == -1) {
+                idfModes.append(tfIdfMode.charAt(1));
+            }
+        }
+        return idfModes.toString();
+    }
+
     public static void indexFile(EsaOptions options, WikiIndexerOptions wikiIndexerOptions) throws IOException, ParserConfigurationException, SAXException {
+        if (wikiIndexerOptions.singlePass) {
+            TfIdfWriter writer = new TfIdfWriter(new File(options.indexFile), options.sourceOptions.collectionWriter, wikiIndexerOptions);
+            writer.index();
+            return;
+        }
+
         //Get document frequencies
         RareWordDictionary rareWordDictionary = new RareWordDictionary(options.analyzer, 0);
+        rareWordDictionary.setThreadCount(wikiIndexerOptions.threadCount);
         rareWordDictionary.parse(new File(options.indexFile));
         CollectionInfo collectionInfo = new CollectionInfo(rareWordDictionary.getDocsRead(), rareWordDictionary.getAverageDocumentLength(), rareWordDictionary.getDocumentFrequencies());
 
@@ -1,23 +1,18 @@
 package com.dreamcloud.esa.annoatation;
 
 import com.dreamcloud.esa.annoatation.handler.XmlReadingHandler;
-import com.dreamcloud.esa.tools.BZipFileReader;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import java.io.*;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 public class ArticleStatsReader extends XmlReadingHandler {
-    protected final SAXParserFactory saxFactory;
     protected int termsRead = 0;
     protected int articleUniqueTerms = 0;
     protected int rareTerms = 0;
@@ -34,20 +29,11 @@ public class ArticleStatsReader extends XmlReadingHandler {
     public ArticleStatsReader(Analyzer analyzer, int rareTerms) {
         this.analyzer = analyzer;
         this.rareTerms = rareTerms;
-        saxFactory = SAXParserFactory.newInstance();
-        saxFactory.setNamespaceAware(true);
-        saxFactory.setValidating(false);
-        saxFactory.setXIncludeAware(true);
     }
 
     public void readArticles(File inputFile) throws IOException, ParserConfigurationException, SAXException {
         //Build the map
-        SAXParser saxParser = saxFactory.newSAXParser();
-        Reader reader = BZipFileReader.getFileReader(inputFile);
-        InputSource is = new InputSource(reader);
-        is.setEncoding("UTF-8");
-        saxParser.parse(is, this);
-        reader.close();
+        this.parse(inputFile);
 
         System.out.println("Article Stats: ");
         System.out.println("----------------------------------------");
@@ -1,28 +1,22 @@
 package com.dreamcloud.esa.annoatation;
 
 import com.dreamcloud.esa.annoatation.handler.XmlReadingHandler;
-import com.dreamcloud.esa.tools.BZipFileReader;
 import com.dreamcloud.esa.tools.StringUtils;
 
 import org.apache.commons.collections4.MultiValuedMap;
 import org.apache.commons.collections4.multimap.HashSetValuedHashMap;
 import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
 import org.eclipse.collections.impl.factory.primitive.ObjectIntMaps;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import java.io.File;
 import java.io.IOException;
-import java.io.Reader;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class CategoryAnalyzer extends XmlReadingHandler {
-    protected final SAXParserFactory saxFactory;
     static Pattern categoryRegexPattern = Pattern.compile("\\[\\[\\s?([cC]ategory:[^|#\\]]+)[^]]*]]");
     protected MultiValuedMap<String, String> categoryHierarchy = new HashSetValuedHashMap<>();
     protected MutableObjectIntMap<String> categoryInfo = ObjectIntMaps.mutable.empty();
@@ -35,10 +29,6 @@ public class CategoryAnalyzer extends XmlReadingHandler {
 
     public CategoryAnalyzer() {
         setDocumentTag("page");
-        saxFactory = SAXParserFactory.newInstance();
-        saxFactory.setNamespaceAware(true);
-        saxFactory.setValidating(false);
-        saxFactory.setXIncludeAware(true);
        excludedCategories.add(StringUtils.normalizeWikiTitle("Category:Star name disambiguations"));
        excludedCategories.add(StringUtils.normalizeWikiTitle("Category:America"));
        excludedCategories.add(StringUtils.normalizeWikiTitle("Category:Disambiguation"));
@@ -88,12 +78,7 @@ public class CategoryAnalyzer extends XmlReadingHandler {
 
     public void analyze(File inputFile, TemplateProcessor templateProcessor) throws ParserConfigurationException, SAXException, IOException {
         this.templateProcessor = templateProcessor;
-        SAXParser saxParser = saxFactory.newSAXParser();
-        Reader reader = BZipFileReader.getFileReader(inputFile);
-        InputSource is = new InputSource(reader);
-        is.setEncoding("UTF-8");
-        saxParser.parse(is, this);
-        reader.close();
+        this.parse(inputFile);
 
         /*System.out.println("Category Stats");
         System.out.println("---------------------------------------");
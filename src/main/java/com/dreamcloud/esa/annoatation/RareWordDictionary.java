@@ -1,54 +1,56 @@
 package com.dreamcloud.esa.annoatation;
 
+import com.dreamcloud.esa.analyzer.WikipediaArticle;
+import com.dreamcloud.esa.annoatation.handler.DocumentRecordReader;
 import com.dreamcloud.esa.annoatation.handler.XmlReadingHandler;
-import com.dreamcloud.esa.tools.BZipFileReader;
+import com.dreamcloud.esa.indexer.ArticlePipeline;
+import com.dreamcloud.esa.tfidf.TermStatistics;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.*;
 
+/**
+ * Counts document frequencies and document lengths.
+ *
+ * With more than one thread, documents are analyzed on a pool of workers (record files are split between them)
+ * and each worker counts into its own TermStatistics; the counts are merged when the file has been read.
+ */
 public class RareWordDictionary extends XmlReadingHandler {
-    protected final SAXParserFactory saxFactory;
     protected int rareWordThreshold = 0;
-    protected int termsRead = 0;
+    protected long termsRead = 0;
     protected int rareTerms = 0;
     protected Map<String, Integer> uniqueTerms = new HashMap<>();
     protected long totalDocumentLength;
     protected Analyzer analyzer;
+    protected int threadCount = 1;
+    protected ArticlePipeline pipeline;
+    protected final Queue<TermStatistics> threadStatistics = new ConcurrentLinkedQueue<>();
+    protected ThreadLocal<TermStatistics> localStatistics;
 
     public RareWordDictionary(Analyzer analyzer, int rareWordThreshold) {
         this.analyzer = analyzer;
         this.rareWordThreshold = rareWordThreshold;
-        saxFactory = SAXParserFactory.newInstance();
-        saxFactory.setNamespaceAware(true);
-        saxFactory.setValidating(false);
-        saxFactory.setXIncludeAware(true);
     }
 
-    public Map<String, Integer> getDocumentFrequencies() {
-        return uniqueTerms;
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The thread count must be at least 1.");
+        }
+        this.threadCount = threadCount;
     }
 
-    public void parse(File inputFile) throws IOException, SAXException, ParserConfigurationException {
-        //Build the map
-        SAXParser saxParser = saxFactory.newSAXParser();
-        Reader reader = BZipFileReader.getFileReader(inputFile);
-        InputSource is = new InputSource(reader);
-        is.setEncoding("UTF-8");
-        saxParser.parse(is, this);
-        reader.close();
+    public Map<String, Integer> getDocumentFrequencies() {
+        return uniqueTerms;
     }
 
     public void mapToXml(File inputFile, File outputFile) throws IOException, ParserConfigurationException, SAXException {
@@ -78,26 +80,117 @@ public class RareWordDictionary extends XmlReadingHandler {
     }
 
     @Override
-    protected void handleDocument(Map<String, String> xmlFields) throws SAXException {
-        String text = xmlFields.get("text");
-        TokenStream tokens = analyzer.tokenStream("text", text);
-        CharTermAttribute termAttribute = tokens.addAttribute(CharTermAttribute.class);
-        Set<String> uniqueTerms = new HashSet<>();
-        try {
-            tokens.reset();
-            while(tokens.incrementToken()) {
-                termsRead++;
-                uniqueTerms.add(termAttribute.toString());
-                totalDocumentLength++;
+    public void parse(File file) throws IOException, SAXException, ParserConfigurationException {
+        //A fresh thread local, so threads reused between parses don't count into merged statistics
+        localStatistics = ThreadLocal.withInitial(() -> {
+            TermStatistics statistics = new TermStatistics();
+            threadStatistics.add(statistics);
+            return statistics;
+        });
+
+        if (threadCount > 1 && DocumentRecordReader.isRecordFile(file)) {
+            parseSplits(file);
+        } else if (threadCount > 1) {
+            pipeline = new ArticlePipeline(threadCount, threadCount * 64, article -> countDocument(article.text));
+            pipeline.start();
+            boolean parsed = false;
+            try {
+                super.parse(file);
+                parsed = true;
+            } finally {
+                try {
+                    pipeline.finish();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while counting terms.");
+                } catch (IOException e) {
+                    //A worker failure has already stopped the parse with the same error
+                    if (parsed) {
+                        throw e;
+                    }
+                } finally {
+                    pipeline = null;
+                }
             }
-            tokens.close();
+        } else {
+            super.parse(file);
+        }
+        mergeStatistics();
+    }
+
+    /**
+     * Reads each split of a record file on its own thread, skipping the ordered hand off of a single reader.
+     */
+    protected void parseSplits(File file) throws IOException, SAXException {
+        try (DocumentRecordReader recordReader = new DocumentRecordReader(file)) {
+            int[] splits = recordReader.getSplits(threadCount);
+            ExecutorService executorService = Executors.newFixedThreadPool(splits.length - 1);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int splitIdx = 0; splitIdx < splits.length - 1; splitIdx++) {
+                    int fromBlock = splits[splitIdx];
+                    int toBlock = splits[splitIdx + 1];
+                    futures.add(executorService.submit(() -> {
+                        recordReader.read(fromBlock, toBlock, record -> countDocument(record.get("text")));
+                        return null;
+                    }));
+                }
+                for (Future<?> future: futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while counting terms.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SAXException) {
+                    throw (SAXException) e.getCause();
+                }
+                throw new IOException("Failed to count terms.", e.getCause());
+            } finally {
+                executorService.shutdown();
+            }
+            this.addDocsRead((int) recordReader.getRecordCount());
+        }
+    }
+
+    protected void countDocument(String text) throws SAXException {
+        try {
+            localStatistics.get().addDocument(analyzer, text);
         } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(1);
+            throw new SAXException(e);
         }
+    }
+
+    protected void mergeStatistics() {
+        TermStatistics merged = threadStatistics.poll();
+        if (merged == null) {
+            merged = new TermStatistics();
+        }
+        TermStatistics statistics;
+        while ((statistics = threadStatistics.poll()) != null) {
+            merged.merge(statistics);
+        }
+        uniqueTerms = merged.getDocumentFrequencies();
+        termsRead = merged.getTermCount();
+        totalDocumentLength = merged.getTermCount();
+    }
 
-        for (String term: uniqueTerms) {
-            this.uniqueTerms.put(term, this.uniqueTerms.getOrDefault(term, 0) + 1);
+    @Override
+    protected void handleDocument(Map<String, String> xmlFields) throws SAXException {
+        if (pipeline == null) {
+            countDocument(xmlFields.get("text"));
+            return;
+        }
+
+        WikipediaArticle article = new WikipediaArticle();
+        article.text = xmlFields.get("text");
+        try {
+            pipeline.submit(article);
+        } catch (IOException e) {
+            throw new SAXException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SAXException(e);
         }
     }
 
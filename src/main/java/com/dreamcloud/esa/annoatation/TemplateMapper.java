@@ -68,7 +68,7 @@ class TemplateMapper extends XmlReadingHandler {
     public Map<String, String> map(File inputFile) throws IOException, ParserConfigurationException, SAXException, XMLStreamException {
         reset();
         SAXParser saxParser = saxFactory.newSAXParser();
-        Reader reader = BZipFileReader.getFileReader(inputFile);
+        Reader reader = BZipFileReader.getFileReader(inputFile, threadCount);
         InputSource is = new InputSource(reader);
         is.setEncoding("UTF-8");
 
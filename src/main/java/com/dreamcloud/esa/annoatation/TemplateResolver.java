@@ -34,7 +34,7 @@ public class TemplateResolver extends XmlWritingHandler {
         options.recursionDepth = 1;
         templateProcessor = new TemplateProcessor(templateMap, options);
         SAXParser saxParser = saxFactory.newSAXParser();
-        Reader reader = BZipFileReader.getFileReader(inputFile);
+        Reader reader = BZipFileReader.getFileReader(inputFile, threadCount);
         InputSource is = new InputSource(reader);
         is.setEncoding("UTF-8");
 
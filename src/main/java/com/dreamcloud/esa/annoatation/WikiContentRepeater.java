@@ -1,33 +1,23 @@
 package com.dreamcloud.esa.annoatation;
 
 import com.dreamcloud.esa.annoatation.handler.XmlWritingHandler;
-import com.dreamcloud.esa.tools.BZipFileReader;
 import com.dreamcloud.esa.tools.StringUtils;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
-import java.io.Reader;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class WikiContentRepeater extends XmlWritingHandler {
-    protected final SAXParserFactory saxFactory;
     private final WikiContentRepeatOptions options;
     static Pattern linkRegexPattern = Pattern.compile("\\[\\[(?!File:|Image:)([^|#\\]]+)[^]]*]]");
 
     public WikiContentRepeater(WikiContentRepeatOptions options) {
         this.options = options;
-        saxFactory = SAXParserFactory.newInstance();
-        saxFactory.setNamespaceAware(true);
-        saxFactory.setValidating(false);
-        saxFactory.setXIncludeAware(true);
     }
 
     protected void handleDocument(Map<String, String> xmlFields) throws SAXException {
@@ -74,15 +64,9 @@ public class WikiContentRepeater extends XmlWritingHandler {
         System.out.println("Title Repeat: " + options.titleRepeat);
         System.out.println("---------------------------------------");
 
-        SAXParser saxParser = saxFactory.newSAXParser();
-        Reader reader = BZipFileReader.getFileReader(inputFile);
-        InputSource is = new InputSource(reader);
-        is.setEncoding("UTF-8");
-
         this.open(outputFile);
         this.writeDocumentBegin("docs");
-        saxParser.parse(is, this);
-        reader.close();
+        this.parse(inputFile);
         this.writeDocumentEnd();
     }
 }
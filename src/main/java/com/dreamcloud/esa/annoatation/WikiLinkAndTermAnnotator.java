@@ -1,16 +1,12 @@
 package com.dreamcloud.esa.annoatation;
 
 import com.dreamcloud.esa.annoatation.handler.XmlWritingHandler;
-import com.dreamcloud.esa.tools.BZipFileReader;
 
 import org.apache.commons.collections4.MultiValuedMap;
 import org.apache.commons.collections4.multimap.HashSetValuedHashMap;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.stream.XMLStreamException;
 import java.io.*;
 import java.text.NumberFormat;
@@ -43,15 +39,10 @@ public class WikiLinkAndTermAnnotator extends XmlWritingHandler {
     protected MultiValuedMap<String, String> outgoingLinkMap = new HashSetValuedHashMap<>();
     protected Map<String, WikiAnnotation> annotations = new HashMap<>();
 
-    protected final SAXParserFactory saxFactory;
     protected int numStripped = 0;
 
     public WikiLinkAndTermAnnotator(WikiLinkAndTermAnnotatorOptions options) {
         this.options = options;
-        saxFactory = SAXParserFactory.newInstance();
-        saxFactory.setNamespaceAware(true);
-        saxFactory.setValidating(false);
-        saxFactory.setXIncludeAware(true);
     }
 
     public void reset() {
@@ -84,12 +75,7 @@ public class WikiLinkAndTermAnnotator extends XmlWritingHandler {
     }
 
     protected void buildTitleMap(File titleMapFile) throws IOException, ParserConfigurationException, SAXException {
-        SAXParser saxParser = saxFactory.newSAXParser();
-        Reader reader = BZipFileReader.getFileReader(titleMapFile);
-        InputSource is = new InputSource(reader);
-        is.setEncoding("UTF-8");
-        saxParser.parse(is, new WikiTitleMapHandler(titleMap));
-        reader.close();
+        new WikiTitleMapHandler(titleMap).parse(titleMapFile);
 
         //Resolve all redirects
         Map<String, String> resolvedTitleMap = new HashMap<>();
@@ -109,39 +95,23 @@ public class WikiLinkAndTermAnnotator extends XmlWritingHandler {
     }
 
     protected void analyzeTerms(File strippedFile) throws IOException, SAXException, ParserConfigurationException {
-        SAXParser saxParser = saxFactory.newSAXParser();
-        Reader reader = BZipFileReader.getFileReader(strippedFile);
-        InputSource is = new InputSource(reader);
-        is.setEncoding("UTF-8");
-        saxParser.parse(is, new WikiLinAndTermHandler(options, titleMap, annotations, WikiLinAndTermHandler.ANALYSIS_TERMS));
-        reader.close();
+        new WikiLinAndTermHandler(options, titleMap, annotations, WikiLinAndTermHandler.ANALYSIS_TERMS).parse(strippedFile);
     }
 
     protected void analyzeLinks(File strippedFile) throws IOException, SAXException, ParserConfigurationException {
-        SAXParser saxParser = saxFactory.newSAXParser();
-        Reader reader = BZipFileReader.getFileReader(strippedFile);
-        InputSource is = new InputSource(reader);
-        is.setEncoding("UTF-8");
-        saxParser.parse(is, new WikiLinAndTermHandler(options, titleMap, annotations, WikiLinAndTermHandler.ANALYSIS_LINKS, incomingLinkMap, outgoingLinkMap));
+        new WikiLinAndTermHandler(options, titleMap, annotations, WikiLinAndTermHandler.ANALYSIS_LINKS, incomingLinkMap, outgoingLinkMap).parse(strippedFile);
 
         LinkPruner pruner = new LinkPruner(incomingLinkMap, outgoingLinkMap, options.minimumIncomingLinks);
 
         System.out.println("Outgoing Links: " + outgoingLinkMap.keySet().size());
         System.out.println("Incoming Links: " + incomingLinkMap.keySet().size());
         Set<String> prunedTitles = pruner.prune();
-        reader.close();
     }
 
     protected void writeAnnotatedXml(File strippedFile, File outputFile) throws IOException, ParserConfigurationException, SAXException, XMLStreamException {
-        SAXParser saxParser = saxFactory.newSAXParser();
-        Reader reader = BZipFileReader.getFileReader(strippedFile);
-        InputSource is = new InputSource(reader);
-        is.setEncoding("UTF-8");
-
         this.open(outputFile);
         this.writeDocumentBegin("docs");
-        saxParser.parse(is, this);
-        reader.close();
+        this.parse(strippedFile);
         this.writeDocumentEnd();
 
         System.out.println("Link Annotation Stats:");
@@ -61,11 +61,15 @@ public class WikiPreprocessor extends XmlWritingHandler {
     public void preprocess(File inputFile, File outputFile, File titleOutputFile) throws Exception {
         //Create a map of normalized titles
         try(WikiTitleMapper titleMapper = new WikiTitleMapper(titleExclusionPatterns, inputFile)) {
+            titleMapper.setThreadCount(threadCount);
+            titleMapper.setOutputCodec(outputCodec);
+            titleMapper.setRecordOutput(recordOutput);
             titleMapper.mapToXml(titleOutputFile);
         }
 
         //Generate a normalized template map
         try(TemplateMapper mapper = new TemplateMapper(new TemplateResolutionOptions())) {
+            mapper.setThreadCount(threadCount);
             templateMap = mapper.map(inputFile);
         }
 
@@ -74,7 +78,7 @@ public class WikiPreprocessor extends XmlWritingHandler {
         TemplateResolutionOptions options = new TemplateResolutionOptions();
         options.recursionDepth = 1;
         templateProcessor = new TemplateProcessor(templateMap, options);
-        Reader reader = BZipFileReader.getFileReader(inputFile);
+        Reader reader = BZipFileReader.getFileReader(inputFile, threadCount);
         InputSource is = new InputSource(reader);
         is.setEncoding("UTF-8");
         SAXParser saxParser = saxFactory.newSAXParser();
@@ -62,7 +62,7 @@ class WikiTitleMapper extends XmlWritingHandler {
 
     protected void parse() throws ParserConfigurationException, SAXException, IOException {
         SAXParser saxParser = saxFactory.newSAXParser();
-        Reader reader = BZipFileReader.getFileReader(inputFile);
+        Reader reader = BZipFileReader.getFileReader(inputFile, threadCount);
         InputSource is = new InputSource(reader);
         is.setEncoding("UTF-8");
         saxParser.parse(is, this);
@@ -0,0 +1,259 @@
+package com.dreamcloud.esa.annoatation.handler;
+
+import com.github.luben.zstd.Zstd;
+import org.xml.sax.SAXException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reads the files written by DocumentRecordWriter.
+ *
+ * Blocks can be read on their own, so a file can be split into block ranges that are read on separate threads.
+ * The block index is used when the file has one, otherwise the block headers are scanned when the file is opened.
+ */
+public class DocumentRecordReader implements AutoCloseable {
+    public interface RecordConsumer {
+        void accept(Map<String, String> record) throws SAXException;
+    }
+
+    protected final FileChannel channel;
+    protected long[] blockOffsets;
+    protected long[] blockFirstRecords;
+    protected int blockCount;
+    protected long recordCount;
+
+    public DocumentRecordReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, 8);
+            if (header.getInt() != DocumentRecordWriter.MAGIC) {
+                throw new IOException("Not a document record file: " + file.getPath());
+            }
+            int version = header.getInt();
+            if (version != DocumentRecordWriter.VERSION) {
+                throw new IOException("Unsupported document record version " + version + ".");
+            }
+            if (!readIndex()) {
+                scanBlocks();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static boolean isRecordFile(File file) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
+            return inputStream.readInt() == DocumentRecordWriter.MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    protected boolean readIndex() throws IOException {
+        long size = channel.size();
+        if (size < 20) {
+            return false;
+        }
+        ByteBuffer trailer = read(size - 12, 12);
+        long indexOffset = trailer.getLong();
+        if (trailer.getInt() != DocumentRecordWriter.MAGIC || indexOffset < 0) {
+            return false;
+        }
+        blockCount = read(indexOffset, 4).getInt();
+        ByteBuffer index = read(indexOffset + 4, blockCount * 16L);
+        blockOffsets = new long[blockCount + 1];
+        blockFirstRecords = new long[blockCount + 1];
+        for (int blockIdx = 0; blockIdx < blockCount; blockIdx++) {
+            blockOffsets[blockIdx] = index.getLong();
+        }
+        for (int blockIdx = 0; blockIdx < blockCount; blockIdx++) {
+            blockFirstRecords[blockIdx] = index.getLong();
+        }
+        if (blockCount > 0) {
+            ByteBuffer lastHeader = read(blockOffsets[blockCount - 1], 12);
+            lastHeader.getInt();
+            int compressedLength = lastHeader.getInt();
+            blockOffsets[blockCount] = blockOffsets[blockCount - 1] + 12 + compressedLength;
+            recordCount = blockFirstRecords[blockCount - 1] + lastHeader.getInt();
+        } else {
+            blockOffsets[0] = 8;
+        }
+        blockFirstRecords[blockCount] = recordCount;
+        return true;
+    }
+
+    /**
+     * Without an index (or for unfinished files) the block headers are followed from the start.
+     */
+    protected void scanBlocks() throws IOException {
+        long size = channel.size();
+        blockOffsets = new long[64];
+        blockFirstRecords = new long[64];
+        blockCount = 0;
+        recordCount = 0;
+        long offset = 8;
+        while (offset + 12 <= size) {
+            ByteBuffer header = read(offset, 12);
+            int rawLength = header.getInt();
+            int compressedLength = header.getInt();
+            if (rawLength == DocumentRecordWriter.END_OF_BLOCKS || offset + 12 + compressedLength > size) {
+                break;
+            }
+            if (blockCount + 1 >= blockOffsets.length) {
+                blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+                blockFirstRecords = Arrays.copyOf(blockFirstRecords, blockFirstRecords.length * 2);
+            }
+            blockOffsets[blockCount] = offset;
+            blockFirstRecords[blockCount++] = recordCount;
+            recordCount += header.getInt();
+            offset += 12 + compressedLength;
+        }
+        blockOffsets[blockCount] = offset;
+        blockFirstRecords[blockCount] = recordCount;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * The number of records before the block, so a split can number its records like a sequential read would.
+     */
+    public long getFirstRecord(int blockIdx) {
+        return blockFirstRecords[blockIdx];
+    }
+
+    /**
+     * Splits the blocks into at most splitCount ranges of about the same number of bytes.
+     *
+     * @return split boundaries, split i covers blocks [splits[i], splits[i + 1])
+     */
+    public int[] getSplits(int splitCount) {
+        splitCount = Math.max(1, Math.min(splitCount, blockCount));
+        int[] splits = new int[splitCount + 1];
+        long bytes = blockOffsets[blockCount] - blockOffsets[0];
+        int blockIdx = 0;
+        for (int splitIdx = 1; splitIdx < splitCount; splitIdx++) {
+            long target = blockOffsets[0] + bytes * splitIdx / splitCount;
+            while (blockIdx < blockCount && blockOffsets[blockIdx] < target) {
+                blockIdx++;
+            }
+            splits[splitIdx] = Math.max(blockIdx, splits[splitIdx - 1]);
+        }
+        splits[splitCount] = blockCount;
+        return splits;
+    }
+
+    public List<Map<String, String>> readBlock(int blockIdx) throws IOException {
+        long offset = blockOffsets[blockIdx];
+        ByteBuffer header = read(offset, 12);
+        int rawLength = header.getInt();
+        int compressedLength = header.getInt();
+        int records = header.getInt();
+        byte[] compressed = new byte[compressedLength];
+        read(offset + 12, compressedLength).get(compressed);
+        ByteBuffer raw = ByteBuffer.wrap(Zstd.decompress(compressed, rawLength));
+
+        List<Map<String, String>> block = new ArrayList<>(records);
+        for (int recordIdx = 0; recordIdx < records; recordIdx++) {
+            Map<String, String> record = new HashMap<>();
+            int nameLength;
+            while ((nameLength = readVarInt(raw)) != 0) {
+                String name = readString(raw, nameLength);
+                record.put(name, readString(raw, readVarInt(raw)));
+            }
+            block.add(record);
+        }
+        return block;
+    }
+
+    /**
+     * Reads the blocks [fromBlock, toBlock) in order on the calling thread.
+     */
+    public void read(int fromBlock, int toBlock, RecordConsumer consumer) throws IOException, SAXException {
+        for (int blockIdx = fromBlock; blockIdx < toBlock; blockIdx++) {
+            for (Map<String, String> record: readBlock(blockIdx)) {
+                consumer.accept(record);
+            }
+        }
+    }
+
+    /**
+     * Reads every record in order, decoding blocks ahead of the consumer on threadCount threads.
+     */
+    public void read(RecordConsumer consumer, int threadCount) throws IOException, SAXException {
+        if (threadCount < 2) {
+            read(0, blockCount, consumer);
+            return;
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try {
+            ArrayDeque<Future<List<Map<String, String>>>> pending = new ArrayDeque<>();
+            int nextBlock = 0;
+            while (nextBlock < blockCount || !pending.isEmpty()) {
+                while (nextBlock < blockCount && pending.size() < threadCount * 2) {
+                    int blockIdx = nextBlock++;
+                    pending.add(executorService.submit(() -> readBlock(blockIdx)));
+                }
+                for (Map<String, String> record: pending.poll().get()) {
+                    consumer.accept(record);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading records.");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read a record block.", e.getCause());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    protected ByteBuffer read(long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Read of " + length + " bytes is too large.");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of the record file.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    protected static String readString(ByteBuffer buffer, int length) {
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    protected static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
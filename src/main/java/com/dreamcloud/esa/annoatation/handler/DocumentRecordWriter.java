@@ -0,0 +1,137 @@
+package com.dreamcloud.esa.annoatation.handler;
+
+import com.github.luben.zstd.Zstd;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes documents as length prefixed records, a compact replacement for the XML passed between pipeline stages.
+ *
+ * Layout:
+ * int magic, int version
+ * blocks: int raw length, int compressed length, int record count, zstd compressed records
+ * int -1 (end of blocks)
+ * optional block index: int block count, long[] block offsets, long[] first record of each block
+ * long index offset (-1 without an index), int magic
+ *
+ * A record is a list of (varint name length, name, varint value length, value) fields ended by a 0 name length,
+ * with UTF-8 names and values. The blocks are independent, so readers can split the file between threads.
+ */
+public class DocumentRecordWriter implements AutoCloseable {
+    public static final int MAGIC = 0x44435246;
+    public static final int VERSION = 1;
+    public static final int END_OF_BLOCKS = -1;
+    protected static final int BLOCK_SIZE = 1024 * 1024;
+    protected static final int COMPRESSION_LEVEL = 1;
+
+    protected final DataOutputStream outputStream;
+    protected final boolean writeIndex;
+    protected final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE + BLOCK_SIZE / 4);
+    protected int blockRecords = 0;
+    protected long offset = 0;
+    protected long recordCount = 0;
+    protected long[] blockOffsets = new long[64];
+    protected long[] blockFirstRecords = new long[64];
+    protected int blockCount = 0;
+    protected boolean inRecord = false;
+
+    public DocumentRecordWriter(File outputFile, boolean writeIndex) throws IOException {
+        this.outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile), 64 * 1024));
+        this.writeIndex = writeIndex;
+        outputStream.writeInt(MAGIC);
+        outputStream.writeInt(VERSION);
+        offset = 8;
+    }
+
+    public DocumentRecordWriter(File outputFile) throws IOException {
+        this(outputFile, true);
+    }
+
+    public void startRecord() {
+        if (inRecord) {
+            throw new IllegalStateException("The previous record hasn't been ended.");
+        }
+        inRecord = true;
+    }
+
+    public void writeField(String name, String value) {
+        if (!inRecord) {
+            throw new IllegalStateException("Fields must be written inside a record.");
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length == 0) {
+            throw new IllegalArgumentException("Field names can't be empty.");
+        }
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(nameBytes.length);
+        block.write(nameBytes, 0, nameBytes.length);
+        writeVarInt(valueBytes.length);
+        block.write(valueBytes, 0, valueBytes.length);
+    }
+
+    public void endRecord() throws IOException {
+        if (!inRecord) {
+            throw new IllegalStateException("There is no record to end.");
+        }
+        writeVarInt(0);
+        inRecord = false;
+        blockRecords++;
+        if (block.size() >= BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+
+    public long getRecordCount() {
+        return recordCount + blockRecords;
+    }
+
+    protected void writeBlock() throws IOException {
+        byte[] raw = block.toByteArray();
+        byte[] compressed = Zstd.compress(raw, COMPRESSION_LEVEL);
+        if (blockCount == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+            blockFirstRecords = Arrays.copyOf(blockFirstRecords, blockCount * 2);
+        }
+        blockOffsets[blockCount] = offset;
+        blockFirstRecords[blockCount++] = recordCount;
+        outputStream.writeInt(raw.length);
+        outputStream.writeInt(compressed.length);
+        outputStream.writeInt(blockRecords);
+        outputStream.write(compressed);
+        offset += 12 + compressed.length;
+        recordCount += blockRecords;
+        blockRecords = 0;
+        block.reset();
+    }
+
+    public void close() throws IOException {
+        if (blockRecords > 0) {
+            writeBlock();
+        }
+        outputStream.writeInt(END_OF_BLOCKS);
+        long indexOffset = -1;
+        if (writeIndex) {
+            indexOffset = offset + 4;
+            outputStream.writeInt(blockCount);
+            for (int blockIdx = 0; blockIdx < blockCount; blockIdx++) {
+                outputStream.writeLong(blockOffsets[blockIdx]);
+            }
+            for (int blockIdx = 0; blockIdx < blockCount; blockIdx++) {
+                outputStream.writeLong(blockFirstRecords[blockIdx]);
+            }
+        }
+        outputStream.writeLong(indexOffset);
+        outputStream.writeInt(MAGIC);
+        outputStream.close();
+    }
+
+    protected void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            block.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        block.write(value);
+    }
+}
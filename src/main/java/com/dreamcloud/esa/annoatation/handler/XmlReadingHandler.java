@@ -1,9 +1,17 @@
 package com.dreamcloud.esa.annoatation.handler;
 
+import com.dreamcloud.esa.tools.BZipFileReader;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -18,6 +26,7 @@ abstract public class XmlReadingHandler extends DefaultHandler implements AutoCl
     private int docsRead = 0;
     private Map<String, String> xmlFields;
     private String currentTag;
+    protected int threadCount = BZipFileReader.DEFAULT_THREAD_COUNT;
 
     public XmlReadingHandler() {
         this.allowDefaultTags();
@@ -32,6 +41,20 @@ abstract public class XmlReadingHandler extends DefaultHandler implements AutoCl
         this.allowedTags.add("redirect");
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets how many threads (de)compress the files this handler reads and writes.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The thread count must be at least 1.");
+        }
+        this.threadCount = threadCount;
+    }
+
     public void allowTag(String tag) {
         this.allowedTags.add(tag);
     }
@@ -59,6 +82,13 @@ abstract public class XmlReadingHandler extends DefaultHandler implements AutoCl
         return this.docsRead;
     }
 
+    /**
+     * For subclasses that read documents without going through handleDocument, e.g. on several threads.
+     */
+    protected void addDocsRead(int docs) {
+        this.docsRead += docs;
+    }
+
     public void startElement(String uri, String localName, String qName, Attributes attributes) {
         if (documentTag.equals(localName)) {
             inDoc = true;
@@ -94,6 +124,38 @@ abstract public class XmlReadingHandler extends DefaultHandler implements AutoCl
         }
     }
 
+    /**
+     * Reads every document of an XML or DocumentRecordWriter file into handleDocument.
+     */
+    public void parse(File file) throws IOException, SAXException, ParserConfigurationException {
+        if (DocumentRecordReader.isRecordFile(file)) {
+            try (DocumentRecordReader recordReader = new DocumentRecordReader(file)) {
+                recordReader.read(this::handleRecord, threadCount);
+            }
+            return;
+        }
+
+        SAXParserFactory saxFactory = SAXParserFactory.newInstance();
+        saxFactory.setNamespaceAware(true);
+        saxFactory.setValidating(false);
+        saxFactory.setXIncludeAware(true);
+        SAXParser saxParser = saxFactory.newSAXParser();
+        try (Reader reader = BZipFileReader.getFileReader(file, threadCount)) {
+            InputSource is = new InputSource(reader);
+            is.setEncoding("UTF-8");
+            saxParser.parse(is, this);
+        }
+    }
+
+    /**
+     * Handles a document read from a record file the way a parsed XML document would be.
+     */
+    public void handleRecord(Map<String, String> fields) throws SAXException {
+        fields.keySet().retainAll(allowedTags);
+        docsRead++;
+        this.handleDocument(fields);
+    }
+
     public void logMessage(String message) {
         if (docsRead % 1000 == 0) {
             System.out.println(message);
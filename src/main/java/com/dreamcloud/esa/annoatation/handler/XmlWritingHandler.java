@@ -1,6 +1,6 @@
 package com.dreamcloud.esa.annoatation.handler;
 
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import com.dreamcloud.esa.tools.StreamCodec;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -10,42 +10,89 @@ import java.io.*;
 abstract public class XmlWritingHandler extends XmlReadingHandler implements AutoCloseable {
     private XMLStreamWriter xmlWriter;
     private OutputStream outputStream;
+    protected StreamCodec outputCodec = StreamCodec.BZIP2;
+    protected boolean recordOutput = false;
+    private DocumentRecordWriter recordWriter;
 
     public XmlWritingHandler() {
     }
 
+    public StreamCodec getOutputCodec() {
+        return outputCodec;
+    }
+
+    public void setOutputCodec(StreamCodec outputCodec) {
+        this.outputCodec = outputCodec;
+    }
+
+    public boolean isRecordOutput() {
+        return recordOutput;
+    }
+
+    /**
+     * Writes a DocumentRecordWriter file instead of XML; the documents must be flat lists of elements.
+     */
+    public void setRecordOutput(boolean recordOutput) {
+        this.recordOutput = recordOutput;
+    }
+
     public void open(File outputFile) throws IOException, XMLStreamException {
+        if (recordOutput) {
+            recordWriter = new DocumentRecordWriter(outputFile);
+            return;
+        }
         outputStream = new FileOutputStream(outputFile);
-        outputStream = new BufferedOutputStream(outputStream, 4096 * 4);
-        outputStream = new BZip2CompressorOutputStream(outputStream);
+        outputStream = outputCodec.getOutputStream(outputStream, threadCount);
         this.xmlWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(outputStream, "UTF-8");
     }
 
     public void writeDocumentBegin(String openTag) throws XMLStreamException, IOException {
+        if (recordWriter != null) {
+            return;
+        }
         xmlWriter.writeStartDocument();
         xmlWriter.writeStartElement(openTag);
     }
 
     public void writeDocumentEnd() throws XMLStreamException, IOException {
+        if (recordWriter != null) {
+            return;
+        }
         xmlWriter.writeEndElement();
         xmlWriter.writeEndDocument();
     }
 
     public void writeStartElement(String tagName) throws XMLStreamException, IOException {
+        if (recordWriter != null) {
+            recordWriter.startRecord();
+            return;
+        }
         xmlWriter.writeStartElement(tagName);
     }
 
     public void writeEndElement() throws XMLStreamException, IOException {
+        if (recordWriter != null) {
+            recordWriter.endRecord();
+            return;
+        }
         xmlWriter.writeEndElement();
     }
 
     public void writeElement(String tagName, String content) throws XMLStreamException, IOException {
+        if (recordWriter != null) {
+            recordWriter.writeField(tagName, content);
+            return;
+        }
         xmlWriter.writeStartElement(tagName);
         xmlWriter.writeCharacters(content);
         xmlWriter.writeEndElement();
     }
 
     public void close() throws Exception {
+        if (recordWriter != null) {
+            recordWriter.close();
+            recordWriter = null;
+        }
         if (xmlWriter != null) {
             xmlWriter.flush();
             xmlWriter.close();
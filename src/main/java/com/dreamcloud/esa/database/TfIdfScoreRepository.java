@@ -1,6 +1,7 @@
 package com.dreamcloud.esa.database;
 
 import com.dreamcloud.esa.tfidf.DocumentScoreReader;
+import com.dreamcloud.esa.tfidf.PostingList;
 import com.dreamcloud.esa.tfidf.TfIdfScore;
 
 import java.io.IOException;
@@ -110,6 +111,24 @@ public class TfIdfScoreRepository implements DocumentScoreReader {
         }
     }
 
+    public void getPostings(String term, PostingList outPostings) throws IOException {
+        outPostings.clear();
+        try {
+            if (this.con == null) {
+                this.con = MySQLConnection.getConnection();
+            }
+
+            PreparedStatement scoreStatement = con.prepareStatement("select document, score from esa.score where term = ? order by score desc");
+            scoreStatement.setString(1, term);
+            ResultSet resultSet = scoreStatement.executeQuery();
+            while (resultSet.next()) {
+                outPostings.add(resultSet.getInt(1), resultSet.getFloat(2));
+            }
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
     public void saveTfIdfScores(int document, TfIdfScore[] scores) {
         try {
             if (this.con == null) {
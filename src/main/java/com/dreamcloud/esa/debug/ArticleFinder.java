@@ -34,7 +34,7 @@ public class ArticleFinder extends XmlReadingHandler {
         try {
             reset();
             SAXParser saxParser = saxFactory.newSAXParser();
-            Reader reader = BZipFileReader.getFileReader(wikimediaDump);
+            Reader reader = BZipFileReader.getFileReader(wikimediaDump, threadCount);
             InputSource is = new InputSource(reader);
             is.setEncoding("UTF-8");
             saxParser.parse(is, this);
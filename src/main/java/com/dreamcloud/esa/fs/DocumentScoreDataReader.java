@@ -4,5 +4,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 public interface DocumentScoreDataReader {
-    public ByteBuffer readScores(int offset, int numScores) throws IOException;
+    public ByteBuffer readBytes(long offset, int length) throws IOException;
+
+    public default ByteBuffer readScores(long offset, int numScores) throws IOException {
+        return readBytes(offset, numScores * FileSystem.DOCUMENT_SCORE_BYTES);
+    }
 }
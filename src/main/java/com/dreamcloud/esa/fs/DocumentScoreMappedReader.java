@@ -0,0 +1,77 @@
+package com.dreamcloud.esa.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads document scores from a memory mapped score file.
+ *
+ * The file is mapped in segments so that it can grow past the 2GB limit of a single mapping.
+ * Reads never change the state of the mapped segments, so any number of threads can read at once.
+ */
+public class DocumentScoreMappedReader implements DocumentScoreDataReader {
+    protected static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    protected final MappedByteBuffer[] segments;
+    protected final int segmentSize;
+    protected final long size;
+
+    public DocumentScoreMappedReader(File scoreFile, int segmentSize) throws IOException {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be greater than 0.");
+        }
+        this.segmentSize = segmentSize;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(scoreFile, "r"); FileChannel channel = randomAccessFile.getChannel()) {
+            size = channel.size();
+            if (size == 0) {
+                throw new IOException("Score file " + scoreFile + " is empty.");
+            }
+            int segmentCount = (int) ((size + segmentSize - 1) / segmentSize);
+            segments = new MappedByteBuffer[segmentCount];
+            for (int segmentIdx = 0; segmentIdx < segmentCount; segmentIdx++) {
+                long segmentStart = (long) segmentIdx * segmentSize;
+                segments[segmentIdx] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, Math.min(segmentSize, size - segmentStart));
+            }
+        }
+    }
+
+    public DocumentScoreMappedReader(File scoreFile) throws IOException {
+        this(scoreFile, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public ByteBuffer readBytes(long offset, int length) throws IOException {
+        if (offset < 0 || offset + length > size) {
+            throw new IOException("Score read [" + offset + ", " + (offset + length) + ") is out of bounds for a file of " + size + " bytes.");
+        }
+        if (length == 0) {
+            //The offset may be the end of the file, past the last segment
+            return ByteBuffer.allocate(0);
+        }
+        int segmentIdx = (int) (offset / segmentSize);
+        int segmentOffset = (int) (offset % segmentSize);
+        if (segmentOffset + length <= segmentSize) {
+            //Zero copy: a view of the mapped segment with its own position and limit
+            ByteBuffer scores = segments[segmentIdx].duplicate();
+            scores.position(segmentOffset);
+            scores.limit(segmentOffset + length);
+            return scores.slice();
+        }
+
+        //The scores straddle a segment boundary, so we have to stitch them together
+        byte[] scores = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            ByteBuffer segment = segments[segmentIdx++].duplicate();
+            segment.position(segmentOffset);
+            int toCopy = Math.min(length - copied, segment.remaining());
+            segment.get(scores, copied, toCopy);
+            copied += toCopy;
+            segmentOffset = 0;
+        }
+        return ByteBuffer.wrap(scores);
+    }
+}
@@ -14,7 +14,10 @@ public class DocumentScoreMemoryReader implements DocumentScoreDataReader {
         scoreData = inputStream.readAllBytes();
     }
 
-    public ByteBuffer readScores(int offset, int numScores) throws IOException {
-        return ByteBuffer.wrap(scoreData, offset, numScores * FileSystem.DOCUMENT_SCORE_BYTES);
+    public ByteBuffer readBytes(long offset, int length) throws IOException {
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("Offset " + offset + " is too large for an in-memory score file, use a mapped reader instead.");
+        }
+        return ByteBuffer.wrap(scoreData, (int) offset, length);
     }
 }
@@ -2,7 +2,27 @@ package com.dreamcloud.esa.fs;
 
 public class FileSystem {
     public static int TERM_LENGTH_BYTES = Integer.BYTES;
-    public static int OFFSET_BYTES = Integer.BYTES;
+    public static int OFFSET_BYTES = Long.BYTES;
     public static int SCORE_BYTES = Float.BYTES;
     public static int DOCUMENT_SCORE_BYTES = Integer.BYTES + SCORE_BYTES;
+
+    //Term index header ("DCTI"), followed by the version
+    public static final int TERM_INDEX_MAGIC = 0x44435449;
+    public static final int TERM_INDEX_VERSION = 3;
+
+    //Version 1 files have no header, they start right away with the document count
+    public static final int TERM_INDEX_LEGACY_VERSION = 1;
+    //Version 2 added the header and 64 bit offsets, version 3 the encoded byte length of each term's postings
+    public static final int TERM_INDEX_BYTE_LENGTH_VERSION = 3;
+
+    //magic, version, document count, average document length, section table offset
+    public static final int TERM_INDEX_HEADER_BYTES = Integer.BYTES * 3 + Double.BYTES + Long.BYTES;
+    public static final int TERM_INDEX_SECTION_TABLE_POSITION = TERM_INDEX_HEADER_BYTES - Long.BYTES;
+
+    //Section types stored in the section table
+    public static final int SECTION_TERMS = 1;
+    public static final int SECTION_POSTING_CODEC = 2;
+    public static final int SECTION_TERM_DICTIONARY = 3;
+    //Precomputed idf tables: count, then for each its idf mode character, term count and a float per term id
+    public static final int SECTION_IDF = 4;
 }
@@ -1,6 +1,7 @@
 package com.dreamcloud.esa.fs;
 
 import com.dreamcloud.esa.tfidf.DocumentScoreReader;
+import com.dreamcloud.esa.tfidf.PostingList;
 import com.dreamcloud.esa.tfidf.TfIdfScore;
 
 import java.io.IOException;
@@ -35,6 +36,24 @@ public class LoggingScoreReader implements DocumentScoreReader {
         termsRead.addAndGet(terms.length);
     }
 
+    public void getPostings(String term, PostingList outPostings) throws IOException {
+        long startTime = System.nanoTime();
+        reader.getPostings(term, outPostings);
+        timeTaken.addAndGet(System.nanoTime() - startTime);
+        termsRead.incrementAndGet();
+    }
+
+    public TermIdDictionary getTermIds() {
+        return reader.getTermIds();
+    }
+
+    public void getPostings(int termId, PostingList outPostings) throws IOException {
+        long startTime = System.nanoTime();
+        reader.getPostings(termId, outPostings);
+        timeTaken.addAndGet(System.nanoTime() - startTime);
+        termsRead.incrementAndGet();
+    }
+
     public double getTermsReadPerSecond() {
         return termsRead.get() / (timeTaken.get() / 1000000000.0d);
     }
@@ -0,0 +1,24 @@
+package com.dreamcloud.esa.fs;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the (document, score) postings of a single term in term-scores.dc.
+ * Postings are always handed over sorted by descending score.
+ */
+public interface PostingCodec {
+    public int getId();
+    public String getName();
+
+    /**
+     * Writes the postings and returns the number of bytes written.
+     */
+    public int encode(int[] documents, float[] scores, int numScores, DataOutputStream outputStream) throws IOException;
+
+    /**
+     * Decodes numScores postings into the documents and scores arrays, which must be large enough to hold them.
+     */
+    public void decode(ByteBuffer byteBuffer, int numScores, int[] documents, float[] scores);
+}
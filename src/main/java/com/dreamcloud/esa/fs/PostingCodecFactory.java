@@ -0,0 +1,25 @@
+package com.dreamcloud.esa.fs;
+
+public class PostingCodecFactory {
+    public static PostingCodec getCodec(String name) {
+        switch (name) {
+            case "raw":
+                return new RawPostingCodec();
+            case "quantized":
+                return new QuantizedPostingCodec();
+            default:
+                throw new IllegalArgumentException("Posting codec " + name + " is not recognized (raw|quantized).");
+        }
+    }
+
+    public static PostingCodec getCodec(int id) {
+        switch (id) {
+            case RawPostingCodec.ID:
+                return new RawPostingCodec();
+            case QuantizedPostingCodec.ID:
+                return new QuantizedPostingCodec();
+            default:
+                throw new IllegalArgumentException("Posting codec id " + id + " is not recognized.");
+        }
+    }
+}
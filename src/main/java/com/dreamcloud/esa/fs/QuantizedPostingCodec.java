@@ -0,0 +1,139 @@
+package com.dreamcloud.esa.fs;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact postings for score sorted lists.
+ *
+ * Scores are quantized to 8 bit levels, spaced logarithmically between the lowest and highest positive score of the list.
+ * Because the list is sorted by score, postings with the same level are contiguous:
+ * each level is written once, followed by its documents in ascending order as variable length deltas.
+ * Level 0 is reserved for scores that aren't positive.
+ *
+ * Layout: float maxScore, float minScore, then per level: varint level drop, varint count, count * varint document delta
+ */
+public class QuantizedPostingCodec implements PostingCodec {
+    public static final int ID = 1;
+    protected static final int MAX_LEVEL = 0xFF;
+
+    public int getId() {
+        return ID;
+    }
+
+    public String getName() {
+        return "quantized";
+    }
+
+    public int encode(int[] documents, float[] scores, int numScores, DataOutputStream outputStream) throws IOException {
+        if (numScores == 0) {
+            return 0;
+        }
+        float maxScore = Math.max(0, scores[0]);
+        float minScore = maxScore;
+        for (int scoreIdx = numScores - 1; scoreIdx >= 0; scoreIdx--) {
+            if (scores[scoreIdx] > 0) {
+                minScore = scores[scoreIdx];
+                break;
+            }
+        }
+        outputStream.writeFloat(maxScore);
+        outputStream.writeFloat(minScore);
+        int bytesWritten = Float.BYTES * 2;
+
+        //Sort the documents of each level in place, without touching the caller's arrays
+        double logRange = Math.log(maxScore / minScore);
+        int[] sortedDocuments = Arrays.copyOf(documents, numScores);
+        int previousLevel = MAX_LEVEL;
+        int levelStart = 0;
+        while (levelStart < numScores) {
+            //Guard against lists that aren't perfectly sorted so the level drop is never negative
+            int level = Math.min(quantize(scores[levelStart], minScore, logRange), previousLevel);
+            int levelEnd = levelStart + 1;
+            while (levelEnd < numScores && Math.min(quantize(scores[levelEnd], minScore, logRange), previousLevel) == level) {
+                levelEnd++;
+            }
+            Arrays.sort(sortedDocuments, levelStart, levelEnd);
+
+            bytesWritten += writeVarInt(outputStream, previousLevel - level);
+            bytesWritten += writeVarInt(outputStream, levelEnd - levelStart);
+            int previousDocument = 0;
+            for (int scoreIdx = levelStart; scoreIdx < levelEnd; scoreIdx++) {
+                bytesWritten += writeVarInt(outputStream, sortedDocuments[scoreIdx] - previousDocument);
+                previousDocument = sortedDocuments[scoreIdx];
+            }
+            previousLevel = level;
+            levelStart = levelEnd;
+        }
+        return bytesWritten;
+    }
+
+    public void decode(ByteBuffer byteBuffer, int numScores, int[] documents, float[] scores) {
+        if (numScores == 0) {
+            return;
+        }
+        float maxScore = byteBuffer.getFloat();
+        float minScore = byteBuffer.getFloat();
+        double logRange = Math.log(maxScore / minScore);
+        int level = MAX_LEVEL;
+        int scoreIdx = 0;
+        while (scoreIdx < numScores) {
+            level -= readVarInt(byteBuffer);
+            int count = readVarInt(byteBuffer);
+            float score = dequantize(level, minScore, maxScore, logRange);
+            int document = 0;
+            for (int countIdx = 0; countIdx < count; countIdx++) {
+                document += readVarInt(byteBuffer);
+                documents[scoreIdx] = document;
+                scores[scoreIdx++] = score;
+            }
+        }
+    }
+
+    protected static int quantize(float score, float minScore, double logRange) {
+        if (!(score > 0)) {
+            return 0;
+        }
+        if (!(logRange > 0)) {
+            return MAX_LEVEL;
+        }
+        long level = 1 + Math.round((MAX_LEVEL - 1) * Math.log(score / minScore) / logRange);
+        return (int) Math.max(1, Math.min(MAX_LEVEL, level));
+    }
+
+    protected static float dequantize(int level, float minScore, float maxScore, double logRange) {
+        if (level == 0) {
+            return 0;
+        }
+        if (level == MAX_LEVEL || !(logRange > 0)) {
+            return maxScore;
+        }
+        if (level == 1) {
+            return minScore;
+        }
+        return (float) (minScore * Math.exp((level - 1) * logRange / (MAX_LEVEL - 1)));
+    }
+
+    protected static int writeVarInt(DataOutputStream outputStream, int value) throws IOException {
+        int bytesWritten = 1;
+        while ((value & ~0x7F) != 0) {
+            outputStream.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+            bytesWritten++;
+        }
+        outputStream.writeByte(value);
+        return bytesWritten;
+    }
+
+    protected static int readVarInt(ByteBuffer byteBuffer) {
+        byte b = byteBuffer.get();
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = byteBuffer.get();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+}
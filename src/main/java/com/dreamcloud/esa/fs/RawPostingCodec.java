@@ -0,0 +1,35 @@
+package com.dreamcloud.esa.fs;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The original format: a raw (int document, float score) pair per posting.
+ */
+public class RawPostingCodec implements PostingCodec {
+    public static final int ID = 0;
+
+    public int getId() {
+        return ID;
+    }
+
+    public String getName() {
+        return "raw";
+    }
+
+    public int encode(int[] documents, float[] scores, int numScores, DataOutputStream outputStream) throws IOException {
+        for (int scoreIdx = 0; scoreIdx < numScores; scoreIdx++) {
+            outputStream.writeInt(documents[scoreIdx]);
+            outputStream.writeFloat(scores[scoreIdx]);
+        }
+        return numScores * FileSystem.DOCUMENT_SCORE_BYTES;
+    }
+
+    public void decode(ByteBuffer byteBuffer, int numScores, int[] documents, float[] scores) {
+        for (int scoreIdx = 0; scoreIdx < numScores; scoreIdx++) {
+            documents[scoreIdx] = byteBuffer.getInt();
+            scores[scoreIdx] = byteBuffer.getFloat();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.dreamcloud.esa.fs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A read only term dictionary over a (usually memory mapped) SECTION_TERM_DICTIONARY.
+ *
+ * Terms are sorted by their UTF-8 bytes and grouped in blocks.
+ * Within a block each term only stores the suffix it doesn't share with the previous term,
+ * and the first term of every block is stored whole so a lookup can binary search the blocks
+ * and then scan a single one. Nothing is kept on the heap per term.
+ *
+ * Layout: int termCount, int blockSize, int blockCount, blockCount * int blockOffset, then per term:
+ * varint prefix length, varint suffix length, suffix bytes, varint df, varint numScores, varint byteLength, long offset
+ */
+public class TermDictionary implements Iterable<TermIndexEntry> {
+    protected final ByteBuffer dictionary;
+    protected final int termCount;
+    protected final int blockSize;
+    protected final int blockCount;
+    protected final int blockIndexStart;
+    protected final int dataStart;
+
+    public TermDictionary(ByteBuffer dictionary) {
+        this.dictionary = dictionary;
+        termCount = dictionary.getInt(0);
+        blockSize = dictionary.getInt(Integer.BYTES);
+        blockCount = dictionary.getInt(Integer.BYTES * 2);
+        blockIndexStart = Integer.BYTES * 3;
+        dataStart = blockIndexStart + blockCount * Integer.BYTES;
+    }
+
+    public int size() {
+        return termCount;
+    }
+
+    public TermIndexEntry getEntry(String term) {
+        byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+        int blockIdx = findBlock(termBytes);
+        if (blockIdx < 0) {
+            return null;
+        }
+
+        BlockCursor cursor = new BlockCursor(blockIdx);
+        int blockTerms = Math.min(blockSize, termCount - blockIdx * blockSize);
+        for (int termIdx = 0; termIdx < blockTerms; termIdx++) {
+            cursor.next();
+            int comparison = Arrays.compareUnsigned(cursor.term, 0, cursor.termLength, termBytes, 0, termBytes.length);
+            if (comparison == 0) {
+                return cursor.toEntry(term);
+            } else if (comparison > 0) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    public int getDocumentFrequency(String term) {
+        TermIndexEntry entry = getEntry(term);
+        return entry != null ? entry.documentFrequency : 0;
+    }
+
+    /**
+     * Finds the last block whose first term is not greater than the term, or -1 if the term sorts before every block.
+     */
+    protected int findBlock(byte[] termBytes) {
+        int low = 0;
+        int high = blockCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (compareFirstTerm(middle, termBytes) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    protected int compareFirstTerm(int blockIdx, byte[] termBytes) {
+        ByteBuffer block = dictionary.duplicate();
+        block.position(dataStart + dictionary.getInt(blockIndexStart + blockIdx * Integer.BYTES));
+        //The prefix length of a first term is always 0
+        QuantizedPostingCodec.readVarInt(block);
+        int length = QuantizedPostingCodec.readVarInt(block);
+        int position = block.position();
+        int common = Math.min(length, termBytes.length);
+        for (int byteIdx = 0; byteIdx < common; byteIdx++) {
+            int comparison = Integer.compare(dictionary.get(position + byteIdx) & 0xFF, termBytes[byteIdx] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, termBytes.length);
+    }
+
+    /**
+     * A read only view of the terms, looked up in (and iterated from) the dictionary instead of copied out of it.
+     */
+    public Set<String> getTerms() {
+        return new AbstractSet<>() {
+            public boolean contains(Object term) {
+                return term instanceof String && getEntry((String) term) != null;
+            }
+
+            public Iterator<String> iterator() {
+                Iterator<TermIndexEntry> entries = TermDictionary.this.iterator();
+                return new Iterator<>() {
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    public String next() {
+                        return entries.next().term;
+                    }
+                };
+            }
+
+            public int size() {
+                return termCount;
+            }
+        };
+    }
+
+    /**
+     * A shared, read only view of the document frequencies, so CollectionInfo doesn't need its own copy.
+     */
+    public Map<String, Integer> getDocumentFrequencies() {
+        return new AbstractMap<>() {
+            public Integer get(Object key) {
+                if (!(key instanceof String)) {
+                    return null;
+                }
+                TermIndexEntry entry = getEntry((String) key);
+                return entry != null ? entry.documentFrequency : null;
+            }
+
+            public boolean containsKey(Object key) {
+                return key instanceof String && getEntry((String) key) != null;
+            }
+
+            public int size() {
+                return termCount;
+            }
+
+            public Set<Entry<String, Integer>> entrySet() {
+                return new AbstractSet<>() {
+                    public Iterator<Entry<String, Integer>> iterator() {
+                        Iterator<TermIndexEntry> entries = TermDictionary.this.iterator();
+                        return new Iterator<>() {
+                            public boolean hasNext() {
+                                return entries.hasNext();
+                            }
+
+                            public Entry<String, Integer> next() {
+                                TermIndexEntry entry = entries.next();
+                                return new AbstractMap.SimpleImmutableEntry<>(entry.term, entry.documentFrequency);
+                            }
+                        };
+                    }
+
+                    public int size() {
+                        return termCount;
+                    }
+                };
+            }
+        };
+    }
+
+    public Iterator<TermIndexEntry> iterator() {
+        return new Iterator<>() {
+            int termIdx = 0;
+            BlockCursor cursor;
+
+            public boolean hasNext() {
+                return termIdx < termCount;
+            }
+
+            public TermIndexEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (termIdx % blockSize == 0) {
+                    cursor = new BlockCursor(termIdx / blockSize);
+                }
+                termIdx++;
+                cursor.next();
+                return cursor.toEntry(new String(cursor.term, 0, cursor.termLength, StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    /**
+     * Decodes the terms of a block one at a time, rebuilding each term in a reused buffer.
+     */
+    protected class BlockCursor {
+        protected final ByteBuffer block;
+        protected byte[] term = new byte[64];
+        protected int termLength = 0;
+        protected int documentFrequency;
+        protected int numScores;
+        protected int byteLength;
+        protected long offset;
+
+        public BlockCursor(int blockIdx) {
+            block = dictionary.duplicate();
+            block.position(dataStart + dictionary.getInt(blockIndexStart + blockIdx * Integer.BYTES));
+        }
+
+        public void next() {
+            int prefixLength = QuantizedPostingCodec.readVarInt(block);
+            int suffixLength = QuantizedPostingCodec.readVarInt(block);
+            termLength = prefixLength + suffixLength;
+            if (termLength > term.length) {
+                term = Arrays.copyOf(term, Math.max(termLength, term.length * 2));
+            }
+            block.get(term, prefixLength, suffixLength);
+            documentFrequency = QuantizedPostingCodec.readVarInt(block);
+            numScores = QuantizedPostingCodec.readVarInt(block);
+            byteLength = QuantizedPostingCodec.readVarInt(block);
+            offset = block.getLong();
+        }
+
+        public TermIndexEntry toEntry(String termString) {
+            TermIndexEntry entry = new TermIndexEntry();
+            entry.term = termString;
+            entry.documentFrequency = documentFrequency;
+            entry.offset = offset;
+            entry.numScores = numScores;
+            entry.byteLength = byteLength;
+            return entry;
+        }
+    }
+}
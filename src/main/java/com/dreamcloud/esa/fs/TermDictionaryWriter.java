@@ -0,0 +1,109 @@
+package com.dreamcloud.esa.fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Collects term index entries and writes them as a sorted, prefix compressed dictionary (see TermDictionary).
+ */
+public class TermDictionaryWriter {
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+
+    protected final int blockSize;
+    protected ArrayList<DictionaryTerm> terms = new ArrayList<>();
+    //The terms in dictionary order, once written
+    protected DictionaryTerm[] sortedTerms;
+
+    public TermDictionaryWriter(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be greater than 0.");
+        }
+        this.blockSize = blockSize;
+    }
+
+    public TermDictionaryWriter() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    public void addTerm(byte[] termBytes, int documentFrequency, long offset, int numScores, int byteLength) {
+        terms.add(new DictionaryTerm(termBytes, documentFrequency, offset, numScores, byteLength));
+    }
+
+    /**
+     * The document frequencies of the written dictionary by term id, i.e. in dictionary order.
+     */
+    public int[] getDocumentFrequencies() {
+        if (sortedTerms == null) {
+            throw new IllegalStateException("The dictionary hasn't been written yet.");
+        }
+        int[] documentFrequencies = new int[sortedTerms.length];
+        for (int termId = 0; termId < sortedTerms.length; termId++) {
+            documentFrequencies[termId] = sortedTerms[termId].documentFrequency;
+        }
+        return documentFrequencies;
+    }
+
+    public void write(DataOutputStream outputStream) throws IOException {
+        //Byte order rather than String order, so lookups can compare the mapped bytes directly
+        sortedTerms = terms.toArray(new DictionaryTerm[0]);
+        Arrays.sort(sortedTerms, (t1, t2) -> Arrays.compareUnsigned(t1.term, t2.term));
+
+        int blockCount = (sortedTerms.length + blockSize - 1) / blockSize;
+        int[] blockOffsets = new int[blockCount];
+        ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+        DataOutputStream blockStream = new DataOutputStream(blockBytes);
+        byte[] previousTerm = new byte[0];
+        for (int termIdx = 0; termIdx < sortedTerms.length; termIdx++) {
+            DictionaryTerm term = sortedTerms[termIdx];
+            if (termIdx > 0 && Arrays.equals(sortedTerms[termIdx - 1].term, term.term)) {
+                throw new IllegalArgumentException("The term '" + new String(term.term, StandardCharsets.UTF_8) + "' was written twice.");
+            }
+            if (termIdx % blockSize == 0) {
+                //The first term of each block is stored whole so the blocks can be binary searched
+                blockOffsets[termIdx / blockSize] = blockStream.size();
+                previousTerm = new byte[0];
+            }
+            int prefixLength = Arrays.mismatch(previousTerm, term.term);
+            if (prefixLength < 0) {
+                prefixLength = previousTerm.length;
+            }
+            QuantizedPostingCodec.writeVarInt(blockStream, prefixLength);
+            QuantizedPostingCodec.writeVarInt(blockStream, term.term.length - prefixLength);
+            blockStream.write(term.term, prefixLength, term.term.length - prefixLength);
+            QuantizedPostingCodec.writeVarInt(blockStream, term.documentFrequency);
+            QuantizedPostingCodec.writeVarInt(blockStream, term.numScores);
+            QuantizedPostingCodec.writeVarInt(blockStream, term.byteLength);
+            blockStream.writeLong(term.offset);
+            previousTerm = term.term;
+        }
+        blockStream.flush();
+
+        outputStream.writeInt(sortedTerms.length);
+        outputStream.writeInt(blockSize);
+        outputStream.writeInt(blockCount);
+        for (int blockOffset: blockOffsets) {
+            outputStream.writeInt(blockOffset);
+        }
+        blockBytes.writeTo(outputStream);
+    }
+
+    protected static class DictionaryTerm {
+        public final byte[] term;
+        public final int documentFrequency;
+        public final long offset;
+        public final int numScores;
+        public final int byteLength;
+
+        public DictionaryTerm(byte[] term, int documentFrequency, long offset, int numScores, int byteLength) {
+            this.term = term;
+            this.documentFrequency = documentFrequency;
+            this.offset = offset;
+            this.numScores = numScores;
+            this.byteLength = byteLength;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.dreamcloud.esa.fs;
+
+import com.dreamcloud.esa.tools.TermTable;
+
+import java.util.Arrays;
+
+/**
+ * Numbers the terms of a term index 0..size()-1 and keeps their index entries in arrays indexed by that id.
+ *
+ * Tokens are looked up straight from the analyzer's char buffer, so mapping a token to its id
+ * doesn't allocate, and everything read per term afterwards (document frequency, posting offset and length)
+ * is an array access instead of a term index lookup.
+ */
+public class TermIdDictionary {
+    protected final TermTable terms = new TermTable();
+    protected int[] documentFrequencies = new int[64];
+    protected long[] offsets = new long[64];
+    protected int[] numScores = new int[64];
+    protected int[] byteLengths = new int[64];
+
+    public TermIdDictionary(Iterable<TermIndexEntry> entries) {
+        for (TermIndexEntry entry: entries) {
+            int termId = terms.add(entry.term);
+            if (termId == documentFrequencies.length) {
+                int capacity = termId * 2;
+                documentFrequencies = Arrays.copyOf(documentFrequencies, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                numScores = Arrays.copyOf(numScores, capacity);
+                byteLengths = Arrays.copyOf(byteLengths, capacity);
+            }
+            documentFrequencies[termId] = entry.documentFrequency;
+            offsets[termId] = entry.offset;
+            numScores[termId] = entry.numScores;
+            byteLengths[termId] = entry.byteLength;
+        }
+    }
+
+    public int size() {
+        return terms.size();
+    }
+
+    /**
+     * @return the term's id, or -1 if the index doesn't have the term
+     */
+    public int getId(char[] buffer, int length) {
+        return terms.find(buffer, length);
+    }
+
+    /**
+     * Looks up a term held by another table, e.g. one counting a document's terms.
+     */
+    public int getId(TermTable table, int termId) {
+        return terms.find(table, termId);
+    }
+
+    public int getId(String term) {
+        return terms.find(term);
+    }
+
+    public String getTerm(int termId) {
+        return terms.getTerm(termId);
+    }
+
+    public int getDocumentFrequency(int termId) {
+        return documentFrequencies[termId];
+    }
+
+    public long getOffset(int termId) {
+        return offsets[termId];
+    }
+
+    public int getNumScores(int termId) {
+        return numScores[termId];
+    }
+
+    public int getByteLength(int termId) {
+        return byteLengths[termId];
+    }
+}
@@ -8,29 +8,95 @@ public class TermIndex {
     private final double averageDocumentLength;
     protected final int documentCount;
     protected Map<String, TermIndexEntry> termIndex = new HashMap<>();
+    protected PostingCodec postingCodec = new RawPostingCodec();
+    //When set, entries are looked up in the dictionary instead of the map
+    protected final TermDictionary dictionary;
+    //Built once, then read without locking on every id based posting fetch
+    protected volatile TermIdDictionary termIds;
+    protected Map<Character, float[]> idfTables = new HashMap<>();
 
-    public TermIndex(int documentCount, double averageDocumentLength) {
+    public TermIndex(int documentCount, double averageDocumentLength, TermDictionary dictionary) {
         this.documentCount = documentCount;
         this.averageDocumentLength = averageDocumentLength;
+        this.dictionary = dictionary;
+    }
+
+    public TermIndex(int documentCount, double averageDocumentLength) {
+        this(documentCount, averageDocumentLength, null);
     }
 
     public void addEntry(TermIndexEntry entry) {
+        if (dictionary != null) {
+            throw new UnsupportedOperationException("Entries can't be added to a term index backed by a dictionary.");
+        }
         termIndex.put(entry.term, entry);
     }
 
     public TermIndexEntry getEntry(String term) {
+        if (dictionary != null) {
+            return dictionary.getEntry(term);
+        }
         return termIndex.get(term);
     }
 
     public Set<String> getTerms() {
+        if (dictionary != null) {
+            return dictionary.getTerms();
+        }
         return termIndex.keySet();
     }
 
+    public Iterable<TermIndexEntry> getEntries() {
+        if (dictionary != null) {
+            return dictionary;
+        }
+        return termIndex.values();
+    }
+
+    /**
+     * Numbers the terms for id based lookups, building the id dictionary on first use.
+     */
+    public TermIdDictionary getTermIds() {
+        TermIdDictionary termIds = this.termIds;
+        if (termIds == null) {
+            synchronized (this) {
+                termIds = this.termIds;
+                if (termIds == null) {
+                    termIds = new TermIdDictionary(getEntries());
+                    this.termIds = termIds;
+                }
+            }
+        }
+        return termIds;
+    }
+
+    /**
+     * Idf tables precomputed when the index was written, by idf mode and then term id.
+     */
+    public Map<Character, float[]> getIdfTables() {
+        return idfTables;
+    }
+
+    public void setIdfTables(Map<Character, float[]> idfTables) {
+        this.idfTables = idfTables;
+    }
+
+    public PostingCodec getPostingCodec() {
+        return postingCodec;
+    }
+
+    public void setPostingCodec(PostingCodec postingCodec) {
+        this.postingCodec = postingCodec;
+    }
+
     public int getDocumentCount() {
         return documentCount;
     }
 
     public Map<String, Integer> getDocumentFrequencies() {
+        if (dictionary != null) {
+            return dictionary.getDocumentFrequencies();
+        }
         Map<String, Integer> documentFrequencies = new HashMap<>();
         for (TermIndexEntry entry: termIndex.values()) {
             documentFrequencies.put(entry.term, entry.documentFrequency);
@@ -3,6 +3,8 @@ package com.dreamcloud.esa.fs;
 public class TermIndexEntry {
     public String term;
     public int documentFrequency;
-    public int offset;
+    public long offset;
     public int numScores;
+    //The size of the encoded scores in term-scores.dc
+    public int byteLength;
 }
@@ -1,39 +1,183 @@
 package com.dreamcloud.esa.fs;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 
 public class TermIndexReader {
+    protected FileInputStream fileInputStream;
     protected DataInputStream inputStream;
+    protected int version;
     protected int documentCount;
     protected double averageDocumentLength;
+    protected Map<Integer, TermIndexSection> sections = new HashMap<>();
+    protected PostingCodec postingCodec;
+    //Bytes left in the section being read, or -1 to read until the end of the file
+    protected long sectionRemaining = -1;
 
     public TermIndexReader() {
 
     }
 
     public void open(File termIndex) throws IOException {
-        inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(termIndex)));
-        //We're sticking the document count here as it's data we need for TF-IDF
+        fileInputStream = new FileInputStream(termIndex);
+        inputStream = new DataInputStream(new BufferedInputStream(fileInputStream));
+        sections.clear();
+        postingCodec = new RawPostingCodec();
+        int magic = inputStream.readInt();
+        if (magic != FileSystem.TERM_INDEX_MAGIC) {
+            //Version 1 has no header (the magic number would be over a billion documents)
+            //We're sticking the document count here as it's data we need for TF-IDF
+            version = FileSystem.TERM_INDEX_LEGACY_VERSION;
+            documentCount = magic;
+            averageDocumentLength = inputStream.readFloat();
+            sectionRemaining = -1;
+            return;
+        }
+
+        version = inputStream.readInt();
+        if (version > FileSystem.TERM_INDEX_VERSION) {
+            throw new IOException("Term index version " + version + " is not supported (the latest supported version is " + FileSystem.TERM_INDEX_VERSION + ").");
+        }
         documentCount = inputStream.readInt();
-        averageDocumentLength = inputStream.readFloat();
+        averageDocumentLength = inputStream.readDouble();
+        long sectionTableOffset = inputStream.readLong();
+        if (sectionTableOffset == 0) {
+            throw new IOException("Term index " + termIndex + " is incomplete: its writer failed or never closed it.");
+        }
+
+        seek(sectionTableOffset);
+        int sectionCount = inputStream.readInt();
+        for (int sectionIdx = 0; sectionIdx < sectionCount; sectionIdx++) {
+            TermIndexSection section = new TermIndexSection(inputStream.readInt(), inputStream.readLong(), inputStream.readLong());
+            sections.put(section.type, section);
+        }
+
+        if (openSection(FileSystem.SECTION_POSTING_CODEC)) {
+            postingCodec = PostingCodecFactory.getCodec(inputStream.readInt());
+        }
+
+        if (!openSection(FileSystem.SECTION_TERMS)) {
+            throw new IOException("Term index is missing its terms section.");
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public PostingCodec getPostingCodec() {
+        return postingCodec;
+    }
+
+    public TermIndexSection getSection(int type) {
+        return sections.get(type);
+    }
+
+    /**
+     * Positions the reader at the start of a section.
+     * Returns false if the index doesn't have the section.
+     */
+    public boolean openSection(int type) throws IOException {
+        TermIndexSection section = sections.get(type);
+        if (section == null) {
+            return false;
+        }
+        seek(section.offset);
+        sectionRemaining = section.length;
+        return true;
+    }
+
+    public DataInputStream getInputStream() {
+        return inputStream;
+    }
+
+    protected void seek(long position) throws IOException {
+        fileInputStream.getChannel().position(position);
+        //Throw away anything we've already buffered
+        inputStream = new DataInputStream(new BufferedInputStream(fileInputStream));
     }
 
     public TermIndexEntry readTerm() throws IOException {
+        if (sectionRemaining == 0) {
+            return null;
+        }
         try {
             TermIndexEntry entry = new TermIndexEntry();
             int termLength = inputStream.readInt();
-            entry.term = new String(inputStream.readNBytes(termLength));
-            entry.documentFrequency = inputStream.readInt();
-            entry.offset = inputStream.readInt();
-            entry.numScores = inputStream.readInt();
+            byte[] termBytes = inputStream.readNBytes(termLength);
+            if (version == FileSystem.TERM_INDEX_LEGACY_VERSION) {
+                entry.term = new String(termBytes);
+                entry.documentFrequency = inputStream.readInt();
+                entry.offset = inputStream.readInt();
+                entry.numScores = inputStream.readInt();
+                entry.byteLength = entry.numScores * FileSystem.DOCUMENT_SCORE_BYTES;
+            } else {
+                entry.term = new String(termBytes, StandardCharsets.UTF_8);
+                entry.documentFrequency = inputStream.readInt();
+                entry.offset = inputStream.readLong();
+                entry.numScores = inputStream.readInt();
+                sectionRemaining -= FileSystem.TERM_LENGTH_BYTES + termLength + Integer.BYTES + FileSystem.OFFSET_BYTES + Integer.BYTES;
+                if (version >= FileSystem.TERM_INDEX_BYTE_LENGTH_VERSION) {
+                    entry.byteLength = inputStream.readInt();
+                    sectionRemaining -= Integer.BYTES;
+                } else {
+                    entry.byteLength = entry.numScores * FileSystem.DOCUMENT_SCORE_BYTES;
+                }
+            }
             return entry;
         } catch (EOFException e) {
             return null;
         }
     }
 
+    /**
+     * Maps the term dictionary, or returns null if the index doesn't have one (or it's too large to map at once).
+     */
+    public TermDictionary mapDictionary() throws IOException {
+        TermIndexSection section = sections.get(FileSystem.SECTION_TERM_DICTIONARY);
+        if (section == null || section.length > Integer.MAX_VALUE) {
+            return null;
+        }
+        //The mapping stays valid after the file is closed
+        return new TermDictionary(fileInputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, section.offset, section.length));
+    }
+
+    /**
+     * Reads the precomputed idf tables by idf mode, empty if the index has none.
+     * Their term ids are the order of the term dictionary.
+     */
+    public Map<Character, float[]> readIdfTables() throws IOException {
+        Map<Character, float[]> idfTables = new HashMap<>();
+        if (openSection(FileSystem.SECTION_IDF)) {
+            int tableCount = inputStream.readInt();
+            for (int tableIdx = 0; tableIdx < tableCount; tableIdx++) {
+                char idfMode = inputStream.readChar();
+                float[] idfTable = new float[inputStream.readInt()];
+                for (int termId = 0; termId < idfTable.length; termId++) {
+                    idfTable[termId] = inputStream.readFloat();
+                }
+                idfTables.put(idfMode, idfTable);
+            }
+        }
+        return idfTables;
+    }
+
     public TermIndex readIndex() throws IOException {
+        TermDictionary dictionary = mapDictionary();
+        if (dictionary != null) {
+            TermIndex termIndex = new TermIndex(documentCount, averageDocumentLength, dictionary);
+            termIndex.setPostingCodec(postingCodec);
+            //Only the dictionary numbers terms in the order the tables were written
+            termIndex.setIdfTables(readIdfTables());
+            return termIndex;
+        }
+
+        //Older indexes are read into memory
         TermIndex termIndex = new TermIndex(documentCount, averageDocumentLength);
+        termIndex.setPostingCodec(postingCodec);
         while (true) {
             TermIndexEntry entry = readTerm();
             if (entry == null) {
@@ -0,0 +1,16 @@
+package com.dreamcloud.esa.fs;
+
+/**
+ * An entry in the section table at the end of a versioned term index.
+ */
+public class TermIndexSection {
+    public int type;
+    public long offset;
+    public long length;
+
+    public TermIndexSection(int type, long offset, long length) {
+        this.type = type;
+        this.offset = offset;
+        this.length = length;
+    }
+}
@@ -1,40 +1,153 @@
 package com.dreamcloud.esa.fs;
 
+import com.dreamcloud.esa.tfidf.CollectionInfo;
+import com.dreamcloud.esa.tfidf.TfIdfCalculator;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 
 public class TermIndexWriter {
     private double averageDocumentLength;
+    FileOutputStream fileOutputStream;
     DataOutputStream outputStream;
-    int offset = 0;
+    long offset = 0;
     int documentCount;
+    ArrayList<TermIndexSection> sections = new ArrayList<>();
+    TermIndexSection currentSection;
+    PostingCodec postingCodec = new RawPostingCodec();
+    TermDictionaryWriter dictionaryWriter = new TermDictionaryWriter();
+    String idfModes = "";
 
     public TermIndexWriter(int documentCount, double averageDocumentLength) {
         this.documentCount = documentCount;
         this.averageDocumentLength = averageDocumentLength;
     }
 
+    public void setPostingCodec(PostingCodec postingCodec) {
+        this.postingCodec = postingCodec;
+    }
+
+    /**
+     * Sets the idf modes (the middle character of a TF-IDF mode) to store precomputed idf tables for.
+     */
+    public void setIdfModes(String idfModes) {
+        for (char idfMode: idfModes.toCharArray()) {
+            TfIdfCalculator.getIdfStrategy(idfMode);
+        }
+        this.idfModes = idfModes;
+    }
+
     public void open(File termIndex) throws IOException {
-        OutputStream sourceOutputStream = new FileOutputStream(termIndex);
-        sourceOutputStream = new BufferedOutputStream(sourceOutputStream);
-        outputStream = new DataOutputStream(sourceOutputStream);
+        fileOutputStream = new FileOutputStream(termIndex);
+        outputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
         offset = 0;
+        sections.clear();
+        currentSection = null;
+        dictionaryWriter = new TermDictionaryWriter();
+
+        outputStream.writeInt(FileSystem.TERM_INDEX_MAGIC);
+        outputStream.writeInt(FileSystem.TERM_INDEX_VERSION);
         outputStream.writeInt(documentCount);
-        outputStream.writeFloat((float) averageDocumentLength);
+        outputStream.writeDouble(averageDocumentLength);
+        //The section table offset isn't known until close(), so we come back for it
+        outputStream.writeLong(0);
+        beginSection(FileSystem.SECTION_TERMS);
+    }
+
+    public void beginSection(int type) throws IOException {
+        if (currentSection != null) {
+            endSection();
+        }
+        currentSection = new TermIndexSection(type, getPosition(), 0);
+    }
+
+    public void endSection() throws IOException {
+        currentSection.length = getPosition() - currentSection.offset;
+        sections.add(currentSection);
+        currentSection = null;
+    }
+
+    public DataOutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    protected long getPosition() throws IOException {
+        outputStream.flush();
+        return fileOutputStream.getChannel().position();
     }
 
     public void writeTerm(String term, int numScores) throws IOException {
-        int termLength = term.getBytes().length;
-        int termOffset = offset;
-        offset += numScores * FileSystem.DOCUMENT_SCORE_BYTES;
+        writeTerm(term, numScores, numScores * FileSystem.DOCUMENT_SCORE_BYTES);
+    }
 
-        outputStream.writeInt(termLength);
-        outputStream.write(term.getBytes());
-        outputStream.writeInt(numScores);
-        outputStream.writeInt(termOffset);
+    public void writeTerm(String term, int numScores, int byteLength) throws IOException {
+        writeTerm(term, numScores, numScores, byteLength);
+    }
+
+    /**
+     * Writes a term whose postings were pruned, so it has fewer scores than documents.
+     */
+    public void writeTerm(String term, int documentFrequency, int numScores, int byteLength) throws IOException {
+        byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+        long termOffset = offset;
+        offset += byteLength;
+
+        outputStream.writeInt(termBytes.length);
+        outputStream.write(termBytes);
+        outputStream.writeInt(documentFrequency);
+        outputStream.writeLong(termOffset);
         outputStream.writeInt(numScores);
+        outputStream.writeInt(byteLength);
+        dictionaryWriter.addTerm(termBytes, documentFrequency, termOffset, numScores, byteLength);
     }
 
     public void close() throws IOException {
+        beginSection(FileSystem.SECTION_POSTING_CODEC);
+        outputStream.writeInt(postingCodec.getId());
+        endSection();
+
+        beginSection(FileSystem.SECTION_TERM_DICTIONARY);
+        dictionaryWriter.write(outputStream);
+        endSection();
+
+        if (!idfModes.isEmpty()) {
+            //Term ids are dictionary order, which isn't necessarily the order terms were written in
+            int[] documentFrequencies = dictionaryWriter.getDocumentFrequencies();
+            beginSection(FileSystem.SECTION_IDF);
+            outputStream.writeInt(idfModes.length());
+            for (char idfMode: idfModes.toCharArray()) {
+                float[] idfTable = CollectionInfo.buildIdfTable(TfIdfCalculator.getIdfStrategy(idfMode), documentCount, documentFrequencies);
+                outputStream.writeChar(idfMode);
+                outputStream.writeInt(idfTable.length);
+                for (float idf: idfTable) {
+                    outputStream.writeFloat(idf);
+                }
+            }
+            endSection();
+        }
+
+        //Write the section table and point the header at it
+        long sectionTableOffset = getPosition();
+        outputStream.writeInt(sections.size());
+        for (TermIndexSection section: sections) {
+            outputStream.writeInt(section.type);
+            outputStream.writeLong(section.offset);
+            outputStream.writeLong(section.length);
+        }
+        outputStream.flush();
+        ByteBuffer sectionTablePointer = ByteBuffer.allocate(Long.BYTES);
+        sectionTablePointer.putLong(sectionTableOffset);
+        sectionTablePointer.flip();
+        fileOutputStream.getChannel().write(sectionTablePointer, FileSystem.TERM_INDEX_SECTION_TABLE_POSITION);
+        outputStream.close();
+    }
+
+    /**
+     * Closes the file after a failed write, without the section table, so the reader rejects the partial index.
+     */
+    public void abort() throws IOException {
         outputStream.close();
     }
 }
@@ -21,11 +21,17 @@ public class TermScoreWriter {
         }
     }
 
+    public int writeTermScores(PostingCodec postingCodec, int[] documents, float[] scores, int numScores) throws IOException {
+        return postingCodec.encode(documents, scores, numScores, outputStream);
+    }
+
     public void writeTermScores(byte[] termScores) throws IOException {
         outputStream.write(termScores);
     }
 
     public void close() throws IOException {
-        this.outputStream.close();
+        if (outputStream != null) {
+            outputStream.close();
+        }
     }
 }
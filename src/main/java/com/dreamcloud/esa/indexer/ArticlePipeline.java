@@ -0,0 +1,143 @@
+package com.dreamcloud.esa.indexer;
+
+import com.dreamcloud.esa.analyzer.WikipediaArticle;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams articles from a single producer (the SAX thread) to a pool of workers through a bounded queue.
+ *
+ * The producer blocks once the queue is full, so parsing never runs far ahead of the analysis.
+ * Workers pull articles one at a time from the shared queue, so an idle worker always picks up the next article
+ * instead of waiting for the slowest worker of a batch to finish.
+ */
+public class ArticlePipeline {
+    public interface ArticleProcessor {
+        void process(WikipediaArticle article) throws Exception;
+    }
+
+    //Tells a worker there are no more articles
+    private static final WikipediaArticle END_OF_INPUT = new WikipediaArticle();
+
+    private final BlockingQueue<WikipediaArticle> queue;
+    private final ArticleProcessor processor;
+    private final Thread[] workers;
+    private final AtomicInteger processed = new AtomicInteger(0);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public ArticlePipeline(int threadCount, int queueCapacity, ArticleProcessor processor) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The pipeline needs at least one thread.");
+        }
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, threadCount));
+        this.processor = processor;
+        this.workers = new Thread[threadCount];
+    }
+
+    public void start() {
+        for (int workerIdx = 0; workerIdx < workers.length; workerIdx++) {
+            workers[workerIdx] = new Thread(this::work, "article-pipeline-" + workerIdx);
+            //Never keeps the JVM alive if the producer dies without stopping the pipeline
+            workers[workerIdx].setDaemon(true);
+            workers[workerIdx].start();
+        }
+    }
+
+    protected void work() {
+        try {
+            WikipediaArticle article;
+            while ((article = queue.take()) != END_OF_INPUT) {
+                //After a failure keep draining so the producer never blocks, but skip the work
+                if (failure.get() == null) {
+                    try {
+                        processor.process(article);
+                        processed.incrementAndGet();
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * Queues an article, blocking while the workers are behind.
+     */
+    public void submit(WikipediaArticle article) throws IOException, InterruptedException {
+        checkFailure();
+        while (!queue.offer(article, 100, TimeUnit.MILLISECONDS)) {
+            checkFailure();
+        }
+    }
+
+    /**
+     * Waits for the workers to drain the queue and stops them.
+     */
+    public void finish() throws IOException, InterruptedException {
+        for (Thread ignored: workers) {
+            queue.put(END_OF_INPUT);
+        }
+        for (Thread worker: workers) {
+            worker.join();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stops the workers without waiting for the queue to drain, e.g. when parsing failed.
+     * Articles already being processed are finished. Does nothing if the pipeline already finished.
+     */
+    public void abort() {
+        if (!isRunning()) {
+            return;
+        }
+        //Only the producer adds to the queue, so after clearing it there is room for every end marker
+        queue.clear();
+        for (Thread ignored: workers) {
+            queue.offer(END_OF_INPUT);
+        }
+        boolean interrupted = false;
+        for (Thread worker: workers) {
+            while (worker != null && worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        for (Thread worker: workers) {
+            if (worker != null && worker.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    protected void checkFailure() throws IOException {
+        Throwable t = failure.get();
+        if (t != null) {
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            throw new IOException("Failed to process an article.", t);
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package com.dreamcloud.esa.indexer;
 
 import com.dreamcloud.esa.database.TfIdfScoreRepository;
+import com.dreamcloud.esa.fs.*;
+import com.dreamcloud.esa.tfidf.DocumentScoreReader;
+import com.dreamcloud.esa.tfidf.PostingList;
 import com.dreamcloud.esa.tfidf.TfIdfScore;
 import com.dreamcloud.esa.vectorizer.PruneOptions;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Vector;
 
 public class IndexPruner {
     protected PruneOptions options;
+    protected long postingsRead = 0;
+    protected long postingsWritten = 0;
 
     public IndexPruner(PruneOptions options) {
         this.options = options;
@@ -21,6 +30,79 @@ public class IndexPruner {
         }
     }
 
+    /**
+     * Rewrites an fs index with each term's postings window pruned, like DiskCollectionWriter does with prune options.
+     * Document frequencies, the posting codec and the idf tables carry over, so queries against the pruned index
+     * get the same vectors as pruning the original one at query time
+     * (with the raw codec: the quantized codec quantizes the kept scores again, over their own range).
+     * The new files must not be the ones being read.
+     */
+    public void prune(TermIndex termIndex, DocumentScoreReader scoreReader, File termIndexFile, File documentScoreFile) throws IOException {
+        TermIndexWriter termIndexWriter = new TermIndexWriter(termIndex.getDocumentCount(), termIndex.getAverageDocumentLength());
+        termIndexWriter.setPostingCodec(termIndex.getPostingCodec());
+        StringBuilder idfModes = new StringBuilder();
+        for (char idfMode: termIndex.getIdfTables().keySet()) {
+            idfModes.append(idfMode);
+        }
+        termIndexWriter.setIdfModes(idfModes.toString());
+        termIndexWriter.open(termIndexFile);
+        TermScoreWriter termScoreWriter = new TermScoreWriter();
+        termScoreWriter.open(documentScoreFile);
+
+        TermIdDictionary termIds = scoreReader.getTermIds();
+        PostingList postings = new PostingList();
+        for (int termId = 0; termId < termIds.size(); termId++) {
+            scoreReader.getPostings(termId, postings);
+            int numScores = options.getPruneLimit(postings.scores, postings.size);
+            int byteLength = termScoreWriter.writeTermScores(termIndex.getPostingCodec(), postings.documents, postings.scores, numScores);
+            termIndexWriter.writeTerm(termIds.getTerm(termId), termIds.getDocumentFrequency(termId), numScores, byteLength);
+            postingsRead += postings.size;
+            postingsWritten += numScores;
+        }
+        termIndexWriter.close();
+        termScoreWriter.close();
+    }
+
+    /**
+     * Prunes an fs index and replaces its files with the pruned ones.
+     * The pruned index is written to a temporary directory next to it, then the scores and the term index are moved over the originals.
+     * If the term index can't be moved after the scores were, the temporary directory is kept so it can be moved by hand.
+     * The term index reader must be closed; mapped scores stay readable where files can be replaced while mapped (not on Windows).
+     */
+    public void pruneInPlace(TermIndex termIndex, DocumentScoreReader scoreReader, File termIndexFile, File documentScoreFile) throws IOException {
+        if (options.windowSize <= 0) {
+            throw new IllegalArgumentException("Pruning an index needs a window size greater than 0.");
+        }
+        Path pruneDirectory = Files.createTempDirectory(termIndexFile.getAbsoluteFile().getParentFile().toPath(), "pruning");
+        Path prunedTermIndexFile = pruneDirectory.resolve(termIndexFile.getName());
+        Path prunedDocumentScoreFile = pruneDirectory.resolve(documentScoreFile.getName());
+        boolean scoresMoved = false;
+        try {
+            prune(termIndex, scoreReader, prunedTermIndexFile.toFile(), prunedDocumentScoreFile.toFile());
+            Files.move(prunedDocumentScoreFile, documentScoreFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            scoresMoved = true;
+            try {
+                Files.move(prunedTermIndexFile, termIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new IOException("The pruned scores replaced " + documentScoreFile + ", but the pruned term index couldn't be moved over " + termIndexFile + ": move " + prunedTermIndexFile + " there before using the index.", e);
+            }
+        } finally {
+            if (!scoresMoved || !Files.exists(prunedTermIndexFile)) {
+                Files.deleteIfExists(prunedTermIndexFile);
+                Files.deleteIfExists(prunedDocumentScoreFile);
+                Files.deleteIfExists(pruneDirectory);
+            }
+        }
+    }
+
+    public long getPostingsRead() {
+        return postingsRead;
+    }
+
+    public long getPostingsWritten() {
+        return postingsWritten;
+    }
+
     private void pruneTerm(String term, TfIdfScoreRepository tfIdfScoreRepository) throws IOException {
         if (!"link".equals(term) && !"number".equals(term)) {
             return;
@@ -12,6 +12,7 @@ public class IndexerOptions {
     public DocumentPreprocessor preprocessor;
     public int threadCount = 1;
     public int batchSize = 1;
+    public boolean singlePass = false;
     public int maximumDocumentCount = 512000;
     public String tfIdfMode;
 
@@ -24,6 +25,7 @@ public class IndexerOptions {
         System.out.println("Preprocessors:\t\t[" + (preprocessor != null ? preprocessor.getInfo() : "") + "]");
         System.out.println("Thread Count:\t\t" + threadCount);
         System.out.println("Batch Size:\t\t" + batchSize);
+        System.out.println("Single Pass:\t\t" + singlePass);
         System.out.println("Max Documents:\t\t" + maximumDocumentCount);
         System.out.println("---------------------------------------");
     }
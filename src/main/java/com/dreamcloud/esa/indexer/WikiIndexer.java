@@ -3,26 +3,19 @@ package com.dreamcloud.esa.indexer;
 import java.io.*;
 import java.text.NumberFormat;
 import java.util.*;
-import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import com.dreamcloud.esa.analyzer.WikipediaArticle;
 import com.dreamcloud.esa.annoatation.handler.XmlReadingHandler;
 import com.dreamcloud.esa.similarity.SimilarityFactory;
-import com.dreamcloud.esa.tools.BZipFileReader;
 import com.dreamcloud.esa.tools.StringUtils;
 import de.tudarmstadt.ukp.wikipedia.api.Wikipedia;
 import org.apache.lucene.document.*;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,11 +24,8 @@ import java.util.regex.Pattern;
  * @author Philip van Oosten
  */
 public class WikiIndexer extends XmlReadingHandler implements Indexer {
-    protected final SAXParserFactory saxFactory;
-    private ExecutorService executorService;
-    WikipediaArticle[] fixedQueue;
+    private ArticlePipeline pipeline;
     WikipediaArticle article;
-    int queueSize = 0;
     private int numIndexed = 0;
     static Pattern linkRegexPattern = Pattern.compile("\\[\\[(?!File:|Image:)([^|#\\]]+)[^]]*]]");
 
@@ -44,40 +34,34 @@ public class WikiIndexer extends XmlReadingHandler implements Indexer {
 
     public WikiIndexer(WikiIndexerOptions options) {
         this.options = options;
-        this.fixedQueue = new WikipediaArticle[options.threadCount * options.batchSize];
-        saxFactory = SAXParserFactory.newInstance();
-        saxFactory.setNamespaceAware(true);
-        saxFactory.setValidating(false);
-        saxFactory.setXIncludeAware(true);
     }
 
     public void reset() {
         super.reset();
         numIndexed = 0;
-        queueSize = 0;
         article = null;
-        this.fixedQueue = new WikipediaArticle[options.threadCount * options.batchSize];
     }
 
     public void index(File file) throws IOException {
         reset();
-        executorService = Executors.newFixedThreadPool(options.threadCount);
         IndexWriterConfig indexWriterConfig = new IndexWriterConfig(options.analyzerFactory.getAnalyzer());
         indexWriterConfig.setSimilarity(SimilarityFactory.getSimilarity());
         indexWriter = new IndexWriter(options.indexDirectory, indexWriterConfig);
-        parseXmlDump(file);
-        //There may be queue items left over
-        if (queueSize > 0) {
-            this.processQueue();
-        }
-
-        indexWriter.commit();
-        executorService.shutdown();
+        pipeline = new ArticlePipeline(options.threadCount, options.threadCount * options.batchSize, this::indexDocument);
+        pipeline.start();
         try {
-            executorService.awaitTermination(12, TimeUnit.HOURS);
+            parseXmlDump(file);
+            //Let the workers finish whatever is still queued
+            pipeline.finish();
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing.", e);
+        } finally {
+            //Stops the workers if parsing failed before they were told to finish
+            pipeline.abort();
         }
+        numIndexed = pipeline.getProcessed();
+        indexWriter.commit();
 
         //Show logs
         System.out.println("----------------------------------------");
@@ -91,56 +75,12 @@ public class WikiIndexer extends XmlReadingHandler implements Indexer {
 
     public void parseXmlDump(File file) {
         try {
-            SAXParser saxParser = saxFactory.newSAXParser();
-            Reader reader = BZipFileReader.getFileReader(file);
-            InputSource is = new InputSource(reader);
-            is.setEncoding("UTF-8");
-            saxParser.parse(is, this);
-            reader.close();
+            this.parse(file);
         } catch (ParserConfigurationException | SAXException | IOException ex) {
             Logger.getLogger(WikiIndexer.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
 
-    void processQueue() {
-        //Spawn up THREAD_COUNT threads and give each BATCH_SIZE articles
-        ArrayList<Callable<Integer>> processors = new ArrayList<>();
-        for (int i=0; i<options.threadCount && (i * options.batchSize) < queueSize; i++) {
-            Vector<WikipediaArticle> articles = new Vector<>(options.batchSize);
-            for (int j = i * options.batchSize; j<(((i+1) * options.batchSize)) && j<queueSize; j++) {
-                articles.add(fixedQueue[j]);
-            }
-            processors.add(() -> this.indexArticles(articles));
-        }
-
-        //Wait on all threads and then processes the results
-        try{
-            List<Future<Integer>> futures = executorService.invokeAll(processors);
-            for(Future<Integer> future: futures){
-                if (future.isDone()) {
-                    Integer indexed = future.get();
-                    numIndexed += indexed;
-                }
-            }
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-
-        for (int i=0; i<options.threadCount * options.batchSize; i++) {
-            fixedQueue[i] = null;
-        }
-        queueSize = 0;
-        System.out.println("Indexed articles\t[" + numIndexed + " | " + getDocsRead() + "]");
-    }
-
-    Integer indexArticles (Vector<WikipediaArticle> articles) throws Exception {
-        for (WikipediaArticle article: articles) {
-            indexDocument(article);
-        }
-        return articles.size();
-    }
-
     void indexDocument(WikipediaArticle article) throws Exception {
         String wikiText = article.text;
         if (options.preprocessor != null) {
@@ -186,12 +126,18 @@ public class WikiIndexer extends XmlReadingHandler implements Indexer {
         article.terms = Integer.parseInt(xmlFields.get("terms"));
 
         if (article.canIndex(options)) {
-            fixedQueue[queueSize++] = article;
+            try {
+                pipeline.submit(article);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SAXException(e);
+            }
         }
 
-        if (queueSize == options.batchSize * options.threadCount) {
-            this.processQueue();
-            queueSize = 0;
+        if (getDocsRead() % (options.batchSize * options.threadCount) == 0) {
+            System.out.println("Indexed articles\t[" + pipeline.getProcessed() + " | " + getDocsRead() + "]");
         }
     }
 }
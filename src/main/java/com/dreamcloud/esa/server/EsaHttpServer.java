@@ -6,6 +6,7 @@ import com.dreamcloud.esa.database.MySQLConnection;
 import com.dreamcloud.esa.database.VectorRepository;
 import com.dreamcloud.esa.vectorizer.ConceptVector;
 import com.dreamcloud.esa.vectorizer.TextVectorizer;
+import com.dreamcloud.esa.vectorizer.VectorCache;
 import com.google.gson.Gson;
 import io.javalin.Javalin;
 import io.javalin.core.JavalinConfig;
@@ -15,6 +16,8 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This really shouldn't get the ESA options.
@@ -94,5 +97,20 @@ public class EsaHttpServer {
             DocumentSimilarityScorer scorer = new DocumentSimilarityScorer(vectorizer);
             ctx.json(scorer.score(requestBody));
         });
+
+        //Vector cache counters, for sizing the cache
+        app.get("/cache-stats", ctx -> {
+            VectorCache cache = options.vectorCache;
+            Map<String, Long> stats = new LinkedHashMap<>();
+            if (cache != null) {
+                stats.put("hits", cache.getHits());
+                stats.put("misses", cache.getMisses());
+                stats.put("evictions", cache.getEvictions());
+                stats.put("rejections", cache.getRejections());
+                stats.put("size", (long) cache.getSize());
+                stats.put("bytes", cache.getByteSize());
+            }
+            ctx.json(stats);
+        });
     }
 }
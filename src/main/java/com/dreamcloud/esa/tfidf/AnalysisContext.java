@@ -0,0 +1,78 @@
+package com.dreamcloud.esa.tfidf;
+
+import com.dreamcloud.esa.tfidf.strategy.TfIdfStrategy;
+import com.dreamcloud.esa.tools.TermTable;
+
+import java.util.Arrays;
+
+/**
+ * The scratch space TfIdfAnalyzer keeps per thread, so analyzing a document doesn't allocate per token or per term.
+ *
+ * Tokens are counted in a small table that only holds the current document, which stays in cache,
+ * and each unique term is then looked up once in the dictionary or the vocabulary.
+ * Without a TermIdDictionary, the vocabulary of every term the thread has seen holds the one String kept per term.
+ * It is dropped once it gets too large, so analyzing an unbounded stream of text (e.g. queries) can't grow it forever.
+ */
+class AnalysisContext {
+    //A vocabulary term costs ~100 bytes (its String, packed characters, table slots and idf),
+    //so this keeps each thread's vocabulary under ~30MB
+    protected static final int MAX_VOCABULARY = 1 << 18;
+
+    TermTable vocabulary = new TermTable();
+    final TermTable documentTerms = new TermTable();
+    //Term frequencies by documentTerms id
+    int[] frequencies = new int[64];
+    //Vocabulary ids by score index when the scores were counted without a dictionary,
+    //and the idf of each vocabulary term (NaN if not computed yet)
+    boolean hasVocabularyIds = false;
+    int[] vocabularyIds = new int[64];
+    double[] idfs = new double[0];
+    CollectionInfo idfSource;
+    //Shared by every term of a document, as only tf changes between them
+    final TermInfo termInfo = new TermInfo();
+    final TermScores scores = new TermScores();
+
+    void reset() {
+        Arrays.fill(frequencies, 0, documentTerms.size(), 0);
+        documentTerms.clear();
+        if (vocabulary.size() > MAX_VOCABULARY) {
+            //A new table rather than clear(), which would keep the arrays sized for the old vocabulary
+            vocabulary = new TermTable();
+            idfs = new double[0];
+            idfSource = null;
+        }
+        scores.size = 0;
+        scores.length = 0;
+        hasVocabularyIds = false;
+    }
+
+    /**
+     * @return the idf of a vocabulary term, computed from the collection info only the first time
+     */
+    double getIdf(int vocabularyId, CollectionInfo collectionInfo, TfIdfStrategy calculator) {
+        if (collectionInfo != idfSource) {
+            Arrays.fill(idfs, Double.NaN);
+            idfSource = collectionInfo;
+        }
+        if (vocabularyId >= idfs.length) {
+            int length = idfs.length;
+            idfs = Arrays.copyOf(idfs, Math.max(vocabulary.size(), length * 2));
+            Arrays.fill(idfs, length, idfs.length, Double.NaN);
+        }
+        double idf = idfs[vocabularyId];
+        if (Double.isNaN(idf)) {
+            int termDocs = collectionInfo.getDocumentFrequency(vocabulary.getTerm(vocabularyId));
+            idf = termDocs > 0 ? calculator.idf(collectionInfo.getDocumentCount(), termDocs) : 0;
+            idfs[vocabularyId] = idf;
+        }
+        return idf;
+    }
+
+    void count(char[] buffer, int length) {
+        int termId = documentTerms.add(buffer, length);
+        if (termId == frequencies.length) {
+            frequencies = Arrays.copyOf(frequencies, termId * 2);
+        }
+        frequencies[termId]++;
+    }
+}
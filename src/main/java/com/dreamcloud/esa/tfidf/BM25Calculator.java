@@ -32,7 +32,27 @@ public class BM25Calculator implements TfIdfStrategy {
         return this.tfIdfStrategy.idf(totalDocs, termDocs);
     }
 
-    public double norm(TfIdfScore[] scores) {
+    public double norm(TermScores scores) {
         return this.tfIdfStrategy.norm(scores);
     }
+
+    public TfIdfStrategy getTfIdfStrategy() {
+        return tfIdfStrategy;
+    }
+
+    public double getK() {
+        return k;
+    }
+
+    public double getB() {
+        return b;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    public char getIdfMode() {
+        return this.tfIdfStrategy.getIdfMode();
+    }
 }
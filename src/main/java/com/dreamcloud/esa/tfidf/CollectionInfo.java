@@ -1,5 +1,8 @@
 package com.dreamcloud.esa.tfidf;
 
+import com.dreamcloud.esa.fs.TermIdDictionary;
+import com.dreamcloud.esa.tfidf.strategy.InverseDocumentFrequencyStrategy;
+
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -7,6 +10,8 @@ public class CollectionInfo {
     private double averageDocumentLength;
     protected int numDocs;
     protected Map<String, Integer> documentFrequencies;
+    //Idf by term id for each idf mode, as stored in the term index
+    protected final Map<Character, float[]> idfTables = new ConcurrentHashMap<>();
 
     public CollectionInfo(int numDocs, double averageDocumentLength, Map<String, Integer> documentFrequencies) {
         this.numDocs = numDocs;
@@ -41,4 +46,47 @@ public class CollectionInfo {
     public double getAverageDocumentLength() {
         return averageDocumentLength;
     }
+
+    public void setIdfTables(Map<Character, float[]> idfTables) {
+        this.idfTables.clear();
+        this.idfTables.putAll(idfTables);
+    }
+
+    public Map<Character, float[]> getIdfTables() {
+        return idfTables;
+    }
+
+    /**
+     * The idf of every term of an index by term id.
+     * Uses the table stored in the term index when it has one for the mode,
+     * otherwise (an older index) computes it once from the dictionary's document frequencies.
+     */
+    public float[] getIdfTable(char idfMode, TermIdDictionary termIds) {
+        float[] idfTable = idfTables.get(idfMode);
+        if (idfTable == null || idfTable.length != termIds.size()) {
+            InverseDocumentFrequencyStrategy idfStrategy = TfIdfCalculator.getIdfStrategy(idfMode);
+            idfTable = new float[termIds.size()];
+            for (int termId = 0; termId < idfTable.length; termId++) {
+                idfTable[termId] = getIdf(idfStrategy, numDocs, termIds.getDocumentFrequency(termId));
+            }
+            idfTables.put(idfMode, idfTable);
+        }
+        return idfTable;
+    }
+
+    /**
+     * Computes the idf of every term of an index from its document frequencies by term id.
+     */
+    public static float[] buildIdfTable(InverseDocumentFrequencyStrategy idfStrategy, int numDocs, int[] documentFrequencies) {
+        float[] idfTable = new float[documentFrequencies.length];
+        for (int termId = 0; termId < idfTable.length; termId++) {
+            idfTable[termId] = getIdf(idfStrategy, numDocs, documentFrequencies[termId]);
+        }
+        return idfTable;
+    }
+
+    //Terms without documents get no idf, as when TfIdfAnalyzer scores them
+    protected static float getIdf(InverseDocumentFrequencyStrategy idfStrategy, int numDocs, int documentFrequency) {
+        return documentFrequency > 0 ? (float) idfStrategy.idf(numDocs, documentFrequency) : 0;
+    }
 }
@@ -5,5 +5,12 @@ import java.io.IOException;
 public interface CollectionWriter {
     public void writeCollectionInfo(CollectionInfo collectionInfo);
     public void writeDocumentScores(int documentId, TfIdfScore[] scores);
+
+    /**
+     * Writes scores straight from an analyzer's reused arrays, nothing may be kept from them after returning.
+     */
+    public default void writeDocumentScores(int documentId, TermScores scores) {
+        writeDocumentScores(documentId, scores.toTfIdfScores());
+    }
     public void close() throws IOException;
 }
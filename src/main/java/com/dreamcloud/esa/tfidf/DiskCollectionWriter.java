@@ -1,85 +1,189 @@
 package com.dreamcloud.esa.tfidf;
 
-import com.dreamcloud.esa.fs.FileSystem;
-import com.dreamcloud.esa.fs.TermIndexWriter;
-import com.dreamcloud.esa.fs.TermScore;
-import com.dreamcloud.esa.fs.TermScoreWriter;
+import com.dreamcloud.esa.fs.*;
 import com.dreamcloud.esa.vectorizer.PruneOptions;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.io.*;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+/**
+ * Holds every posting in memory and writes the term index and document scores on close().
+ *
+ * Each indexing thread appends to its own term -> PostingList map, so writes take no locks
+ * and don't allocate per posting; the per thread maps are merged on close().
+ * Callers must finish writing (e.g. wait on their futures) before calling close().
+ * With prune options, each term keeps only the postings that window pruning would keep at query time.
+ */
 public class DiskCollectionWriter implements CollectionWriter {
     private final File termIndexFile;
     private final File documentScoreFile;
-    protected Map<String, TfIdfByteVector> termScores = new ConcurrentHashMap<>();
+    protected final Queue<Map<String, PostingList>> threadPostings = new ConcurrentLinkedQueue<>();
+    protected final ThreadLocal<Map<String, PostingList>> localPostings = ThreadLocal.withInitial(() -> {
+        Map<String, PostingList> postings = new HashMap<>();
+        threadPostings.add(postings);
+        return postings;
+    });
     protected CollectionInfo collectionInfo;
     protected PruneOptions pruneOptions;
+    protected PostingCodec postingCodec;
+    protected String idfModes = "";
 
-    public DiskCollectionWriter(File termIndexFile, File documentScoreFile, PruneOptions pruneOptions) {
+    public DiskCollectionWriter(File termIndexFile, File documentScoreFile, PruneOptions pruneOptions, PostingCodec postingCodec) {
         this.termIndexFile = termIndexFile;
         this.documentScoreFile = documentScoreFile;
         this.pruneOptions = pruneOptions;
+        this.postingCodec = postingCodec;
+    }
+
+    public DiskCollectionWriter(File termIndexFile, File documentScoreFile, PruneOptions pruneOptions) {
+        this(termIndexFile, documentScoreFile, pruneOptions, new RawPostingCodec());
     }
 
     public DiskCollectionWriter(File termIndexFile, File documentScoreFile) {
         this(termIndexFile, documentScoreFile, null);
     }
 
+    /**
+     * Stores precomputed idf tables for these idf modes in the term index.
+     */
+    public void setIdfModes(String idfModes) {
+        this.idfModes = idfModes;
+    }
+
     public void writeCollectionInfo(CollectionInfo collectionInfo) {
         //Just save this, don't write anything till close().
         this.collectionInfo = collectionInfo;
     }
 
     public void writeDocumentScores(int documentId, TfIdfScore[] scores) {
+        Map<String, PostingList> termPostings = localPostings.get();
         for (TfIdfScore tfIdfScore: scores) {
-            String term = tfIdfScore.getTerm();
-            float score = (float) tfIdfScore.getScore();
-            TfIdfByteVector byteVector = termScores.getOrDefault(term, new TfIdfByteVector(256 * FileSystem.DOCUMENT_SCORE_BYTES));
-            ByteBuffer byteBuffer = ByteBuffer.allocate(FileSystem.DOCUMENT_SCORE_BYTES);
-            byteBuffer.putInt(documentId);
-            byteBuffer.putFloat(score);
-            byteVector.addBytes(byteBuffer.array());
-            termScores.put(term, byteVector);
+            PostingList postings = termPostings.get(tfIdfScore.getTerm());
+            if (postings == null) {
+                postings = new PostingList();
+                termPostings.put(tfIdfScore.getTerm(), postings);
+            }
+            postings.add(documentId, (float) tfIdfScore.getScore());
         }
     }
 
+    public void writeDocumentScores(int documentId, TermScores scores) {
+        Map<String, PostingList> termPostings = localPostings.get();
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            PostingList postings = termPostings.get(scores.terms[termIdx]);
+            if (postings == null) {
+                postings = new PostingList();
+                termPostings.put(scores.terms[termIdx], postings);
+            }
+            postings.add(documentId, (float) scores.scores[termIdx]);
+        }
+    }
+
+    /**
+     * Folds the per thread postings into a single map, releasing each thread's map as we go.
+     */
+    protected Map<String, PostingList> mergeThreadPostings() {
+        Map<String, PostingList> merged = null;
+        Map<String, PostingList> termPostings;
+        while ((termPostings = threadPostings.poll()) != null) {
+            if (merged == null) {
+                merged = termPostings;
+                continue;
+            }
+            for (Map.Entry<String, PostingList> entry: termPostings.entrySet()) {
+                PostingList postings = merged.get(entry.getKey());
+                if (postings == null) {
+                    merged.put(entry.getKey(), entry.getValue());
+                } else {
+                    postings.addAll(entry.getValue());
+                }
+            }
+            termPostings.clear();
+        }
+        return merged != null ? merged : new HashMap<>();
+    }
+
     public void close() throws IOException {
         if (collectionInfo == null) {
             throw new RuntimeException("You must call writeCollectionInfo prior to close().");
         }
 
         TermIndexWriter termIndexWriter = new TermIndexWriter(collectionInfo.numDocs, collectionInfo.getAverageDocumentLength());
+        termIndexWriter.setPostingCodec(postingCodec);
+        termIndexWriter.setIdfModes(idfModes);
         termIndexWriter.open(termIndexFile);
 
         TermScoreWriter termScoreWriter = new TermScoreWriter();
-        termScoreWriter.open(documentScoreFile);
-
-        //Write the term index
-        for (String term: termScores.keySet()) {
-            TfIdfByteVector byteVector = termScores.get(term);
-            int numScores = byteVector.getSize() / FileSystem.DOCUMENT_SCORE_BYTES;
-            termIndexWriter.writeTerm(term, numScores);
-
-            //Need to sort the scores and potentially prune
-            TermScore[] scores = new TermScore[numScores];
-            ByteBuffer scoreBuffer = byteVector.getByteBuffer();
-            for (int scoreIdx = 0; scoreIdx < numScores; scoreIdx++) {
-                TermScore termScore = new TermScore();
-                termScore.document = scoreBuffer.getInt();
-                termScore.score = scoreBuffer.getFloat();
-                scores[scoreIdx] = termScore;
+        ArrayDeque<ForkJoinTask<EncodedPostings>> pending = new ArrayDeque<>();
+        boolean written = false;
+        try {
+            termScoreWriter.open(documentScoreFile);
+
+            //Terms are written in sorted order so the output doesn't depend on thread scheduling
+            Map<String, PostingList> termScores = mergeThreadPostings();
+            String[] terms = termScores.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+
+            //Sort and encode terms on the fork-join pool while this thread writes finished terms in order
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            int window = pool.getParallelism() * 4;
+            int nextTerm = 0;
+            for (String term: terms) {
+                while (nextTerm < terms.length && pending.size() < window) {
+                    PostingList postings = termScores.remove(terms[nextTerm++]);
+                    pending.add(pool.submit(() -> encode(postings)));
+                }
+                EncodedPostings encoded = pending.poll().join();
+                termScoreWriter.writeTermScores(encoded.bytes);
+                termIndexWriter.writeTerm(term, encoded.documentFrequency, encoded.numScores, encoded.bytes.length);
             }
-            Arrays.sort(scores, (s1, s2) -> Float.compare(s2.score, s1.score));
-            termScoreWriter.writeTermScores(scores);
-            //termScoreWriter.writeTermScores(byteVector.getBytes());
+            written = true;
+        } finally {
+            for (ForkJoinTask<EncodedPostings> task: pending) {
+                task.cancel(false);
+            }
+            try {
+                if (written) {
+                    termIndexWriter.close();
+                } else {
+                    termIndexWriter.abort();
+                }
+            } finally {
+                termScoreWriter.close();
+            }
+        }
+    }
+
+    protected EncodedPostings encode(PostingList postings) {
+        postings.sortByScore();
+        //The document frequency stays that of the whole list, so idf doesn't change with pruning
+        int numScores = pruneOptions != null ? pruneOptions.getPruneLimit(postings.scores, postings.size) : postings.size;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(numScores * FileSystem.DOCUMENT_SCORE_BYTES);
+        try {
+            postingCodec.encode(postings.documents, postings.scores, numScores, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            //Can't happen when writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return new EncodedPostings(bytes.toByteArray(), postings.size, numScores);
+    }
+
+    protected static class EncodedPostings {
+        public final byte[] bytes;
+        public final int documentFrequency;
+        public final int numScores;
+
+        public EncodedPostings(byte[] bytes, int documentFrequency, int numScores) {
+            this.bytes = bytes;
+            this.documentFrequency = documentFrequency;
+            this.numScores = numScores;
         }
-        termIndexWriter.close();
-        termScoreWriter.close();
     }
 }
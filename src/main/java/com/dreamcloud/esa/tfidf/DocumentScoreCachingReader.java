@@ -1,70 +1,76 @@
 package com.dreamcloud.esa.tfidf;
 
-import org.apache.commons.collections15.map.FixedSizeMap;
+import com.dreamcloud.esa.fs.FileSystem;
+import com.dreamcloud.esa.fs.TermIdDictionary;
+import com.dreamcloud.esa.tools.FrequencySketch;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Caches the postings of popular terms, bounded by the total number of postings held.
+ *
+ * Terms enter a probationary LRU segment and move to a protected LRU segment when they're read again;
+ * the protected segment overflows back into probation. A new term only displaces the least recently used terms
+ * if a frequency sketch says it's been read more often than each of them (TinyLFU admission).
+ * Every operation is constant time apart from the evictions themselves.
+ */
 public class DocumentScoreCachingReader implements DocumentScoreReader {
-    protected static int DEFAULT_CAPACITY = 2048;
+    //About 128MB of raw postings
+    protected static final int DEFAULT_CAPACITY = 16 * 1024 * 1024;
+    protected static final double PROTECTED_RATIO = 0.8;
 
     DocumentScoreReader reader;
-    protected Map<String, Vector<TfIdfScore>> cache;
-    protected Map<String, Integer> cacheHits;
-    protected int capacity;
+    protected final long capacity;
+    protected final long protectedCapacity;
+    protected final LinkedHashMap<String, PostingList> probation = new LinkedHashMap<>(16, 0.75f, true);
+    protected final LinkedHashMap<String, PostingList> protectedTerms = new LinkedHashMap<>(16, 0.75f, true);
+    protected long probationPostings = 0;
+    protected long protectedPostings = 0;
+    protected final FrequencySketch sketch;
+    protected final AtomicLong hits = new AtomicLong(0);
+    protected final AtomicLong misses = new AtomicLong(0);
+    protected final AtomicLong evictions = new AtomicLong(0);
 
-    public DocumentScoreCachingReader(DocumentScoreReader reader, int capacity) {
-        if (capacity < 0) {
+    /**
+     * @param capacity the maximum number of postings to cache
+     */
+    public DocumentScoreCachingReader(DocumentScoreReader reader, long capacity) {
+        if (capacity <= 0) {
             throw new IllegalArgumentException("Capacity must be greater than 0.");
         }
         this.capacity = capacity;
+        this.protectedCapacity = (long) (capacity * PROTECTED_RATIO);
         this.reader = reader;
-        this.cache = new ConcurrentHashMap<>(capacity);
-        this.cacheHits = new ConcurrentHashMap<>(capacity);
+        //Assume a few hundred postings per cached term
+        this.sketch = new FrequencySketch((int) Math.min(Math.max(capacity / 256, 1024), 1 << 24));
     }
 
     public DocumentScoreCachingReader(DocumentScoreReader reader) {
         this(reader, DEFAULT_CAPACITY);
     }
 
+    public static long getCapacityForBytes(long bytes) {
+        return bytes / FileSystem.DOCUMENT_SCORE_BYTES;
+    }
+
     public int getDocumentFrequency(String term) throws IOException {
         return reader.getDocumentFrequency((term));
     }
 
-    public void clear() {
-        cache.clear();
+    public synchronized void clear() {
+        probation.clear();
+        protectedTerms.clear();
+        probationPostings = 0;
+        protectedPostings = 0;
     }
 
     public void getTfIdfScores(String term, Vector<TfIdfScore> outVector) throws IOException {
-        int termHits = cacheHits.getOrDefault(term, 0) + 1;
-        cacheHits.put(term, termHits);
-        if (cache.containsKey(term)) {
-            outVector.addAll(cache.get(term));
-        } else {
-            Vector<TfIdfScore> scores = new Vector<>();
-            reader.getTfIdfScores(term, scores);
-            if (cache.size() < capacity) {
-                //cache the sucker
-                cache.put(term, scores);
-            } else {
-                //we are at capacity, check the cache hits to see if we can replace anything
-                int lowestHits = Integer.MAX_VALUE;
-                String lowestHitsTerm = null;
-                for (String hitsTerm: cacheHits.keySet()) {
-                    int hits = cacheHits.get(hitsTerm);
-                    if (hits < lowestHits) {
-                        lowestHits = hits;
-                        lowestHitsTerm = hitsTerm;
-                    }
-                }
-                if (lowestHitsTerm != null && lowestHits < termHits) {
-                    //replace the sucker
-                    cache.remove(lowestHitsTerm);
-                    cache.put(term, scores);
-                }
-            }
-            outVector.addAll(scores);
+        PostingList postings = new PostingList(0);
+        getPostings(term, postings);
+        for (int scoreIdx = 0; scoreIdx < postings.size; scoreIdx++) {
+            outVector.add(new TfIdfScore(postings.documents[scoreIdx], term, postings.scores[scoreIdx]));
         }
     }
 
@@ -73,4 +79,136 @@ public class DocumentScoreCachingReader implements DocumentScoreReader {
             this.getTfIdfScores(term, outVector);
         }
     }
+
+    public TermIdDictionary getTermIds() {
+        return reader.getTermIds();
+    }
+
+    public void getPostings(String term, PostingList outPostings) throws IOException {
+        getPostings(term, -1, outPostings);
+    }
+
+    public void getPostings(int termId, PostingList outPostings) throws IOException {
+        getPostings(reader.getTermIds().getTerm(termId), termId, outPostings);
+    }
+
+    /**
+     * Misses are read by id when there is one, which skips the term lookup in the reader.
+     */
+    protected void getPostings(String term, int termId, PostingList outPostings) throws IOException {
+        outPostings.clear();
+        //Cached lists are never modified, so they can be copied outside of the lock
+        PostingList cached = lookup(term);
+        if (cached != null) {
+            hits.incrementAndGet();
+            outPostings.addAll(cached);
+            return;
+        }
+
+        misses.incrementAndGet();
+        if (termId >= 0) {
+            reader.getPostings(termId, outPostings);
+        } else {
+            reader.getPostings(term, outPostings);
+        }
+        //Only copy the list if it would be admitted; admit() checks again as the cache may have changed meanwhile
+        if (shouldAdmit(term, outPostings.size)) {
+            PostingList postings = new PostingList(outPostings.size);
+            postings.addAll(outPostings);
+            admit(term, postings);
+        }
+    }
+
+    protected synchronized PostingList lookup(String term) {
+        sketch.increment(term.hashCode());
+        PostingList postings = protectedTerms.get(term);
+        if (postings != null) {
+            return postings;
+        }
+
+        postings = probation.remove(term);
+        if (postings != null) {
+            //Read twice: promote it, making room by demoting the least recently used protected terms
+            probationPostings -= postings.size;
+            protectedTerms.put(term, postings);
+            protectedPostings += postings.size;
+            Iterator<Map.Entry<String, PostingList>> eldest = protectedTerms.entrySet().iterator();
+            while (protectedPostings > protectedCapacity) {
+                Map.Entry<String, PostingList> demoted = eldest.next();
+                eldest.remove();
+                protectedPostings -= demoted.getValue().size;
+                probation.put(demoted.getKey(), demoted.getValue());
+                probationPostings += demoted.getValue().size;
+            }
+        }
+        return postings;
+    }
+
+    protected synchronized boolean shouldAdmit(String term, int size) {
+        return findVictims(term, size, new ArrayList<>(), new ArrayList<>());
+    }
+
+    protected synchronized void admit(String term, PostingList postings) {
+        ArrayList<String> probationVictims = new ArrayList<>();
+        ArrayList<String> protectedVictims = new ArrayList<>();
+        if (!findVictims(term, postings.size, probationVictims, protectedVictims)) {
+            return;
+        }
+
+        for (String victim: probationVictims) {
+            probationPostings -= probation.remove(victim).size;
+        }
+        for (String victim: protectedVictims) {
+            protectedPostings -= protectedTerms.remove(victim).size;
+        }
+        evictions.addAndGet(probationVictims.size() + protectedVictims.size());
+        probation.put(term, postings);
+        probationPostings += postings.size;
+    }
+
+    /**
+     * Collects the terms a new term of the given size would displace, or returns false if it shouldn't be cached.
+     */
+    private boolean findVictims(String term, int size, List<String> probationVictims, List<String> protectedVictims) {
+        if (size > capacity || probation.containsKey(term) || protectedTerms.containsKey(term)) {
+            return false;
+        }
+
+        //Victims come from the end of probation first, then from the protected segment
+        int frequency = sketch.frequency(term.hashCode());
+        long freedPostings = 0;
+        Iterator<Map.Entry<String, PostingList>> probationEldest = probation.entrySet().iterator();
+        Iterator<Map.Entry<String, PostingList>> protectedEldest = protectedTerms.entrySet().iterator();
+        while (probationPostings + protectedPostings - freedPostings + size > capacity) {
+            Map.Entry<String, PostingList> victim;
+            if (probationEldest.hasNext()) {
+                victim = probationEldest.next();
+                probationVictims.add(victim.getKey());
+            } else {
+                victim = protectedEldest.next();
+                protectedVictims.add(victim.getKey());
+            }
+            if (sketch.frequency(victim.getKey().hashCode()) >= frequency) {
+                return false;
+            }
+            freedPostings += victim.getValue().size;
+        }
+        return true;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized long getCachedPostings() {
+        return probationPostings + protectedPostings;
+    }
 }
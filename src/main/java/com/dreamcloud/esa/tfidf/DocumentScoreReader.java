@@ -1,5 +1,7 @@
 package com.dreamcloud.esa.tfidf;
 
+import com.dreamcloud.esa.fs.TermIdDictionary;
+
 import java.io.IOException;
 import java.util.Vector;
 
@@ -7,4 +9,21 @@ public interface DocumentScoreReader {
     public int getDocumentFrequency(String term) throws IOException;
     public void getTfIdfScores(String term, Vector<TfIdfScore> outVector) throws IOException;
     public void getTfIdfScores(String[] terms, Vector<TfIdfScore> outVector) throws IOException;
+
+    /**
+     * Replaces the contents of outPostings with the term's postings, sorted by descending score.
+     * Callers should reuse the same list so reading doesn't allocate per posting.
+     */
+    public void getPostings(String term, PostingList outPostings) throws IOException;
+
+    /**
+     * The ids accepted by getPostings(int, PostingList), or null if the reader only looks terms up by name.
+     */
+    public default TermIdDictionary getTermIds() {
+        return null;
+    }
+
+    public default void getPostings(int termId, PostingList outPostings) throws IOException {
+        getPostings(getTermIds().getTerm(termId), outPostings);
+    }
 }
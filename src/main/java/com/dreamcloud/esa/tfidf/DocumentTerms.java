@@ -0,0 +1,13 @@
+package com.dreamcloud.esa.tfidf;
+
+/**
+ * A document's raw term frequencies, kept so it can be scored once the collection statistics are known.
+ */
+public class DocumentTerms {
+    public int document = -1;
+    public String[] terms;
+    //Ids in a TermIdDictionary (-1 for terms it doesn't have), or null
+    public int[] termIds;
+    public int[] frequencies;
+    public int length;
+}
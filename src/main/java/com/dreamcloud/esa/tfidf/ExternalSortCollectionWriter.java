@@ -0,0 +1,291 @@
+package com.dreamcloud.esa.tfidf;
+
+import com.dreamcloud.esa.fs.*;
+import com.dreamcloud.esa.vectorizer.PruneOptions;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the term index and document scores without holding the whole inverted index in memory.
+ *
+ * Postings are buffered until the memory budget is reached, then spilled to a temporary run file,
+ * sorted by term with each term's postings sorted by score.
+ * Each indexing thread buffers its own postings, without locks, and writes its own runs;
+ * callers must finish writing before calling close(), which writes what the threads still buffer as runs too.
+ * On close() the runs are k-way merged by term into term-index.dc and term-scores.dc.
+ *
+ * Run layout: per term: int term length, term bytes (UTF-8), int numScores, numScores * (int document, float score)
+ */
+public class ExternalSortCollectionWriter implements CollectionWriter {
+    //Rough cost of a buffered term beyond its postings: map entry, string and list headers
+    protected static final long TERM_OVERHEAD_BYTES = 128;
+
+    private final File termIndexFile;
+    private final File documentScoreFile;
+    private final File runDirectory;
+    protected final long memoryBudget;
+    protected PostingCodec postingCodec;
+    protected String idfModes = "";
+    protected PruneOptions pruneOptions;
+    protected CollectionInfo collectionInfo;
+    protected final Queue<RunBuffer> threadBuffers = new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger threadCount = new AtomicInteger(0);
+    protected final ThreadLocal<RunBuffer> localBuffer = ThreadLocal.withInitial(() -> {
+        RunBuffer buffer = new RunBuffer();
+        threadBuffers.add(buffer);
+        threadCount.incrementAndGet();
+        return buffer;
+    });
+    //Bytes buffered by all of the threads together
+    protected final AtomicLong bufferedBytes = new AtomicLong(0);
+    protected final Queue<File> runFiles = new ConcurrentLinkedQueue<>();
+    protected volatile IOException spillFailure;
+
+    public ExternalSortCollectionWriter(File termIndexFile, File documentScoreFile, long memoryBudget, PostingCodec postingCodec) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("The memory budget must be greater than 0.");
+        }
+        this.termIndexFile = termIndexFile;
+        this.documentScoreFile = documentScoreFile;
+        this.memoryBudget = memoryBudget;
+        this.postingCodec = postingCodec;
+        File parent = documentScoreFile.getAbsoluteFile().getParentFile();
+        this.runDirectory = parent != null ? parent : new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    public ExternalSortCollectionWriter(File termIndexFile, File documentScoreFile, long memoryBudget) {
+        this(termIndexFile, documentScoreFile, memoryBudget, new RawPostingCodec());
+    }
+
+    /**
+     * Stores precomputed idf tables for these idf modes in the term index.
+     */
+    public void setIdfModes(String idfModes) {
+        this.idfModes = idfModes;
+    }
+
+    /**
+     * Keeps only the postings of each term that window pruning would keep at query time.
+     */
+    public void setPruneOptions(PruneOptions pruneOptions) {
+        this.pruneOptions = pruneOptions;
+    }
+
+    public void writeCollectionInfo(CollectionInfo collectionInfo) {
+        //Just save this, don't write anything till close().
+        this.collectionInfo = collectionInfo;
+    }
+
+    public void writeDocumentScores(int documentId, TfIdfScore[] scores) {
+        RunBuffer buffer = localBuffer.get();
+        long addedBytes = 0;
+        for (TfIdfScore tfIdfScore: scores) {
+            addedBytes += buffer.addPosting(tfIdfScore.getTerm(), documentId, tfIdfScore.getScore());
+        }
+        spillIfFull(buffer, addedBytes);
+    }
+
+    public void writeDocumentScores(int documentId, TermScores scores) {
+        RunBuffer buffer = localBuffer.get();
+        long addedBytes = 0;
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            addedBytes += buffer.addPosting(scores.terms[termIdx], documentId, scores.scores[termIdx]);
+        }
+        spillIfFull(buffer, addedBytes);
+    }
+
+    /**
+     * Once the threads together are over the budget, a thread holding at least its share of the buffered bytes
+     * writes its own buffer as a run, so runs don't shrink as the thread count grows.
+     */
+    protected void spillIfFull(RunBuffer buffer, long addedBytes) {
+        long totalBytes = bufferedBytes.addAndGet(addedBytes);
+        if (totalBytes < memoryBudget || buffer.bufferedBytes * threadCount.get() < totalBytes) {
+            return;
+        }
+        Map<String, PostingList> termPostings = buffer.termPostings;
+        buffer.termPostings = new HashMap<>();
+        bufferedBytes.addAndGet(-buffer.bufferedBytes);
+        buffer.bufferedBytes = 0;
+        try {
+            writeRun(termPostings);
+        } catch (IOException e) {
+            spillFailure = e;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected void writeRun(Map<String, PostingList> postingsByTerm) throws IOException {
+        if (postingsByTerm.isEmpty()) {
+            return;
+        }
+        String[] terms = postingsByTerm.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+
+        File runFile = File.createTempFile("term-scores-run", ".tmp", runDirectory);
+        runFiles.add(runFile);
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), 1 << 16))) {
+            for (String term: terms) {
+                PostingList postings = postingsByTerm.get(term);
+                postings.sortByScore();
+                byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+                outputStream.writeInt(termBytes.length);
+                outputStream.write(termBytes);
+                outputStream.writeInt(postings.size);
+                for (int scoreIdx = 0; scoreIdx < postings.size; scoreIdx++) {
+                    outputStream.writeInt(postings.documents[scoreIdx]);
+                    outputStream.writeFloat(postings.scores[scoreIdx]);
+                }
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        if (collectionInfo == null) {
+            throw new RuntimeException("You must call writeCollectionInfo prior to close().");
+        }
+        if (spillFailure != null) {
+            throw new IOException("Failed to write a run.", spillFailure);
+        }
+
+        TermIndexWriter termIndexWriter = new TermIndexWriter(collectionInfo.numDocs, collectionInfo.getAverageDocumentLength());
+        termIndexWriter.setPostingCodec(postingCodec);
+        termIndexWriter.setIdfModes(idfModes);
+        termIndexWriter.open(termIndexFile);
+
+        TermScoreWriter termScoreWriter = new TermScoreWriter();
+        PriorityQueue<RunReader> runs = new PriorityQueue<>((r1, r2) -> r1.term.compareTo(r2.term));
+        boolean written = false;
+        try {
+            //Whatever the threads still buffer becomes one last run each
+            RunBuffer buffer;
+            while ((buffer = threadBuffers.poll()) != null) {
+                writeRun(buffer.termPostings);
+                buffer.termPostings = new HashMap<>();
+                buffer.bufferedBytes = 0;
+            }
+            bufferedBytes.set(0);
+
+            termScoreWriter.open(documentScoreFile);
+            for (File runFile: runFiles) {
+                RunReader run = new RunReader(runFile);
+                if (run.next()) {
+                    runs.add(run);
+                } else {
+                    run.close();
+                }
+            }
+
+            //Runs are term sorted, so all postings for the smallest term sit at the head of the queue
+            PostingList postings = new PostingList();
+            while (!runs.isEmpty()) {
+                String term = runs.peek().term;
+                postings.clear();
+                while (!runs.isEmpty() && runs.peek().term.equals(term)) {
+                    RunReader run = runs.poll();
+                    run.readPostings(postings);
+                    if (run.next()) {
+                        runs.add(run);
+                    } else {
+                        run.close();
+                    }
+                }
+                //Each run is already score sorted, but a term spread over several runs needs a final sort
+                postings.sortByScore();
+                int numScores = pruneOptions != null ? pruneOptions.getPruneLimit(postings.scores, postings.size) : postings.size;
+                int byteLength = termScoreWriter.writeTermScores(postingCodec, postings.documents, postings.scores, numScores);
+                termIndexWriter.writeTerm(term, postings.size, numScores, byteLength);
+            }
+            written = true;
+        } finally {
+            try {
+                for (RunReader run: runs) {
+                    run.close();
+                }
+            } finally {
+                for (File runFile: runFiles) {
+                    runFile.delete();
+                }
+                runFiles.clear();
+                try {
+                    if (written) {
+                        termIndexWriter.close();
+                    } else {
+                        termIndexWriter.abort();
+                    }
+                } finally {
+                    termScoreWriter.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * The postings buffered by one thread, which only that thread adds to.
+     */
+    protected static class RunBuffer {
+        protected Map<String, PostingList> termPostings = new HashMap<>();
+        protected long bufferedBytes = 0;
+
+        /**
+         * @return the bytes the posting added to the buffer
+         */
+        protected long addPosting(String term, int documentId, double score) {
+            long addedBytes = 0;
+            PostingList postings = termPostings.get(term);
+            if (postings == null) {
+                postings = new PostingList();
+                termPostings.put(term, postings);
+                addedBytes += TERM_OVERHEAD_BYTES + term.length() * 2L + postings.getCapacity() * (long) FileSystem.DOCUMENT_SCORE_BYTES;
+            }
+            int capacity = postings.getCapacity();
+            postings.add(documentId, (float) score);
+            addedBytes += (postings.getCapacity() - capacity) * (long) FileSystem.DOCUMENT_SCORE_BYTES;
+            bufferedBytes += addedBytes;
+            return addedBytes;
+        }
+    }
+
+    protected static class RunReader {
+        protected final DataInputStream inputStream;
+        protected String term;
+        protected int numScores;
+
+        public RunReader(File runFile) throws IOException {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), 1 << 16));
+        }
+
+        public boolean next() throws IOException {
+            int termLength;
+            try {
+                termLength = inputStream.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            term = new String(inputStream.readNBytes(termLength), StandardCharsets.UTF_8);
+            numScores = inputStream.readInt();
+            return true;
+        }
+
+        public void readPostings(PostingList postings) throws IOException {
+            postings.ensureCapacity(postings.size + numScores);
+            for (int scoreIdx = 0; scoreIdx < numScores; scoreIdx++) {
+                postings.documents[postings.size] = inputStream.readInt();
+                postings.scores[postings.size++] = inputStream.readFloat();
+            }
+        }
+
+        public void close() throws IOException {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.dreamcloud.esa.tfidf;
+
+import com.dreamcloud.esa.fs.TermIdDictionary;
+import com.dreamcloud.esa.fs.TermIndex;
+import com.dreamcloud.esa.fs.TermIndexEntry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Serves a fixed set of heavy terms from decoded postings held off-heap, and everything else from another reader.
+ *
+ * Each pinned term is a direct buffer of numScores documents followed by numScores scores,
+ * so reading it is a bulk copy with no decoding and no page faults on the score file.
+ */
+public class PinnedScoreReader implements DocumentScoreReader {
+    protected final DocumentScoreReader reader;
+    protected final Map<String, ByteBuffer> pinnedTerms = new HashMap<>();
+    //The same buffers by term id, so id based reads skip the term lookup
+    protected final ByteBuffer[] pinnedIds;
+    protected long pinnedPostings = 0;
+
+    /**
+     * @param reader serves the terms that aren't pinned
+     * @param source reads the pinned terms once, at construction
+     */
+    public PinnedScoreReader(DocumentScoreReader reader, DocumentScoreReader source, Collection<String> terms) throws IOException {
+        this.reader = reader;
+        TermIdDictionary termIds = reader.getTermIds();
+        this.pinnedIds = new ByteBuffer[termIds != null ? termIds.size() : 0];
+        PostingList postings = new PostingList();
+        for (String term: terms) {
+            source.getPostings(term, postings);
+            if (postings.size == 0) {
+                continue;
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(postings.size * (Integer.BYTES + Float.BYTES)).order(ByteOrder.nativeOrder());
+            buffer.asIntBuffer().put(postings.documents, 0, postings.size);
+            buffer.position(postings.size * Integer.BYTES);
+            buffer.asFloatBuffer().put(postings.scores, 0, postings.size);
+            buffer.clear();
+            pinnedTerms.put(term, buffer);
+            if (termIds != null) {
+                int termId = termIds.getId(term);
+                if (termId >= 0) {
+                    pinnedIds[termId] = buffer;
+                }
+            }
+            pinnedPostings += postings.size;
+        }
+    }
+
+    /**
+     * The terms with the most postings.
+     */
+    public static List<String> getHeaviestTerms(TermIndex termIndex, int count) {
+        return getHeaviestTerms(termIndex, count, null);
+    }
+
+    /**
+     * The terms that cost the most to read: their number of postings, weighted by how often they're queried.
+     * The query statistics have a term and a count on each line, separated by whitespace.
+     * Terms missing from the statistics are weighted as if queried once.
+     */
+    public static List<String> getHeaviestTerms(TermIndex termIndex, int count, File queryStatistics) {
+        Map<String, Long> queryCounts = new HashMap<>();
+        if (queryStatistics != null) {
+            try (BufferedReader statisticsReader = new BufferedReader(new InputStreamReader(new FileInputStream(queryStatistics), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = statisticsReader.readLine()) != null) {
+                    String[] columns = line.trim().split("\\s+");
+                    if (columns.length == 2) {
+                        queryCounts.merge(columns[0], Long.parseLong(columns[1]), Long::sum);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        //Keep the heaviest terms in a bounded min heap
+        PriorityQueue<TermWeight> heaviest = new PriorityQueue<>(Comparator.comparingDouble(t -> t.weight));
+        for (TermIndexEntry entry: termIndex.getEntries()) {
+            double weight = (double) entry.numScores * queryCounts.getOrDefault(entry.term, 1L);
+            if (heaviest.size() < count) {
+                heaviest.add(new TermWeight(entry.term, weight));
+            } else if (count > 0 && weight > heaviest.peek().weight) {
+                heaviest.poll();
+                heaviest.add(new TermWeight(entry.term, weight));
+            }
+        }
+        List<String> terms = new ArrayList<>();
+        for (TermWeight termWeight: heaviest) {
+            terms.add(termWeight.term);
+        }
+        return terms;
+    }
+
+    public int getPinnedTermCount() {
+        return pinnedTerms.size();
+    }
+
+    public long getPinnedPostings() {
+        return pinnedPostings;
+    }
+
+    public int getDocumentFrequency(String term) throws IOException {
+        return reader.getDocumentFrequency(term);
+    }
+
+    public TermIdDictionary getTermIds() {
+        return reader.getTermIds();
+    }
+
+    public void getPostings(String term, PostingList outPostings) throws IOException {
+        ByteBuffer pinned = pinnedTerms.get(term);
+        if (pinned == null) {
+            reader.getPostings(term, outPostings);
+            return;
+        }
+        copyPostings(pinned, outPostings);
+    }
+
+    public void getPostings(int termId, PostingList outPostings) throws IOException {
+        ByteBuffer pinned = termId < pinnedIds.length ? pinnedIds[termId] : null;
+        if (pinned == null) {
+            reader.getPostings(termId, outPostings);
+            return;
+        }
+        copyPostings(pinned, outPostings);
+    }
+
+    protected void copyPostings(ByteBuffer pinned, PostingList outPostings) {
+        //Duplicates keep concurrent readers from sharing a position
+        int numScores = pinned.capacity() / (Integer.BYTES + Float.BYTES);
+        ByteBuffer buffer = pinned.duplicate().order(ByteOrder.nativeOrder());
+        outPostings.clear();
+        outPostings.ensureCapacity(numScores);
+        buffer.asIntBuffer().get(outPostings.documents, 0, numScores);
+        buffer.position(numScores * Integer.BYTES);
+        buffer.asFloatBuffer().get(outPostings.scores, 0, numScores);
+        outPostings.size = numScores;
+    }
+
+    public void getTfIdfScores(String term, Vector<TfIdfScore> outVector) throws IOException {
+        if (!pinnedTerms.containsKey(term)) {
+            reader.getTfIdfScores(term, outVector);
+            return;
+        }
+        PostingList postings = new PostingList(0);
+        getPostings(term, postings);
+        for (int scoreIdx = 0; scoreIdx < postings.size; scoreIdx++) {
+            outVector.add(new TfIdfScore(postings.documents[scoreIdx], term, postings.scores[scoreIdx]));
+        }
+    }
+
+    public void getTfIdfScores(String[] terms, Vector<TfIdfScore> outVector) throws IOException {
+        for (String term: terms) {
+            getTfIdfScores(term, outVector);
+        }
+    }
+
+    protected static class TermWeight {
+        public final String term;
+        public final double weight;
+
+        public TermWeight(String term, double weight) {
+            this.term = term;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.dreamcloud.esa.tfidf;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of (document, score) postings kept in parallel primitive arrays.
+ */
+public class PostingList {
+    public int[] documents;
+    public float[] scores;
+    public int size = 0;
+
+    public PostingList(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0.");
+        }
+        documents = new int[capacity];
+        scores = new float[capacity];
+    }
+
+    public PostingList() {
+        this(16);
+    }
+
+    public int getCapacity() {
+        return documents.length;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (documents.length < capacity) {
+            int resized = Math.max(capacity, documents.length * 2);
+            documents = Arrays.copyOf(documents, resized);
+            scores = Arrays.copyOf(scores, resized);
+        }
+    }
+
+    public void add(int document, float score) {
+        if (size == documents.length) {
+            ensureCapacity(size + 1);
+        }
+        documents[size] = document;
+        scores[size++] = score;
+    }
+
+    public void addAll(PostingList other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.documents, 0, documents, size, other.size);
+        System.arraycopy(other.scores, 0, scores, size, other.size);
+        size += other.size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sorts by descending score (ties by ascending document) without boxing.
+     * Each posting is packed into a long whose natural order is the order we want.
+     */
+    public void sortByScore() {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) ~sortableBits(Float.floatToIntBits(scores[i])) << 32) | (documents[i] & 0xFFFFFFFFL);
+        }
+        //Falls back to a sequential sort for short lists
+        Arrays.parallelSort(keys);
+        for (int i = 0; i < size; i++) {
+            documents[i] = (int) keys[i];
+            scores[i] = Float.intBitsToFloat(sortableBits(~(int) (keys[i] >>> 32)));
+        }
+    }
+
+    /**
+     * Float bits that sort like the float when compared as ints (the mapping is its own inverse).
+     */
+    protected static int sortableBits(int bits) {
+        return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+    }
+}
@@ -1,6 +1,8 @@
 package com.dreamcloud.esa.tfidf;
 
 import com.dreamcloud.esa.fs.DocumentScoreDataReader;
+import com.dreamcloud.esa.fs.PostingCodec;
+import com.dreamcloud.esa.fs.TermIdDictionary;
 import com.dreamcloud.esa.fs.TermIndex;
 import com.dreamcloud.esa.fs.TermIndexEntry;
 
@@ -11,10 +13,16 @@ import java.util.Vector;
 public class ScoreReader implements DocumentScoreReader {
     protected TermIndex termIndex;
     protected DocumentScoreDataReader scoreFileReader;
+    protected PostingCodec postingCodec;
+    protected final TermIdDictionary termIds;
+    //Decoding scratch space, reused for every term read on a thread
+    protected ThreadLocal<PostingList> decodeBuffers = ThreadLocal.withInitial(PostingList::new);
 
     public ScoreReader(TermIndex termIndex, DocumentScoreDataReader scoreFileReader) {
         this.termIndex = termIndex;
         this.scoreFileReader = scoreFileReader;
+        this.postingCodec = termIndex.getPostingCodec();
+        this.termIds = termIndex.getTermIds();
     }
 
     public int getDocumentFrequency(String term) {
@@ -26,15 +34,35 @@ public class ScoreReader implements DocumentScoreReader {
         }
     }
 
-    public void getTfIdfScores(String term, Vector<TfIdfScore> outVector) throws IOException {
+    public void getPostings(String term, PostingList outPostings) throws IOException {
+        outPostings.clear();
         TermIndexEntry entry = termIndex.getEntry(term);
         if (entry != null) {
-            ByteBuffer byteBuffer = scoreFileReader.readScores(entry.offset, entry.numScores);
-            for (int scoreIdx = 0; scoreIdx < entry.numScores; scoreIdx++) {
-                int doc = byteBuffer.getInt();
-                float score = byteBuffer.getFloat();
-                outVector.add(new TfIdfScore(doc, term, score));
-            }
+            ByteBuffer byteBuffer = scoreFileReader.readBytes(entry.offset, entry.byteLength);
+            outPostings.ensureCapacity(entry.numScores);
+            postingCodec.decode(byteBuffer, entry.numScores, outPostings.documents, outPostings.scores);
+            outPostings.size = entry.numScores;
+        }
+    }
+
+    public TermIdDictionary getTermIds() {
+        return termIds;
+    }
+
+    public void getPostings(int termId, PostingList outPostings) throws IOException {
+        int numScores = termIds.getNumScores(termId);
+        ByteBuffer byteBuffer = scoreFileReader.readBytes(termIds.getOffset(termId), termIds.getByteLength(termId));
+        outPostings.clear();
+        outPostings.ensureCapacity(numScores);
+        postingCodec.decode(byteBuffer, numScores, outPostings.documents, outPostings.scores);
+        outPostings.size = numScores;
+    }
+
+    public void getTfIdfScores(String term, Vector<TfIdfScore> outVector) throws IOException {
+        PostingList postings = decodeBuffers.get();
+        getPostings(term, postings);
+        for (int scoreIdx = 0; scoreIdx < postings.size; scoreIdx++) {
+            outVector.add(new TfIdfScore(postings.documents[scoreIdx], term, postings.scores[scoreIdx]));
         }
     }
 
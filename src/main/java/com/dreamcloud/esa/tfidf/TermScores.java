@@ -0,0 +1,39 @@
+package com.dreamcloud.esa.tfidf;
+
+import java.util.Arrays;
+
+/**
+ * A document's term frequencies and scores in flat arrays.
+ *
+ * TfIdfAnalyzer reuses one instance per thread, so the contents are only valid
+ * until the thread analyzes its next document; copy anything that has to be kept.
+ */
+public class TermScores {
+    public int size = 0;
+    //The number of tokens in the document
+    public int length = 0;
+    public String[] terms = new String[64];
+    //Ids in a TermIdDictionary (-1 for terms it doesn't have), only set when one was used
+    public int[] termIds = new int[64];
+    public int[] frequencies = new int[64];
+    public double[] scores = new double[64];
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > terms.length) {
+            capacity = Math.max(capacity, terms.length * 2);
+            terms = Arrays.copyOf(terms, capacity);
+            termIds = Arrays.copyOf(termIds, capacity);
+            frequencies = Arrays.copyOf(frequencies, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+        }
+    }
+
+    public TfIdfScore[] toTfIdfScores() {
+        TfIdfScore[] tfIdfScores = new TfIdfScore[size];
+        for (int termIdx = 0; termIdx < size; termIdx++) {
+            tfIdfScores[termIdx] = new TfIdfScore(terms[termIdx], scores[termIdx]);
+            tfIdfScores[termIdx].setTermId(termIds[termIdx]);
+        }
+        return tfIdfScores;
+    }
+}
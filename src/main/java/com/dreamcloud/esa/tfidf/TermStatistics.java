@@ -0,0 +1,86 @@
+package com.dreamcloud.esa.tfidf;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
+import org.eclipse.collections.api.set.MutableSet;
+import org.eclipse.collections.impl.factory.primitive.ObjectIntMaps;
+import org.eclipse.collections.impl.set.mutable.UnifiedSet;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Document frequencies and lengths counted over part of a collection.
+ *
+ * An instance is only used by one thread; each thread counts into its own instance
+ * and the instances are merged once the corpus has been read.
+ */
+public class TermStatistics {
+    protected final MutableObjectIntMap<String> documentFrequencies = ObjectIntMaps.mutable.empty();
+    //Reused between documents to find each document's unique terms
+    protected final MutableSet<String> documentTerms = UnifiedSet.newSet();
+    protected int documentCount = 0;
+    protected long termCount = 0;
+
+    /**
+     * Counts a document's terms, returning the document length.
+     */
+    public int addDocument(Analyzer analyzer, String text) throws IOException {
+        int length = 0;
+        try (TokenStream tokens = analyzer.tokenStream("text", text)) {
+            CharTermAttribute termAttribute = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                documentTerms.add(termAttribute.toString());
+                length++;
+            }
+            tokens.end();
+        }
+        addDocument(documentTerms, length);
+        documentTerms.clear();
+        return length;
+    }
+
+    public void addDocument(Iterable<String> uniqueTerms, int length) {
+        for (String term: uniqueTerms) {
+            documentFrequencies.addToValue(term, 1);
+        }
+        documentCount++;
+        termCount += length;
+    }
+
+    public void merge(TermStatistics statistics) {
+        statistics.documentFrequencies.forEachKeyValue(documentFrequencies::addToValue);
+        documentCount += statistics.documentCount;
+        termCount += statistics.termCount;
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public long getTermCount() {
+        return termCount;
+    }
+
+    public double getAverageDocumentLength() {
+        return termCount / (double) documentCount;
+    }
+
+    public int getDocumentFrequency(String term) {
+        return documentFrequencies.get(term);
+    }
+
+    public Map<String, Integer> getDocumentFrequencies() {
+        Map<String, Integer> frequencies = new HashMap<>(documentFrequencies.size() * 4 / 3 + 1);
+        documentFrequencies.forEachKeyValue(frequencies::put);
+        return frequencies;
+    }
+
+    public CollectionInfo getCollectionInfo() {
+        return new CollectionInfo(documentCount, getAverageDocumentLength(), getDocumentFrequencies());
+    }
+}
@@ -1,77 +1,190 @@
 package com.dreamcloud.esa.tfidf;
 
+import com.dreamcloud.esa.fs.TermIdDictionary;
+import com.dreamcloud.esa.tfidf.kernel.ScoringKernel;
+import com.dreamcloud.esa.tfidf.kernel.ScoringKernelFactory;
 import com.dreamcloud.esa.tfidf.strategy.TfIdfStrategy;
+import com.dreamcloud.esa.tools.TermTable;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
-import org.eclipse.collections.impl.factory.primitive.ObjectIntMaps;
 
 import java.io.IOException;
+import java.util.Arrays;
 
+/**
+ * Scores a document's terms.
+ *
+ * The getTermScores methods work in a per thread AnalysisContext and return its reused TermScores,
+ * so analyzing a document doesn't allocate per token or per term once the thread has warmed up.
+ * The getTfIdfScores methods copy the result into TfIdfScore objects.
+ */
 public class TfIdfAnalyzer {
     TfIdfStrategy calculator;
+    protected final ScoringKernel kernel;
     protected final Analyzer analyzer;
     protected CollectionInfo collectionInfo;
+    protected final ThreadLocal<AnalysisContext> contexts = ThreadLocal.withInitial(AnalysisContext::new);
 
-    public TfIdfAnalyzer(TfIdfStrategy calculator, Analyzer analyzer, CollectionInfo collectionInfo) {
+    public TfIdfAnalyzer(TfIdfStrategy calculator, Analyzer analyzer, CollectionInfo collectionInfo, ScoringKernel kernel) {
         this.calculator = calculator;
+        this.kernel = kernel;
         this.analyzer = analyzer;
         this.collectionInfo = collectionInfo;
     }
 
-    public TfIdfScore[] getTfIdfScores(String text) throws IOException {
-        MutableObjectIntMap<String> termFrequencies = ObjectIntMaps.mutable.empty();
+    public TfIdfAnalyzer(TfIdfStrategy calculator, Analyzer analyzer, CollectionInfo collectionInfo) {
+        this(calculator, analyzer, collectionInfo, ScoringKernelFactory.getKernel(calculator));
+    }
+
+    public void setCollectionInfo(CollectionInfo collectionInfo) {
+        this.collectionInfo = collectionInfo;
+    }
+
+    /**
+     * Counts the text's terms into the context's scores.
+     * With a dictionary the terms get their id, and only terms it doesn't have are given their own string.
+     */
+    protected TermScores countTerms(AnalysisContext context, String text, TermIdDictionary termIds) throws IOException {
+        context.reset();
         TokenStream tokens = analyzer.tokenStream("text", text);
         CharTermAttribute termAttribute = tokens.addAttribute(CharTermAttribute.class);
         tokens.reset();
         int dl = 0;
-        double avgDl = collectionInfo.getAverageDocumentLength();
         while(tokens.incrementToken()) {
-            termFrequencies.addToValue(termAttribute.toString(), 1);
+            context.count(termAttribute.buffer(), termAttribute.length());
             dl++;
         }
         tokens.close();
-        TermInfo[] termInfos = new TermInfo[termFrequencies.size()];
+
+        TermScores scores = context.scores;
+        TermTable documentTerms = context.documentTerms;
+        scores.length = dl;
+        scores.ensureCapacity(documentTerms.size());
+        if (context.vocabularyIds.length < documentTerms.size()) {
+            context.vocabularyIds = new int[scores.terms.length];
+        }
         int i = 0;
+        for (int documentTermId = 0; documentTermId < documentTerms.size(); documentTermId++) {
+            if (termIds != null) {
+                int termId = termIds.getId(documentTerms, documentTermId);
+                scores.terms[i] = termId >= 0 ? termIds.getTerm(termId) : documentTerms.getTerm(documentTermId);
+                scores.termIds[i] = termId;
+            } else {
+                int vocabularyId = context.vocabulary.add(documentTerms, documentTermId);
+                context.vocabularyIds[i] = vocabularyId;
+                scores.terms[i] = context.vocabulary.getTerm(vocabularyId);
+                scores.termIds[i] = -1;
+            }
+            scores.frequencies[i++] = context.frequencies[documentTermId];
+        }
+        scores.size = i;
+        context.hasVocabularyIds = termIds == null;
+        return scores;
+    }
+
+    /**
+     * Scores the counted terms in place: looks up the idf of each term, then the kernel does the rest.
+     * With a dictionary the idf is read from the collection info's idf table for the dictionary's term ids
+     * instead of computed per term, so the dictionary must belong to the index the collection info was read from.
+     */
+    protected TermScores scoreTerms(AnalysisContext context, TermScores scores, TermIdDictionary termIds) {
         int totalTf = 0;
         int maxTf = 0;
-        int totalDocs = collectionInfo.getDocumentCount();
-        for (String term: termFrequencies.keySet()) {
-            int tf = termFrequencies.get(term);
-            totalTf += tf;
-            maxTf = Math.max(tf, maxTf);
-            TermInfo termInfo = new TermInfo();
-            termInfo.term = term;
-            termInfo.tf = tf;
-            termInfo.dl = dl;
-            termInfo.avgDl = avgDl;
-            termInfos[i++] = termInfo;
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            totalTf += scores.frequencies[termIdx];
+            maxTf = Math.max(scores.frequencies[termIdx], maxTf);
         }
+        TermInfo termInfo = context.termInfo;
+        termInfo.dl = scores.length;
+        termInfo.avgDl = collectionInfo.getAverageDocumentLength();
+        termInfo.avgTf = totalTf / (double) scores.size;
+        termInfo.maxTf = maxTf;
 
-        for (TermInfo termInfo: termInfos) {
-            termInfo.avgTf = totalTf / (double) termInfos.length;
-            termInfo.maxTf = maxTf;
+        int totalDocs = collectionInfo.getDocumentCount();
+        float[] idfTable = null;
+        if (termIds != null && calculator.getIdfMode() != 0) {
+            idfTable = collectionInfo.getIdfTable(calculator.getIdfMode(), termIds);
         }
-
-        TfIdfScore[] scores = new TfIdfScore[termFrequencies.size()];
-        i = 0;
-        for (TermInfo termInfo: termInfos) {
-            double tf = calculator.tf(termInfo.tf, termInfo);
-            int termDocs = collectionInfo.getDocumentFrequency(termInfo.term);
-            double idf = 0;
-            if (termDocs > 0) {
-                idf = calculator.idf(totalDocs, termDocs);
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            double idf;
+            int termId = scores.termIds[termIdx];
+            if (termIds != null) {
+                if (termId < 0) {
+                    idf = 0;
+                } else if (idfTable != null) {
+                    idf = idfTable[termId];
+                } else {
+                    idf = getIdf(totalDocs, termIds.getDocumentFrequency(termId));
+                }
+            } else if (context.hasVocabularyIds) {
+                idf = context.getIdf(context.vocabularyIds[termIdx], collectionInfo, calculator);
+            } else {
+                idf = getIdf(totalDocs, collectionInfo.getDocumentFrequency(scores.terms[termIdx]));
             }
-
-            scores[i++] = new TfIdfScore(termInfo.term, tf * idf);
-        }
-
-        double norm = calculator.norm(scores);
-        for (TfIdfScore score: scores) {
-            score.normalizeScore(norm);
+            scores.scores[termIdx] = idf;
         }
 
+        kernel.score(scores, termInfo);
         return scores;
     }
+
+    protected double getIdf(int totalDocs, int termDocs) {
+        return termDocs > 0 ? calculator.idf(totalDocs, termDocs) : 0;
+    }
+
+    public TermScores getTermScores(String text) throws IOException {
+        AnalysisContext context = contexts.get();
+        return scoreTerms(context, countTerms(context, text, null), null);
+    }
+
+    public TermScores getTermScores(String text, TermIdDictionary termIds) throws IOException {
+        AnalysisContext context = contexts.get();
+        return scoreTerms(context, countTerms(context, text, termIds), termIds);
+    }
+
+    /**
+     * Scores terms counted earlier, e.g. once the collection info is known.
+     */
+    public TermScores getTermScores(DocumentTerms documentTerms) {
+        AnalysisContext context = contexts.get();
+        TermScores scores = context.scores;
+        scores.ensureCapacity(documentTerms.terms.length);
+        scores.size = documentTerms.terms.length;
+        scores.length = documentTerms.length;
+        System.arraycopy(documentTerms.terms, 0, scores.terms, 0, scores.size);
+        System.arraycopy(documentTerms.frequencies, 0, scores.frequencies, 0, scores.size);
+        Arrays.fill(scores.termIds, 0, scores.size, -1);
+        context.hasVocabularyIds = false;
+        return scoreTerms(context, scores, null);
+    }
+
+    public DocumentTerms getTermFrequencies(String text) throws IOException {
+        return toDocumentTerms(countTerms(contexts.get(), text, null), false);
+    }
+
+    public DocumentTerms getTermFrequencies(String text, TermIdDictionary termIds) throws IOException {
+        return toDocumentTerms(countTerms(contexts.get(), text, termIds), true);
+    }
+
+    protected DocumentTerms toDocumentTerms(TermScores scores, boolean withIds) {
+        DocumentTerms documentTerms = new DocumentTerms();
+        documentTerms.terms = Arrays.copyOf(scores.terms, scores.size);
+        documentTerms.frequencies = Arrays.copyOf(scores.frequencies, scores.size);
+        documentTerms.termIds = withIds ? Arrays.copyOf(scores.termIds, scores.size) : null;
+        documentTerms.length = scores.length;
+        return documentTerms;
+    }
+
+    public TfIdfScore[] getTfIdfScores(String text) throws IOException {
+        return getTermScores(text).toTfIdfScores();
+    }
+
+    public TfIdfScore[] getTfIdfScores(String text, TermIdDictionary termIds) throws IOException {
+        return getTermScores(text, termIds).toTfIdfScores();
+    }
+
+    public TfIdfScore[] getTfIdfScores(DocumentTerms documentTerms) {
+        return getTermScores(documentTerms).toTfIdfScores();
+    }
 }
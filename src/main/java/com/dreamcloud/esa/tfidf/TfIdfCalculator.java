@@ -16,8 +16,11 @@ public class TfIdfCalculator implements TfIdfStrategy {
     protected final TermFrequencyStrategy tfStrategy;
     protected final InverseDocumentFrequencyStrategy idfStrategy;
     protected final NormalizationStrategy normStrategy;
+    //The idf character of the mode, or 0 for a strategy that wasn't given by mode
+    protected final char idfMode;
 
     public TfIdfCalculator(TermFrequencyStrategy tfStrategy, InverseDocumentFrequencyStrategy idfStrategy, NormalizationStrategy normStrategy) {
+        this.idfMode = 0;
         this.tfStrategy = tfStrategy;
         this.idfStrategy = idfStrategy;
         this.normStrategy = normStrategy;
@@ -53,22 +56,8 @@ public class TfIdfCalculator implements TfIdfStrategy {
         }
 
         //Inverse document frequency strategy
-        switch(mode.charAt(1)) {
-            case 'n':
-                idfStrategy = new NoInverseDocumentFrequency();
-                break;
-            case 't':
-                idfStrategy = new LogarithmicInverseDocumentFrequency();
-                break;
-            case 'p':
-                idfStrategy = new ProbabilisticInverseDocumentFrequency();
-                break;
-            case 'b':
-                idfStrategy = new BM25LogarithmicInverseDocumentFrequency();
-                break;
-            default:
-                throw new IllegalArgumentException("Inverse document frequency mode character must be in string: ntp");
-        }
+        idfMode = mode.charAt(1);
+        idfStrategy = getIdfStrategy(idfMode);
 
         //Normalization strategy
         switch(mode.charAt(2)) {
@@ -89,6 +78,21 @@ public class TfIdfCalculator implements TfIdfStrategy {
         }
     }
 
+    public static InverseDocumentFrequencyStrategy getIdfStrategy(char idfMode) {
+        switch(idfMode) {
+            case 'n':
+                return new NoInverseDocumentFrequency();
+            case 't':
+                return new LogarithmicInverseDocumentFrequency();
+            case 'p':
+                return new ProbabilisticInverseDocumentFrequency();
+            case 'b':
+                return new BM25LogarithmicInverseDocumentFrequency();
+            default:
+                throw new IllegalArgumentException("Inverse document frequency mode character must be in string: ntpb");
+        }
+    }
+
     public double tf(double tf, TermInfo termInfo) {
         return tfStrategy.tf(tf, termInfo);
     }
@@ -97,7 +101,19 @@ public class TfIdfCalculator implements TfIdfStrategy {
         return idfStrategy.idf(totalDocs, termDocs);
     }
 
-    public double norm(TfIdfScore[] scores) {
+    public double norm(TermScores scores) {
         return normStrategy.norm(scores);
     }
+
+    public TermFrequencyStrategy getTfStrategy() {
+        return tfStrategy;
+    }
+
+    public NormalizationStrategy getNormStrategy() {
+        return normStrategy;
+    }
+
+    public char getIdfMode() {
+        return idfMode;
+    }
 }
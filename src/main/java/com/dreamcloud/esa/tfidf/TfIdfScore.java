@@ -3,6 +3,8 @@ package com.dreamcloud.esa.tfidf;
 public class TfIdfScore {
     protected int document;
     protected String term;
+    //The term's id in a TermIdDictionary, or -1
+    protected int termId = -1;
     protected double score;
 
     public TfIdfScore(int document, String term, double score) {
@@ -27,6 +29,14 @@ public class TfIdfScore {
         this.document = document;
     }
 
+    public int getTermId() {
+        return termId;
+    }
+
+    public void setTermId(int termId) {
+        this.termId = termId;
+    }
+
     public String getTerm() {
         return term;
     }
@@ -2,73 +2,97 @@ package com.dreamcloud.esa.tfidf;
 
 import com.dreamcloud.esa.analyzer.WikipediaArticle;
 import com.dreamcloud.esa.annoatation.handler.XmlReadingHandler;
+import com.dreamcloud.esa.indexer.ArticlePipeline;
 import com.dreamcloud.esa.indexer.WikiIndexerOptions;
-import com.dreamcloud.esa.tools.BZipFileReader;
 
-import org.xml.sax.InputSource;
+import org.eclipse.collections.impl.set.mutable.UnifiedSet;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import java.io.File;
 import java.io.IOException;
-import java.io.Reader;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Writes the tf-idf scores of every indexable article to a collection writer.
+ *
+ * Without collection info the writer works in a single pass: workers analyze each article once,
+ * counting document frequencies and keeping its raw term frequencies, and the articles are scored
+ * once the whole corpus has been read and the collection statistics are known.
+ * This trades holding the term frequencies in memory for the separate document frequency pass.
+ */
 public class TfIdfWriter extends XmlReadingHandler /* implements Indexer */ {
-    protected final SAXParserFactory saxFactory;
     private final CollectionWriter collectionWriter;
-    private ExecutorService executorService;
-    WikipediaArticle[] fixedQueue;
+    private ArticlePipeline pipeline;
     WikipediaArticle article;
-    int queueSize = 0;
     private int numIndexed = 0;
     WikiIndexerOptions options;
     final TfIdfAnalyzer tfIdfAnalyzer;
     File inputFile;
     CollectionInfo collectionInfo;
+    final boolean singlePass;
+    //Single pass state, per worker so the workers don't share anything
+    final Queue<TermStatistics> threadStatistics = new ConcurrentLinkedQueue<>();
+    final Queue<List<DocumentTerms>> threadDocuments = new ConcurrentLinkedQueue<>();
+    ThreadLocal<TermStatistics> localStatistics;
+    ThreadLocal<List<DocumentTerms>> localDocuments;
+    ThreadLocal<UnifiedSet<String>> localVocabulary;
 
     public TfIdfWriter(File inputFile, CollectionWriter collectionWriter, CollectionInfo collectionInfo, WikiIndexerOptions options) {
         this.inputFile = inputFile;
         this.collectionInfo = collectionInfo;
+        this.singlePass = collectionInfo == null;
         this.options = options;
         this.collectionWriter = collectionWriter;
-        
-        this.fixedQueue = new WikipediaArticle[options.threadCount * options.batchSize];
-        saxFactory = SAXParserFactory.newInstance();
-        saxFactory.setNamespaceAware(true);
-        saxFactory.setValidating(false);
-        saxFactory.setXIncludeAware(true);
         tfIdfAnalyzer = new TfIdfAnalyzer(new BM25Calculator(new TfIdfCalculator(options.tfIdfMode)), options.analyzerFactory.getAnalyzer(), collectionInfo);
     }
 
+    /**
+     * A single pass writer, which computes the collection info while reading the articles.
+     */
+    public TfIdfWriter(File inputFile, CollectionWriter collectionWriter, WikiIndexerOptions options) {
+        this(inputFile, collectionWriter, null, options);
+    }
+
     public void reset() {
         super.reset();
         numIndexed = 0;
-        queueSize = 0;
         article = null;
-        this.fixedQueue = new WikipediaArticle[options.threadCount * options.batchSize];
     }
 
     public void index() throws IOException {
         reset();
-        executorService = Executors.newFixedThreadPool(options.threadCount);
-        parseXmlDump(inputFile);
-        //There may be queue items left over
-        if (queueSize > 0) {
-            this.processQueue();
+        if (singlePass) {
+            localStatistics = ThreadLocal.withInitial(() -> {
+                TermStatistics statistics = new TermStatistics();
+                threadStatistics.add(statistics);
+                return statistics;
+            });
+            localDocuments = ThreadLocal.withInitial(() -> {
+                List<DocumentTerms> documents = new ArrayList<>();
+                threadDocuments.add(documents);
+                return documents;
+            });
+            localVocabulary = ThreadLocal.withInitial(UnifiedSet::new);
         }
-        executorService.shutdown();
+        pipeline = new ArticlePipeline(options.threadCount, options.threadCount * options.batchSize, singlePass ? this::countDocument : this::indexDocument);
+        pipeline.start();
         try {
-            executorService.awaitTermination(12, TimeUnit.HOURS);
+            parseXmlDump(inputFile);
+            //Let the workers finish whatever is still queued
+            pipeline.finish();
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing.", e);
+        } finally {
+            //Stops the workers if parsing failed before they were told to finish
+            pipeline.abort();
         }
+        numIndexed = singlePass ? writeDeferredScores() : pipeline.getProcessed();
 
         //Write additional information about the collection
         collectionWriter.writeCollectionInfo(collectionInfo);
@@ -86,62 +110,93 @@ public class TfIdfWriter extends XmlReadingHandler /* implements Indexer */ {
 
     public void parseXmlDump(File file) {
         try {
-            SAXParser saxParser = saxFactory.newSAXParser();
-            Reader reader = BZipFileReader.getFileReader(file);
-            InputSource is = new InputSource(reader);
-            is.setEncoding("UTF-8");
-            saxParser.parse(is, this);
-            reader.close();
+            this.parse(file);
         } catch (ParserConfigurationException | SAXException | IOException ex) {
             Logger.getLogger(com.dreamcloud.esa.indexer.WikiIndexer.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
 
-    void processQueue() {
-        //Spawn up THREAD_COUNT threads and give each BATCH_SIZE articles
-        ArrayList<Callable<Integer>> processors = new ArrayList<>();
-        for (int i=0; i<options.threadCount && (i * options.batchSize) < queueSize; i++) {
-            Vector<WikipediaArticle> articles = new Vector<>(options.batchSize);
-            for (int j = i * options.batchSize; j<(((i+1) * options.batchSize)) && j<queueSize; j++) {
-                articles.add(fixedQueue[j]);
-            }
-            processors.add(() -> this.indexArticles(articles));
+    void indexDocument(WikipediaArticle article) throws Exception {
+        String wikiText = article.text;
+        if (options.preprocessor != null) {
+            wikiText = options.preprocessor.process(wikiText);
         }
+        collectionWriter.writeDocumentScores(article.id, tfIdfAnalyzer.getTermScores(wikiText));
+    }
 
-        //Wait on all threads and then processes the results
-        try{
-            List<Future<Integer>> futures = executorService.invokeAll(processors);
-            for(Future<Integer> future: futures){
-                if (future.isDone()) {
-                    Integer indexed = future.get();
-                    numIndexed += indexed;
-                }
-            }
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
-            System.exit(1);
+    /**
+     * Counts an article's terms for the collection info and keeps the term frequencies of indexable articles.
+     */
+    void countDocument(WikipediaArticle article) throws Exception {
+        TermStatistics statistics = localStatistics.get();
+        if (!article.canIndex(options)) {
+            statistics.addDocument(tfIdfAnalyzer.analyzer, article.text);
+            return;
         }
 
-        for (int i=0; i<options.threadCount * options.batchSize; i++) {
-            fixedQueue[i] = null;
+        DocumentTerms documentTerms;
+        if (options.preprocessor != null) {
+            //Document frequencies come from the unprocessed text, like a separate RareWordDictionary pass
+            statistics.addDocument(tfIdfAnalyzer.analyzer, article.text);
+            documentTerms = tfIdfAnalyzer.getTermFrequencies(options.preprocessor.process(article.text));
+        } else {
+            documentTerms = tfIdfAnalyzer.getTermFrequencies(article.text);
+            statistics.addDocument(Arrays.asList(documentTerms.terms), documentTerms.length);
         }
-        queueSize = 0;
-        this.logMessage("Indexed articles\t[" + numIndexed + " | " + getDocsRead() + "]");
-    }
 
-    Integer indexArticles (Vector<WikipediaArticle> articles) throws Exception {
-        for (WikipediaArticle article: articles) {
-            indexDocument(article);
+        //Share one string per term and thread, the documents would otherwise hold a copy per occurrence
+        UnifiedSet<String> vocabulary = localVocabulary.get();
+        for (int termIdx = 0; termIdx < documentTerms.terms.length; termIdx++) {
+            documentTerms.terms[termIdx] = vocabulary.put(documentTerms.terms[termIdx]);
         }
-        return articles.size();
+        documentTerms.document = article.id;
+        localDocuments.get().add(documentTerms);
     }
 
-    void indexDocument(WikipediaArticle article) throws Exception {
-        String wikiText = article.text;
-        if (options.preprocessor != null) {
-            wikiText = options.preprocessor.process(wikiText);
+    /**
+     * Merges the worker statistics into the collection info and scores the kept documents.
+     *
+     * @return the number of documents written
+     */
+    int writeDeferredScores() throws IOException {
+        TermStatistics merged = new TermStatistics();
+        TermStatistics statistics;
+        while ((statistics = threadStatistics.poll()) != null) {
+            merged.merge(statistics);
+        }
+        collectionInfo = merged.getCollectionInfo();
+        tfIdfAnalyzer.setCollectionInfo(collectionInfo);
+        localVocabulary = null;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(options.threadCount);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            List<DocumentTerms> documents;
+            while ((documents = threadDocuments.poll()) != null) {
+                List<DocumentTerms> workerDocuments = documents;
+                futures.add(executorService.submit(() -> {
+                    int written = 0;
+                    for (int documentIdx = 0; documentIdx < workerDocuments.size(); documentIdx++) {
+                        DocumentTerms documentTerms = workerDocuments.set(documentIdx, null);
+                        collectionWriter.writeDocumentScores(documentTerms.document, tfIdfAnalyzer.getTermScores(documentTerms));
+                        written++;
+                    }
+                    return written;
+                }));
+            }
+            int written = 0;
+            for (Future<Integer> future: futures) {
+                written += future.get();
+            }
+            return written;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to write document scores.", e.getCause());
+        } finally {
+            executorService.shutdown();
         }
-        collectionWriter.writeDocumentScores(article.id, tfIdfAnalyzer.getTfIdfScores(wikiText));
     }
 
     public void close() throws IOException {
@@ -156,13 +211,17 @@ public class TfIdfWriter extends XmlReadingHandler /* implements Indexer */ {
         article.outgoingLinks = Integer.parseInt(xmlFields.get("outgoingLinks"));
         article.terms = Integer.parseInt(xmlFields.get("terms"));
 
-        if (article.canIndex(options)) {
-            fixedQueue[queueSize++] = article;
-        }
-
-        if (queueSize == options.batchSize * options.threadCount) {
-            this.processQueue();
-            queueSize = 0;
+        //The single pass counts every article for the document frequencies
+        if (singlePass || article.canIndex(options)) {
+            try {
+                pipeline.submit(article);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SAXException(e);
+            }
         }
+        this.logMessage((singlePass ? "Analyzed articles" : "Indexed articles") + "\t[" + pipeline.getProcessed() + " | " + getDocsRead() + "]");
     }
 }
@@ -0,0 +1,50 @@
+package com.dreamcloud.esa.tfidf.kernel;
+
+import com.dreamcloud.esa.tfidf.TermInfo;
+import com.dreamcloud.esa.tfidf.TermScores;
+
+/**
+ * BM25 over logarithmic term frequencies with cosine normalization, i.e. the "l?c" modes (ltc, lbc...) under BM25Calculator.
+ * The idf is already in the scores, so the one kernel serves every idf mode.
+ *
+ * Gives the same scores as GenericScoringKernel for those modes, but the BM25 length factor is computed once per document,
+ * 1 + log(tf) comes from a table for the usual small frequencies, and the squares for the norm are summed in the same pass.
+ */
+public final class BM25LogarithmicCosineKernel implements ScoringKernel {
+    private static final double[] LOGARITHMIC_TF = new double[256];
+    static {
+        for (int tf = 1; tf < LOGARITHMIC_TF.length; tf++) {
+            LOGARITHMIC_TF[tf] = 1 + Math.log(tf);
+        }
+    }
+
+    private final double k;
+    private final double b;
+    private final double delta;
+
+    public BM25LogarithmicCosineKernel(double k, double b, double delta) {
+        this.k = k;
+        this.b = b;
+        this.delta = delta;
+    }
+
+    public void score(TermScores scores, TermInfo termInfo) {
+        //Same expressions as BM25Calculator, so the scores match the generic kernel
+        double lengthNorm = k * (1 - b + (b * (termInfo.dl / termInfo.avgDl)));
+        int[] frequencies = scores.frequencies;
+        double[] termScores = scores.scores;
+        double scoreSumOfSquares = 0.0;
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            int frequency = frequencies[termIdx];
+            double tf = frequency < LOGARITHMIC_TF.length ? LOGARITHMIC_TF[frequency] : 1 + Math.log(frequency);
+            double score = (((tf * (k + 1)) / (tf + lengthNorm)) + delta) * termScores[termIdx];
+            termScores[termIdx] = score;
+            scoreSumOfSquares += score * score;
+        }
+
+        double norm = 1 / Math.sqrt(scoreSumOfSquares);
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            termScores[termIdx] *= norm;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.dreamcloud.esa.tfidf.kernel;
+
+import com.dreamcloud.esa.tfidf.TermInfo;
+import com.dreamcloud.esa.tfidf.TermScores;
+import com.dreamcloud.esa.tfidf.strategy.TfIdfStrategy;
+
+/**
+ * Scores with any TF-IDF strategy, calling its tf and norm for every document.
+ */
+public final class GenericScoringKernel implements ScoringKernel {
+    private final TfIdfStrategy calculator;
+
+    public GenericScoringKernel(TfIdfStrategy calculator) {
+        this.calculator = calculator;
+    }
+
+    public void score(TermScores scores, TermInfo termInfo) {
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            termInfo.term = scores.terms[termIdx];
+            termInfo.tf = scores.frequencies[termIdx];
+            scores.scores[termIdx] *= calculator.tf(termInfo.tf, termInfo);
+        }
+
+        double norm = calculator.norm(scores);
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            scores.scores[termIdx] *= norm;
+        }
+    }
+}
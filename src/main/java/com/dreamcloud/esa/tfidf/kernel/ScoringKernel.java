@@ -0,0 +1,16 @@
+package com.dreamcloud.esa.tfidf.kernel;
+
+import com.dreamcloud.esa.tfidf.TermInfo;
+import com.dreamcloud.esa.tfidf.TermScores;
+
+/**
+ * Turns a document's term frequencies into normalized TF-IDF scores.
+ */
+public interface ScoringKernel {
+    /**
+     * Scores the terms in place.
+     * On entry scores.scores holds each term's idf, and termInfo the document's length, average term frequency
+     * and max term frequency (its per term fields are free to use as scratch).
+     */
+    void score(TermScores scores, TermInfo termInfo);
+}
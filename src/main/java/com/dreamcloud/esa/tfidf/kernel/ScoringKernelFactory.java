@@ -0,0 +1,26 @@
+package com.dreamcloud.esa.tfidf.kernel;
+
+import com.dreamcloud.esa.tfidf.BM25Calculator;
+import com.dreamcloud.esa.tfidf.TfIdfCalculator;
+import com.dreamcloud.esa.tfidf.strategy.TfIdfStrategy;
+import com.dreamcloud.esa.tfidf.strategy.norm.CosineNormalization;
+import com.dreamcloud.esa.tfidf.strategy.tf.LogarithmicTermFrequency;
+
+public class ScoringKernelFactory {
+    /**
+     * A specialized kernel when the strategy is one we have one for, otherwise the generic kernel.
+     * Classes are matched exactly, as a subclass could change the math.
+     */
+    public static ScoringKernel getKernel(TfIdfStrategy calculator) {
+        if (calculator.getClass() == BM25Calculator.class) {
+            BM25Calculator bm25 = (BM25Calculator) calculator;
+            if (bm25.getTfIdfStrategy().getClass() == TfIdfCalculator.class) {
+                TfIdfCalculator tfIdf = (TfIdfCalculator) bm25.getTfIdfStrategy();
+                if (tfIdf.getTfStrategy().getClass() == LogarithmicTermFrequency.class && tfIdf.getNormStrategy().getClass() == CosineNormalization.class) {
+                    return new BM25LogarithmicCosineKernel(bm25.getK(), bm25.getB(), bm25.getDelta());
+                }
+            }
+        }
+        return new GenericScoringKernel(calculator);
+    }
+}
@@ -1,7 +1,7 @@
 package com.dreamcloud.esa.tfidf.strategy;
 
-import com.dreamcloud.esa.tfidf.TfIdfScore;
+import com.dreamcloud.esa.tfidf.TermScores;
 
 public interface NormalizationStrategy {
-    double norm(TfIdfScore[] scores);
+    double norm(TermScores scores);
 }
@@ -1,10 +1,18 @@
 package com.dreamcloud.esa.tfidf.strategy;
 
 import com.dreamcloud.esa.tfidf.TermInfo;
-import com.dreamcloud.esa.tfidf.TfIdfScore;
+import com.dreamcloud.esa.tfidf.TermScores;
 
 public interface TfIdfStrategy {
     double tf(double tf, TermInfo termInfo);
     double idf(int totalDocs, int termDocs);
-    double norm(TfIdfScore[] scores);
+    double norm(TermScores scores);
+
+    /**
+     * The idf character of the strategy's mode (e.g. 't' for "ltc"), which names its precomputed idf tables.
+     * 0 if its idf isn't one of the modes and has to be computed.
+     */
+    default char getIdfMode() {
+        return 0;
+    }
 }
@@ -1,15 +1,15 @@
 package com.dreamcloud.esa.tfidf.strategy.norm;
 
-import com.dreamcloud.esa.tfidf.TfIdfScore;
+import com.dreamcloud.esa.tfidf.TermScores;
 import com.dreamcloud.esa.tfidf.strategy.NormalizationStrategy;
 
 public class ByteLengthInverseDocumentFrequency implements NormalizationStrategy {
     @Override
-    public double norm(TfIdfScore[] scores) {
+    public double norm(TermScores scores) {
         //todo: implement this sucker
         double length = 0;
-        for (TfIdfScore score: scores) {
-            length += Math.max(1, score.getScore()) * score.getTerm().length();
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            length += Math.max(1, scores.scores[termIdx]) * scores.terms[termIdx].length();
         }
         return 1 / length;
     }
@@ -1,13 +1,13 @@
 package com.dreamcloud.esa.tfidf.strategy.norm;
 
-import com.dreamcloud.esa.tfidf.TfIdfScore;
+import com.dreamcloud.esa.tfidf.TermScores;
 import com.dreamcloud.esa.tfidf.strategy.NormalizationStrategy;
 
 public class CosineNormalization implements NormalizationStrategy {
-    public double norm(TfIdfScore[] scores) {
+    public double norm(TermScores scores) {
         double scoreSumOfSquares = 0.0;
-        for (TfIdfScore score: scores) {
-            scoreSumOfSquares += Math.pow(score.getScore(), 2);
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            scoreSumOfSquares += Math.pow(scores.scores[termIdx], 2);
         }
         return 1 / Math.sqrt(scoreSumOfSquares);
     }
@@ -1,10 +1,10 @@
 package com.dreamcloud.esa.tfidf.strategy.norm;
 
-import com.dreamcloud.esa.tfidf.TfIdfScore;
+import com.dreamcloud.esa.tfidf.TermScores;
 import com.dreamcloud.esa.tfidf.strategy.NormalizationStrategy;
 
 public class NoNormalization implements NormalizationStrategy {
-    public double norm(TfIdfScore[] scores) {
+    public double norm(TermScores scores) {
         return 1;
     }
 }
@@ -1,15 +1,56 @@
 package com.dreamcloud.esa.tools;
 
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
-
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 
 public class BZipFileReader {
+    //The number of threads (de)compressing each bzip2 file unless the caller says otherwise, 1 works on the calling thread
+    public static final int DEFAULT_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
     public static Reader getFileReader(File file) throws IOException {
-        InputStream wikiInputStream = new FileInputStream(file);
-        InputStream bufferedInputStream = new BufferedInputStream(wikiInputStream);
-        InputStream bzipInputStream = new BZip2CompressorInputStream(bufferedInputStream, true);
-        return new InputStreamReader(bzipInputStream, StandardCharsets.UTF_8);
+        return getFileReader(file, DEFAULT_THREAD_COUNT);
+    }
+
+    public static Reader getFileReader(File file, int threadCount) throws IOException {
+        return new InputStreamReader(getInputStream(file, threadCount), StandardCharsets.UTF_8);
+    }
+
+    public static Reader getSequentialFileReader(File file) throws IOException {
+        return new InputStreamReader(getSequentialInputStream(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Despite the name, files written with any StreamCodec are recognized and read.
+     */
+    public static InputStream getInputStream(File file) throws IOException {
+        return getInputStream(file, DEFAULT_THREAD_COUNT);
+    }
+
+    public static InputStream getInputStream(File file, int threadCount) throws IOException {
+        if (threadCount < 2 || StreamCodec.detect(file) != StreamCodec.BZIP2) {
+            return getSequentialInputStream(file);
+        }
+
+        File multistreamIndex = getMultistreamIndex(file);
+        if (multistreamIndex.exists()) {
+            return new ParallelBZip2InputStream(file, ParallelBZip2InputStream.readStreamOffsets(multistreamIndex), threadCount);
+        }
+        return new ParallelBZip2InputStream(file, threadCount);
+    }
+
+    public static InputStream getSequentialInputStream(File file) throws IOException {
+        return StreamCodec.detect(file).getInputStream(new FileInputStream(file));
+    }
+
+    /**
+     * Wikipedia publishes the index of a multistream dump next to it,
+     * e.g. enwiki-pages-articles-multistream.xml.bz2 and enwiki-pages-articles-multistream-index.txt.bz2
+     */
+    public static File getMultistreamIndex(File file) {
+        String name = file.getName();
+        if (name.endsWith(".xml.bz2")) {
+            name = name.substring(0, name.length() - ".xml.bz2".length());
+        }
+        return new File(file.getAbsoluteFile().getParentFile(), name + "-index.txt.bz2");
     }
 }
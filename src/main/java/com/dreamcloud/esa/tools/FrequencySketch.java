@@ -0,0 +1,64 @@
+package com.dreamcloud.esa.tools;
+
+/**
+ * A count-min sketch of 4 bit counters that estimates how often keys have been seen recently.
+ *
+ * Counters are halved once the sketch has recorded ten times as many increments as it has columns,
+ * so old popularity fades out. Used for TinyLFU style cache admission.
+ * Not thread safe: callers synchronize.
+ */
+public class FrequencySketch {
+    protected static final int DEPTH = 4;
+    protected static final int MAX_COUNT = 15;
+    protected static final long[] SEEDS = {0x97CB3127C1F0E3A5L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0x9E3779B97F4A7C15L};
+
+    protected final byte[] counters;
+    protected final int widthMask;
+    protected final int resetSize;
+    protected int additions = 0;
+
+    public FrequencySketch(int expectedEntries) {
+        int width = Integer.highestOneBit(Math.max(16, Math.min(expectedEntries, 1 << 26)) - 1) << 1;
+        counters = new byte[width * DEPTH];
+        widthMask = width - 1;
+        resetSize = width * 10;
+    }
+
+    public int frequency(long hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters[index(hash, row)]);
+        }
+        return frequency;
+    }
+
+    public void increment(long hash) {
+        //Conservative update: only the smallest counters grow, which keeps the overestimate down
+        int frequency = frequency(hash);
+        if (frequency == MAX_COUNT) {
+            return;
+        }
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            if (counters[index] == frequency) {
+                counters[index]++;
+            }
+        }
+        if (++additions == resetSize) {
+            reset();
+        }
+    }
+
+    protected void reset() {
+        for (int counterIdx = 0; counterIdx < counters.length; counterIdx++) {
+            counters[counterIdx] >>= 1;
+        }
+        additions /= 2;
+    }
+
+    protected int index(long hash, int row) {
+        long h = (hash + SEEDS[row]) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+        return row * (widthMask + 1) + (int) (h & widthMask);
+    }
+}
@@ -0,0 +1,379 @@
+package com.dreamcloud.esa.tools;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+/**
+ * Decompresses a bzip2 file on several threads, returning the data in order.
+ *
+ * bzip2 compresses independent blocks that start with a 48 bit magic number, but the blocks aren't byte aligned.
+ * The file is scanned bit by bit for the block and end of stream magic numbers,
+ * and each block is shifted into a single block stream of its own and decoded by a worker.
+ * Concatenated (multistream) files are handled the same way.
+ *
+ * The magic numbers can also turn up inside the compressed data. A block split at the wrong place fails its CRC check,
+ * in which case it's merged with the next block and decoded again.
+ * An end of stream magic number is only trusted once the next stream's first block (or the end of the file) follows it.
+ *
+ * If the stream offsets are known (Wikipedia's multistream dumps come with an index of them)
+ * the file is instead split into whole streams at those offsets and no scanning is needed.
+ */
+public class ParallelBZip2InputStream extends InputStream {
+    protected static final long BLOCK_MAGIC = 0x314159265359L;
+    protected static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+    protected static final long MAGIC_MASK = 0xFFFFFFFFFFFFL;
+    protected static final int MAGIC_BITS = 48;
+    //How many bad splits in a row we'll merge before giving up
+    protected static final int MAX_MERGES = 8;
+    protected static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+
+    protected final FileChannel channel;
+    protected final long fileSize;
+    protected final ExecutorService executorService;
+    protected final int maxPending;
+    protected final ArrayDeque<Chunk> pending = new ArrayDeque<>();
+
+    //Block scanning state
+    protected final ByteBuffer scanBuffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+    protected long scanPosition = 0;
+    protected long window = 0;
+    protected long blockStart = -1;
+    //The last end of stream magic number seen in the current block, until the next block confirms or rules it out
+    protected long endOfStreamCandidate = -1;
+    protected boolean scanComplete = false;
+    protected final ArrayDeque<long[]> scannedBlocks = new ArrayDeque<>();
+
+    //Stream offsets, when splitting by an index
+    protected long[] streamOffsets;
+    protected int streamIdx = 0;
+
+    protected byte[] current = new byte[0];
+    protected int currentIdx = 0;
+    protected boolean closed = false;
+
+    protected static class Chunk {
+        final long start;
+        final long end;
+        final Future<byte[]> data;
+
+        Chunk(long start, long end, Future<byte[]> data) {
+            this.start = start;
+            this.end = end;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Splits the file by scanning for bzip2 blocks.
+     */
+    public ParallelBZip2InputStream(File file, int threadCount) throws IOException {
+        this(file, null, threadCount);
+    }
+
+    /**
+     * Splits the file into whole bzip2 streams at the given byte offsets.
+     */
+    public ParallelBZip2InputStream(File file, long[] streamOffsets, int threadCount) throws IOException {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The thread count must be at least 1.");
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(3);
+        readFully(header, 0);
+        if (header.get(0) != 'B' || header.get(1) != 'Z' || header.get(2) != 'h') {
+            channel.close();
+            throw new IOException("Not a bzip2 file: " + file.getPath());
+        }
+        this.streamOffsets = streamOffsets;
+        this.maxPending = threadCount * 2;
+        executorService = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "bzip2-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scanBuffer.limit(0);
+    }
+
+    /**
+     * Reads the distinct stream offsets from a Wikipedia multistream index ("offset:page id:title" lines).
+     * The first stream, holding the site info, isn't in the index and is added.
+     */
+    public static long[] readStreamOffsets(File indexFile) throws IOException {
+        try (BufferedReader reader = new BufferedReader(BZipFileReader.getSequentialFileReader(indexFile))) {
+            long[] offsets = new long[1024];
+            int offsetCount = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(':');
+                if (separator <= 0) {
+                    continue;
+                }
+                long offset = Long.parseLong(line.substring(0, separator));
+                if (offset > offsets[offsetCount - 1]) {
+                    if (offsetCount == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsetCount * 2);
+                    }
+                    offsets[offsetCount++] = offset;
+                }
+            }
+            return Arrays.copyOf(offsets, offsetCount);
+        }
+    }
+
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current[currentIdx++] & 0xFF;
+    }
+
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        int read = Math.min(length, current.length - currentIdx);
+        System.arraycopy(current, currentIdx, bytes, offset, read);
+        currentIdx += read;
+        return read;
+    }
+
+    public int available() {
+        return current.length - currentIdx;
+    }
+
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            for (Chunk chunk: pending) {
+                chunk.data.cancel(false);
+            }
+            pending.clear();
+            //Interrupting a worker in the middle of a read would close the channel under the others
+            executorService.shutdown();
+            channel.close();
+        }
+    }
+
+    protected boolean ensureData() throws IOException {
+        if (closed) {
+            throw new IOException("The stream is closed.");
+        }
+        while (currentIdx == current.length) {
+            fill();
+            if (pending.isEmpty()) {
+                return false;
+            }
+            current = take();
+            currentIdx = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Keeps the workers busy by queueing chunks ahead of the one being read.
+     */
+    protected void fill() throws IOException {
+        while (pending.size() < maxPending && nextChunk()) {
+        }
+    }
+
+    protected boolean nextChunk() throws IOException {
+        if (streamOffsets != null) {
+            if (streamIdx == streamOffsets.length) {
+                return false;
+            }
+            long start = streamOffsets[streamIdx++];
+            long end = streamIdx < streamOffsets.length ? streamOffsets[streamIdx] : fileSize;
+            pending.add(new Chunk(start, end, executorService.submit(() -> decodeStreams(start, end))));
+            return true;
+        }
+
+        long[] bounds = scanBlock();
+        if (bounds == null) {
+            return false;
+        }
+        pending.add(new Chunk(bounds[0], bounds[1], executorService.submit(() -> decodeBlock(bounds[0], bounds[1]))));
+        return true;
+    }
+
+    protected byte[] take() throws IOException {
+        Chunk chunk = pending.poll();
+        try {
+            return chunk.data.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing.");
+        } catch (ExecutionException e) {
+            if (streamOffsets != null || !(e.getCause() instanceof IOException)) {
+                throw new IOException("Failed to decompress the stream at byte " + chunk.start + ".", e.getCause());
+            }
+            return decodeMerged(chunk, (IOException) e.getCause());
+        }
+    }
+
+    /**
+     * The chunk was split at a false magic number, so try again with the following chunks.
+     */
+    protected byte[] decodeMerged(Chunk chunk, IOException failure) throws IOException {
+        long start = chunk.start;
+        long end = chunk.end;
+        for (int merges = 0; merges < MAX_MERGES; merges++) {
+            fill();
+            Chunk next = pending.poll();
+            if (next == null) {
+                break;
+            }
+            next.data.cancel(false);
+            end = next.end;
+            try {
+                return decodeBlock(start, end);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        throw new IOException("Failed to decompress the block at bit " + start + ".", failure);
+    }
+
+    /**
+     * Finds the bit range of the next block, from its magic number up to the next block or end of stream magic number.
+     */
+    protected long[] scanBlock() throws IOException {
+        while (scannedBlocks.isEmpty() && !scanComplete) {
+            if (!scanBuffer.hasRemaining()) {
+                scanBuffer.clear();
+                int read = channel.read(scanBuffer, scanPosition);
+                scanBuffer.flip();
+                if (read <= 0) {
+                    scanComplete = true;
+                    //Truncated files end without a magic number, let the decoder complain about it
+                    if (blockStart >= 0) {
+                        scannedBlocks.add(new long[]{blockStart, endOfStreamCandidate >= 0 ? endOfStreamCandidate : fileSize * 8});
+                    }
+                    break;
+                }
+            }
+
+            //Check the 8 bit alignments a magic number could end at in this byte, in file order
+            window = (window << 8) | (scanBuffer.get() & 0xFF);
+            long byteEnd = ++scanPosition * 8;
+            if (scanPosition < 6) {
+                continue;
+            }
+            for (int shift = 7; shift >= 0; shift--) {
+                long candidate = (window >>> shift) & MAGIC_MASK;
+                if (candidate == BLOCK_MAGIC || candidate == END_OF_STREAM_MAGIC) {
+                    foundMagic(candidate, byteEnd - shift - MAGIC_BITS);
+                }
+            }
+        }
+        return scannedBlocks.poll();
+    }
+
+    /**
+     * Ends the current block at a block magic number, or at the end of stream magic number before it
+     * if the block starts exactly where the next stream's would: after the 32 bit stream CRC, the byte padding and a 32 bit header.
+     * An end of stream magic number anywhere else was inside the compressed data.
+     */
+    protected void foundMagic(long magic, long magicStart) {
+        if (magic == END_OF_STREAM_MAGIC) {
+            if (blockStart >= 0) {
+                endOfStreamCandidate = magicStart;
+            }
+            return;
+        }
+        if (blockStart >= 0) {
+            boolean endOfStream = endOfStreamCandidate >= 0 && magicStart == ((endOfStreamCandidate + MAGIC_BITS + 32 + 7) & ~7L) + 32;
+            scannedBlocks.add(new long[]{blockStart, endOfStream ? endOfStreamCandidate : magicStart});
+        }
+        endOfStreamCandidate = -1;
+        blockStart = magicStart;
+    }
+
+    /**
+     * Shifts a block into a stream of its own and decodes it.
+     * The combined CRC of a single block stream is just the block's CRC, which follows its magic number.
+     */
+    protected byte[] decodeBlock(long startBit, long endBit) throws IOException {
+        long firstByte = startBit >>> 3;
+        int shift = (int) (startBit & 7);
+        long bitCount = endBit - startBit;
+        int blockBytes = (int) ((bitCount + 7) >>> 3);
+        ByteBuffer source = ByteBuffer.allocate(blockBytes + 1);
+        readFully(source, firstByte);
+        byte[] sourceBytes = source.array();
+
+        long streamBits = 32 + bitCount + MAGIC_BITS + 32;
+        byte[] stream = new byte[(int) ((streamBits + 7) >>> 3)];
+        stream[0] = 'B';
+        stream[1] = 'Z';
+        stream[2] = 'h';
+        stream[3] = '9';
+        for (int byteIdx = 0; byteIdx < blockBytes; byteIdx++) {
+            stream[4 + byteIdx] = (byte) ((sourceBytes[byteIdx] << shift) | ((sourceBytes[byteIdx + 1] & 0xFF) >>> (8 - shift)));
+        }
+        long crc = readBits(stream, 32 + MAGIC_BITS, 32);
+        writeBits(stream, 32 + bitCount, END_OF_STREAM_MAGIC, MAGIC_BITS);
+        writeBits(stream, 32 + bitCount + MAGIC_BITS, crc, 32);
+        return decompress(new ByteArrayInputStream(stream));
+    }
+
+    protected byte[] decodeStreams(long start, long end) throws IOException {
+        ByteBuffer source = ByteBuffer.allocate((int) (end - start));
+        readFully(source, start);
+        return decompress(new ByteArrayInputStream(source.array(), 0, source.position()));
+    }
+
+    protected static byte[] decompress(InputStream compressed) throws IOException {
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream(1024 * 1024);
+        try (InputStream inputStream = new BZip2CompressorInputStream(compressed, true)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                decompressed.write(buffer, 0, read);
+            }
+        }
+        return decompressed.toByteArray();
+    }
+
+    protected void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    protected static long readBits(byte[] bytes, long bitPosition, int bitCount) {
+        long value = 0;
+        for (int bitIdx = 0; bitIdx < bitCount; bitIdx++, bitPosition++) {
+            int bit = (bytes[(int) (bitPosition >>> 3)] >>> (7 - (bitPosition & 7))) & 1;
+            value = (value << 1) | bit;
+        }
+        return value;
+    }
+
+    protected static void writeBits(byte[] bytes, long bitPosition, long value, int bitCount) {
+        for (int bitIdx = bitCount - 1; bitIdx >= 0; bitIdx--, bitPosition++) {
+            int byteIdx = (int) (bitPosition >>> 3);
+            int mask = 1 << (7 - (bitPosition & 7));
+            if (((value >>> bitIdx) & 1) != 0) {
+                bytes[byteIdx] |= mask;
+            } else {
+                bytes[byteIdx] &= ~mask;
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.dreamcloud.esa.tools;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+
+/**
+ * Compresses on several threads by cutting the data into chunks of about one bzip2 block
+ * and compressing each chunk into a bzip2 stream of its own.
+ *
+ * The streams are written in order, so the result is a multistream file
+ * that bzip2, commons-compress (with decompressConcatenated) and ParallelBZip2InputStream all read.
+ */
+public class ParallelBZip2OutputStream extends OutputStream {
+    //Just under the 900k block of level 9, so most chunks are a single block
+    protected static final int CHUNK_SIZE = 899000;
+
+    protected final OutputStream outputStream;
+    protected final int chunkCapacity;
+    protected final ExecutorService executorService;
+    protected final int maxPending;
+    protected final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    protected byte[] chunk;
+    protected int chunkSize = 0;
+    protected boolean written = false;
+    protected boolean closed = false;
+
+    public ParallelBZip2OutputStream(OutputStream outputStream, int threadCount) {
+        this(outputStream, threadCount, CHUNK_SIZE);
+    }
+
+    public ParallelBZip2OutputStream(OutputStream outputStream, int threadCount, int chunkCapacity) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The thread count must be at least 1.");
+        }
+        this.outputStream = outputStream;
+        this.chunkCapacity = chunkCapacity;
+        this.chunk = new byte[chunkCapacity];
+        this.maxPending = threadCount * 2;
+        executorService = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "bzip2-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void write(int b) throws IOException {
+        if (chunkSize == chunk.length) {
+            submitChunk();
+        }
+        chunk[chunkSize++] = (byte) b;
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (chunkSize == chunk.length) {
+                submitChunk();
+            }
+            int copied = Math.min(length, chunk.length - chunkSize);
+            System.arraycopy(bytes, offset, chunk, chunkSize, copied);
+            chunkSize += copied;
+            offset += copied;
+            length -= copied;
+        }
+    }
+
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            //An empty file is still written as an (empty) stream
+            if (chunkSize > 0 || !written) {
+                submitChunk();
+            }
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            executorService.shutdownNow();
+            outputStream.close();
+        }
+    }
+
+    protected void submitChunk() throws IOException {
+        byte[] data = chunk;
+        int size = chunkSize;
+        pending.add(executorService.submit(() -> compress(data, size)));
+        written = true;
+        chunk = new byte[chunkCapacity];
+        chunkSize = 0;
+        while (pending.size() > maxPending) {
+            writeNext();
+        }
+    }
+
+    protected void writeNext() throws IOException {
+        try {
+            outputStream.write(pending.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing.");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress a chunk.", e.getCause());
+        }
+    }
+
+    protected static byte[] compress(byte[] data, int size) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(size / 4);
+        try (OutputStream bzipStream = new BZip2CompressorOutputStream(compressed, BZip2CompressorOutputStream.MAX_BLOCKSIZE)) {
+            bzipStream.write(data, 0, size);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,99 @@
+package com.dreamcloud.esa.tools;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression of the XML files passed between the annotating stages.
+ *
+ * bzip2 is the format of the Wikipedia dumps and the default.
+ * Files that only feed our own tools can use a much faster codec instead;
+ * readers recognize the codec from the first bytes of the file.
+ */
+public enum StreamCodec {
+    BZIP2("bzip2"),
+    ZSTD("zstd"),
+    GZIP("gzip"),
+    NONE("none");
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+    //Favour speed, these files are short lived
+    protected static final int ZSTD_LEVEL = 1;
+
+    public final String label;
+
+    StreamCodec(String label) {
+        this.label = label;
+    }
+
+    public static StreamCodec valueOfLabel(String label) {
+        for (StreamCodec codec: values()) {
+            if (codec.label.equals(label)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Codec " + label + " is not recognized (bzip2|zstd|gzip|none).");
+    }
+
+    public static StreamCodec detect(File file) throws IOException {
+        byte[] magic = new byte[4];
+        int read = 0;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int bytes;
+            while (read < magic.length && (bytes = inputStream.read(magic, read, magic.length - read)) != -1) {
+                read += bytes;
+            }
+        }
+        if (read >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h') {
+            return BZIP2;
+        } else if (read == 4 && magic[0] == 0x28 && magic[1] == (byte) 0xB5 && magic[2] == 0x2F && magic[3] == (byte) 0xFD) {
+            return ZSTD;
+        } else if (read >= 2 && magic[0] == (byte) 0x1F && magic[1] == (byte) 0x8B) {
+            return GZIP;
+        }
+        return NONE;
+    }
+
+    public OutputStream getOutputStream(OutputStream outputStream, int threadCount) throws IOException {
+        switch (this) {
+            case BZIP2:
+                if (threadCount > 1) {
+                    return new ParallelBZip2OutputStream(outputStream, threadCount);
+                }
+                return new BZip2CompressorOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+            case ZSTD:
+                ZstdOutputStream zstdStream = new ZstdOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE), ZSTD_LEVEL);
+                if (threadCount > 1) {
+                    zstdStream.setWorkers(threadCount);
+                }
+                return new BufferedOutputStream(zstdStream, BUFFER_SIZE);
+            case GZIP:
+                return new GZIPOutputStream(outputStream, BUFFER_SIZE);
+            default:
+                return new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Sequential decompression, BZipFileReader decompresses bzip2 on several threads.
+     */
+    public InputStream getInputStream(InputStream inputStream) throws IOException {
+        inputStream = new BufferedInputStream(inputStream, BUFFER_SIZE);
+        switch (this) {
+            case BZIP2:
+                return new BZip2CompressorInputStream(inputStream, true);
+            case ZSTD:
+                return new BufferedInputStream(new ZstdInputStream(inputStream), BUFFER_SIZE);
+            case GZIP:
+                return new GZIPInputStream(inputStream, BUFFER_SIZE);
+            default:
+                return inputStream;
+        }
+    }
+}
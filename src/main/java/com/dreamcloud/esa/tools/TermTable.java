@@ -0,0 +1,164 @@
+package com.dreamcloud.esa.tools;
+
+import java.util.Arrays;
+
+/**
+ * Numbers terms 0..size()-1 in the order they're added, keyed by their characters.
+ *
+ * Lookups take a char buffer and a length (e.g. straight from a CharTermAttribute), so finding or adding
+ * a term doesn't create a String. The characters of every term are packed into one array
+ * behind an open addressing table of term id + 1, with 0 marking an empty slot.
+ * Strings are only created when getTerm() asks for one, and are then kept.
+ *
+ * Not thread safe while terms are being added.
+ */
+public class TermTable {
+    protected char[] characters = new char[1024];
+    protected int[] termStarts = new int[65];
+    protected int[] hashes = new int[64];
+    //The slot of each term, so clear() only empties the slots in use
+    protected int[] termSlots = new int[64];
+    protected String[] terms = new String[64];
+    protected int termCount = 0;
+    protected int[] slots = new int[128];
+    protected int slotMask = 127;
+
+    public int size() {
+        return termCount;
+    }
+
+    /**
+     * @return the term's id, or -1 if the table doesn't have it
+     */
+    public int find(char[] buffer, int length) {
+        return find(buffer, 0, length, hash(buffer, 0, length));
+    }
+
+    public int find(String term) {
+        return find(term.toCharArray(), term.length());
+    }
+
+    /**
+     * Finds a term of another table, reusing the hash it already has.
+     */
+    public int find(TermTable table, int termId) {
+        return find(table.characters, table.termStarts[termId], table.getLength(termId), table.hashes[termId]);
+    }
+
+    protected int find(char[] buffer, int offset, int length, int hash) {
+        int slot = hash & slotMask;
+        int value;
+        while ((value = slots[slot]) != 0) {
+            int termId = value - 1;
+            if (hashes[termId] == hash) {
+                int start = termStarts[termId];
+                if (termStarts[termId + 1] - start == length && Arrays.equals(characters, start, start + length, buffer, offset, offset + length)) {
+                    return termId;
+                }
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the term's id, adding the term if the table doesn't have it yet
+     */
+    public int add(char[] buffer, int length) {
+        return add(buffer, 0, length, hash(buffer, 0, length));
+    }
+
+    public int add(String term) {
+        return add(term.toCharArray(), term.length());
+    }
+
+    /**
+     * Adds a term of another table, reusing the hash it already has.
+     */
+    public int add(TermTable table, int termId) {
+        return add(table.characters, table.termStarts[termId], table.getLength(termId), table.hashes[termId]);
+    }
+
+    protected int add(char[] buffer, int offset, int length, int hash) {
+        int termId = find(buffer, offset, length, hash);
+        if (termId >= 0) {
+            return termId;
+        }
+
+        if (termCount == hashes.length) {
+            int capacity = termCount * 2;
+            termStarts = Arrays.copyOf(termStarts, capacity + 1);
+            hashes = Arrays.copyOf(hashes, capacity);
+            termSlots = Arrays.copyOf(termSlots, capacity);
+            terms = Arrays.copyOf(terms, capacity);
+        }
+        int start = termStarts[termCount];
+        if (start + length > characters.length) {
+            characters = Arrays.copyOf(characters, Math.max(start + length, characters.length * 2));
+        }
+        System.arraycopy(buffer, offset, characters, start, length);
+        termId = termCount++;
+        termStarts[termCount] = start + length;
+        hashes[termId] = hash;
+        //Keep the table at most half full
+        if (termCount * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            insert(termId);
+        }
+        return termId;
+    }
+
+    protected void rehash(int capacity) {
+        slots = new int[capacity];
+        slotMask = capacity - 1;
+        for (int termId = 0; termId < termCount; termId++) {
+            insert(termId);
+        }
+    }
+
+    protected void insert(int termId) {
+        int slot = hashes[termId] & slotMask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & slotMask;
+        }
+        slots[slot] = termId + 1;
+        termSlots[termId] = slot;
+    }
+
+    public String getTerm(int termId) {
+        String term = terms[termId];
+        if (term == null) {
+            //Racing readers build equal strings, either one can be kept
+            term = new String(characters, termStarts[termId], getLength(termId));
+            terms[termId] = term;
+        }
+        return term;
+    }
+
+    public int getLength(int termId) {
+        return termStarts[termId + 1] - termStarts[termId];
+    }
+
+    /**
+     * Removes every term, keeping the allocated arrays for reuse.
+     * Takes time in the number of terms, not the capacity, so a table that once grew large stays cheap to clear.
+     */
+    public void clear() {
+        for (int termId = 0; termId < termCount; termId++) {
+            slots[termSlots[termId]] = 0;
+        }
+        Arrays.fill(terms, 0, termCount, null);
+        termCount = 0;
+    }
+
+    protected static int hash(char[] buffer, int offset, int length) {
+        int hash = 0;
+        for (int charIdx = offset; charIdx < offset + length; charIdx++) {
+            hash = 31 * hash + buffer[charIdx];
+        }
+        //Spread the bits, the low ones pick the slot
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
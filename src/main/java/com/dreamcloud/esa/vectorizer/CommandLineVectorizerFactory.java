@@ -17,6 +17,6 @@ public class CommandLineVectorizerFactory implements VectorizerFactory {
 
     @Override
     public TextVectorizer getVectorizer() {
-        return new SqlVectorizer(new VectorBuilder(options.sourceOptions.scoreReader, options.sourceOptions.collectionInfo, new TfIdfAnalyzer(new BM25Calculator(new TfIdfCalculator(options.tfIdfQueryMode)), options.analyzer, options.sourceOptions.collectionInfo), options.preprocessor, options.pruneOptions));
+        return new SqlVectorizer(new VectorBuilder(options.sourceOptions.scoreReader, options.sourceOptions.collectionInfo, new TfIdfAnalyzer(new BM25Calculator(new TfIdfCalculator(options.tfIdfQueryMode)), options.analyzer, options.sourceOptions.collectionInfo), options.preprocessor, options.pruneOptions, options.vectorCache));
     }
 }
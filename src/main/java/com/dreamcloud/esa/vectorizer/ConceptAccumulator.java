@@ -0,0 +1,128 @@
+package com.dreamcloud.esa.vectorizer;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates concept scores into a dense array indexed by document id.
+ *
+ * Only the touched documents are visited when the scores are frozen into a ConceptVector,
+ * and the scratch space is cleared as it's read, so one accumulator can be reused for every vector built on a thread.
+ */
+public class ConceptAccumulator {
+    protected float[] scores;
+    protected int[] touched;
+    protected int touchedCount = 0;
+
+    public ConceptAccumulator(int numDocs) {
+        scores = new float[Math.max(numDocs, 1)];
+        touched = new int[1024];
+    }
+
+    public int getDocumentCapacity() {
+        return scores.length;
+    }
+
+    public int size() {
+        return touchedCount;
+    }
+
+    public void addScore(int document, float score) {
+        //Documents only ever gain positive scores, so a zero score means we haven't seen it yet
+        if (score > 0) {
+            if (document >= scores.length) {
+                scores = Arrays.copyOf(scores, Math.max(document + 1, scores.length * 2));
+            }
+            if (scores[document] == 0) {
+                if (touchedCount == touched.length) {
+                    touched = Arrays.copyOf(touched, touched.length * 2);
+                }
+                touched[touchedCount++] = document;
+            }
+            scores[document] += score;
+        }
+    }
+
+    /**
+     * The k-th highest score accumulated so far, or 0 if fewer than k documents have a score.
+     */
+    public float getKthScore(int k) {
+        if (k <= 0 || touchedCount < k) {
+            return 0;
+        }
+        selectTop(k);
+        //The root of the heap is the lowest of the top k
+        return scores[touched[0]];
+    }
+
+    /**
+     * Builds a ConceptVector of the (at most) limit highest scores, or all scores if limit isn't positive,
+     * and resets the accumulator.
+     */
+    public ConceptVector freeze(int limit) {
+        int size = touchedCount;
+        if (limit > 0 && limit < touchedCount) {
+            selectTop(limit);
+            size = limit;
+        }
+
+        int[] documents = Arrays.copyOf(touched, size);
+        Arrays.sort(documents);
+        float[] vectorScores = new float[size];
+        for (int documentIdx = 0; documentIdx < size; documentIdx++) {
+            vectorScores[documentIdx] = scores[documents[documentIdx]];
+        }
+        clear();
+        return new ConceptVector(documents, vectorScores, size);
+    }
+
+    public void clear() {
+        for (int touchedIdx = 0; touchedIdx < touchedCount; touchedIdx++) {
+            scores[touched[touchedIdx]] = 0;
+        }
+        touchedCount = 0;
+    }
+
+    /**
+     * Moves the k highest scoring documents to the front of the touched list using a bounded min heap.
+     * Ties are broken by the lower document id so the result doesn't depend on the accumulation order.
+     */
+    protected void selectTop(int k) {
+        //touched[0..k) is the heap, the smallest score at the root
+        for (int heapIdx = k / 2 - 1; heapIdx >= 0; heapIdx--) {
+            siftDown(heapIdx, k);
+        }
+        for (int touchedIdx = k; touchedIdx < touchedCount; touchedIdx++) {
+            if (isLower(touched[0], touched[touchedIdx])) {
+                int document = touched[touchedIdx];
+                touched[touchedIdx] = touched[0];
+                touched[0] = document;
+                siftDown(0, k);
+            }
+        }
+    }
+
+    protected void siftDown(int heapIdx, int heapSize) {
+        int document = touched[heapIdx];
+        while (true) {
+            int child = heapIdx * 2 + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && isLower(touched[child + 1], touched[child])) {
+                child++;
+            }
+            if (!isLower(touched[child], document)) {
+                break;
+            }
+            touched[heapIdx] = touched[child];
+            heapIdx = child;
+        }
+        touched[heapIdx] = document;
+    }
+
+    protected boolean isLower(int document, int otherDocument) {
+        float score = scores[document];
+        float otherScore = scores[otherDocument];
+        return score < otherScore || (score == otherScore && document > otherDocument);
+    }
+}
@@ -1,60 +1,173 @@
 package com.dreamcloud.esa.vectorizer;
 
-import org.eclipse.collections.api.map.primitive.MutableObjectFloatMap;
-import org.eclipse.collections.impl.factory.primitive.ObjectFloatMaps;
+import java.util.Arrays;
 
+/**
+ * Concept scores stored as parallel arrays sorted by document id.
+ */
 public class ConceptVector {
-    float norm = 0;
-    MutableObjectFloatMap<Integer> documentScores = ObjectFloatMaps.mutable.empty();
+    //Gallop through the larger vector once it's this many times the size of the smaller one
+    protected static final int GALLOP_RATIO = 16;
 
-    public ConceptVector(int numDocs) {
+    protected int[] documents;
+    protected float[] scores;
+    protected int size;
+    protected double norm = -1;
 
+    public ConceptVector(int[] documents, float[] scores, int size) {
+        this.documents = documents;
+        this.scores = scores;
+        this.size = size;
     }
 
+    public ConceptVector() {
+        this(new int[0], new float[0], 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The backing array, valid up to size(). Don't write to it: built vectors may be shared through a VectorCache.
+     */
+    public int[] getDocuments() {
+        return documents;
+    }
+
+    /**
+     * The backing array, valid up to size(). Don't write to it: built vectors may be shared through a VectorCache.
+     */
+    public float[] getScores() {
+        return scores;
+    }
+
+    /**
+     * Adds the other vector's scores into this one. Only for vectors the caller built itself, never a cached one.
+     */
     public void merge(ConceptVector other) {
-        for (int documentId: other.documentScores.keySet()) {
-            this.addScore(documentId, other.getScore(documentId));
+        int[] mergedDocuments = new int[size + other.size];
+        float[] mergedScores = new float[size + other.size];
+        int mergedSize = 0;
+        int ourIdx = 0;
+        int theirIdx = 0;
+        while (ourIdx < size || theirIdx < other.size) {
+            if (theirIdx == other.size || (ourIdx < size && documents[ourIdx] < other.documents[theirIdx])) {
+                mergedDocuments[mergedSize] = documents[ourIdx];
+                mergedScores[mergedSize++] = scores[ourIdx++];
+            } else if (ourIdx == size || other.documents[theirIdx] < documents[ourIdx]) {
+                mergedDocuments[mergedSize] = other.documents[theirIdx];
+                mergedScores[mergedSize++] = other.scores[theirIdx++];
+            } else {
+                mergedDocuments[mergedSize] = documents[ourIdx];
+                mergedScores[mergedSize++] = scores[ourIdx++] + other.scores[theirIdx++];
+            }
         }
+        documents = mergedDocuments;
+        scores = mergedScores;
+        size = mergedSize;
+        norm = -1;
     }
 
     public ConceptVector prune(int windowSize, float dropOff) {
         return this;
     }
 
-    public float dotProduct(ConceptVector other) {
-        MutableObjectFloatMap<Integer> theirScores = other.documentScores;
-        float norm1 = 0;
-        float norm2 = 0;
-        float dotProduct = 0;
-        for (int documentId: documentScores.keySet()) {
-            float ourScore = documentScores.get(documentId);
-            if (theirScores.containsKey(documentId)) {
-                dotProduct += ourScore * theirScores.get(documentId);
+    /**
+     * The L2 norm, computed once and reused for every comparison.
+     */
+    public double getNorm() {
+        if (norm < 0) {
+            double sum = 0;
+            for (int scoreIdx = 0; scoreIdx < size; scoreIdx++) {
+                sum += scores[scoreIdx] * scores[scoreIdx];
             }
-            norm1 += ourScore * ourScore;
+            norm = Math.sqrt(sum);
         }
-        for (int documentId: theirScores.keySet()) {
-            float theirScore = theirScores.get(documentId);
-            norm2 += theirScore * theirScore;
+        return norm;
+    }
+
+    /**
+     * Cosine similarity of the two vectors.
+     */
+    public float dotProduct(ConceptVector other) {
+        ConceptVector smaller = size <= other.size ? this : other;
+        ConceptVector larger = smaller == this ? other : this;
+        double dotProduct;
+        if ((long) smaller.size * GALLOP_RATIO < larger.size) {
+            dotProduct = gallopingJoin(smaller, larger);
+        } else {
+            dotProduct = mergeJoin(smaller, larger);
         }
-        return (float) (dotProduct / (Math.sqrt(norm1) * Math.sqrt((norm2))));
+        return (float) (dotProduct / (getNorm() * other.getNorm()));
     }
 
-    public void sort() {
+    protected static double mergeJoin(ConceptVector vector, ConceptVector other) {
+        int[] documents = vector.documents;
+        int[] otherDocuments = other.documents;
+        double dotProduct = 0;
+        int idx = 0;
+        int otherIdx = 0;
+        while (idx < vector.size && otherIdx < other.size) {
+            int document = documents[idx];
+            int otherDocument = otherDocuments[otherIdx];
+            if (document == otherDocument) {
+                dotProduct += vector.scores[idx] * other.scores[otherIdx];
+            }
+            //Advance whichever side is behind (both on a match)
+            idx += document <= otherDocument ? 1 : 0;
+            otherIdx += otherDocument <= document ? 1 : 0;
+        }
+        return dotProduct;
     }
 
-    public Integer[] getSortedDocumentIds() {
-        sort();
-        return documentScores.keySet().toArray(new Integer[0]);
+    /**
+     * For each document of the small vector, gallops then binary searches through the large one.
+     */
+    protected static double gallopingJoin(ConceptVector smaller, ConceptVector larger) {
+        double dotProduct = 0;
+        int low = 0;
+        for (int idx = 0; idx < smaller.size && low < larger.size; idx++) {
+            int document = smaller.documents[idx];
+            int step = 1;
+            int high = low;
+            while (high < larger.size && larger.documents[high] < document) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int found = Arrays.binarySearch(larger.documents, low, Math.min(high + 1, larger.size), document);
+            if (found >= 0) {
+                dotProduct += smaller.scores[idx] * larger.scores[found];
+                low = found + 1;
+            } else {
+                low = -found - 1;
+            }
+        }
+        return dotProduct;
     }
 
-    public void addScore(int document, float score) {
-        if (score > 0) {
-            this.documentScores.addToValue(document, score);
+    /**
+     * Document ids ordered by descending score, ties by ascending id.
+     */
+    public int[] getSortedDocumentIds() {
+        //Sort (score, index) pairs packed into longs: the float bits made to order like Float.compare, then the index inverted for the ties
+        long[] keys = new long[size];
+        for (int documentIdx = 0; documentIdx < size; documentIdx++) {
+            int scoreBits = Float.floatToIntBits(scores[documentIdx]);
+            scoreBits ^= (scoreBits >> 31) & 0x7FFFFFFF;
+            keys[documentIdx] = ((long) scoreBits << 32) | (~documentIdx & 0xFFFFFFFFL);
+        }
+        Arrays.sort(keys);
+        int[] documentIds = new int[size];
+        for (int keyIdx = 0; keyIdx < size; keyIdx++) {
+            documentIds[keyIdx] = documents[~(int) keys[size - 1 - keyIdx]];
         }
+        return documentIds;
     }
 
     public float getScore(int documentId) {
-        return this.documentScores.get(documentId);
+        int documentIdx = Arrays.binarySearch(documents, 0, size, documentId);
+        return documentIdx >= 0 ? scores[documentIdx] : 0;
     }
 }
@@ -4,4 +4,25 @@ public class PruneOptions {
     public int windowSize = 0;
     public float dropOff = 0;
     public int vectorLimit = 0;
+    //With a vector limit, stop scoring postings once the top concepts are certain (see TopKEvaluator)
+    public boolean earlyTermination = false;
+
+    /**
+     * The number of postings to keep of a score sorted list: the head of the list up to where the scores
+     * in a window stop dropping off (Gabrilovich and Markovitch). Pruning the kept postings again keeps all of them.
+     */
+    public int getPruneLimit(float[] scores, int size) {
+        int limit = size;
+        if (windowSize > 0) {
+            for (int scoreIdx = 0; scoreIdx + windowSize < size; scoreIdx++) {
+                float headScore = scores[scoreIdx];
+                float tailScore = scores[scoreIdx + windowSize];
+                if (headScore - tailScore < headScore * dropOff) {
+                    limit = scoreIdx + 1;
+                    break;
+                }
+            }
+        }
+        return limit;
+    }
 }
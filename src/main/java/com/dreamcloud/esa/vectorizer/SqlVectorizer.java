@@ -1,5 +1,7 @@
 package com.dreamcloud.esa.vectorizer;
 
+import java.util.List;
+
 public class SqlVectorizer implements TextVectorizer {
     protected VectorBuilder builder;
 
@@ -10,4 +12,8 @@ public class SqlVectorizer implements TextVectorizer {
     public ConceptVector vectorize(String text) throws Exception {
         return builder.build(text);
     }
+
+    public List<ConceptVector> vectorizeAll(List<String> texts) throws Exception {
+        return builder.buildAll(texts);
+    }
 }
@@ -1,5 +1,19 @@
 package com.dreamcloud.esa.vectorizer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface TextVectorizer {
     ConceptVector vectorize(String text) throws Exception;
+
+    /**
+     * Vectorizes many texts, in order. Implementations may share work between the texts.
+     */
+    default List<ConceptVector> vectorizeAll(List<String> texts) throws Exception {
+        List<ConceptVector> vectors = new ArrayList<>(texts.size());
+        for (String text: texts) {
+            vectors.add(vectorize(text));
+        }
+        return vectors;
+    }
 }
@@ -0,0 +1,125 @@
+package com.dreamcloud.esa.vectorizer;
+
+import com.dreamcloud.esa.tools.FrequencySketch;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An LRU vector cache bounded by an estimate of its size in bytes, with TinyLFU admission.
+ *
+ * Every lookup is recorded in a frequency sketch. When a new vector doesn't fit,
+ * it only replaces the least recently used vectors if it has been asked for more often than each of them,
+ * so one-off documents can't flush out the popular ones.
+ */
+public class TinyLfuVectorCache implements VectorCache {
+    //Key, map entry and vector headers
+    protected static final long ENTRY_OVERHEAD_BYTES = 128;
+    //Rough size of the vectors we expect, used to size the frequency sketch
+    protected static final long EXPECTED_VECTOR_BYTES = 16 * 1024;
+
+    protected final long maxBytes;
+    protected final LinkedHashMap<VectorCacheKey, ConceptVector> vectors = new LinkedHashMap<>(16, 0.75f, true);
+    protected final FrequencySketch sketch;
+    protected long byteSize = 0;
+    protected final AtomicLong hits = new AtomicLong(0);
+    protected final AtomicLong misses = new AtomicLong(0);
+    protected final AtomicLong evictions = new AtomicLong(0);
+    protected final AtomicLong rejections = new AtomicLong(0);
+
+    public TinyLfuVectorCache(long maxBytes, int expectedEntries) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The cache size must be greater than 0.");
+        }
+        this.maxBytes = maxBytes;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    public TinyLfuVectorCache(long maxBytes) {
+        this(maxBytes, (int) Math.min(Math.max(maxBytes / EXPECTED_VECTOR_BYTES, 1024), 1 << 24));
+    }
+
+    public static long getByteSize(ConceptVector vector) {
+        return ENTRY_OVERHEAD_BYTES + (long) vector.getDocuments().length * Integer.BYTES + (long) vector.getScores().length * Float.BYTES;
+    }
+
+    public synchronized ConceptVector get(VectorCacheKey key) {
+        sketch.increment(key.getHash());
+        ConceptVector vector = vectors.get(key);
+        if (vector != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return vector;
+    }
+
+    public synchronized void put(VectorCacheKey key, ConceptVector vector) {
+        long vectorBytes = getByteSize(vector);
+        if (vectorBytes > maxBytes) {
+            rejections.incrementAndGet();
+            return;
+        }
+        //A vector replacing the key's previous one frees its space, but the previous one stays if the new one is rejected
+        ConceptVector previous = vectors.get(key);
+        long previousBytes = previous != null ? getByteSize(previous) : 0;
+
+        //Find the least recently used vectors we'd have to evict, and make sure the new one is worth it
+        int frequency = sketch.frequency(key.getHash());
+        ArrayList<VectorCacheKey> victims = new ArrayList<>();
+        long freedBytes = previousBytes;
+        Iterator<Map.Entry<VectorCacheKey, ConceptVector>> eldest = vectors.entrySet().iterator();
+        while (byteSize - freedBytes + vectorBytes > maxBytes) {
+            Map.Entry<VectorCacheKey, ConceptVector> victim = eldest.next();
+            if (victim.getKey().equals(key)) {
+                continue;
+            }
+            if (sketch.frequency(victim.getKey().getHash()) >= frequency) {
+                rejections.incrementAndGet();
+                return;
+            }
+            victims.add(victim.getKey());
+            freedBytes += getByteSize(victim.getValue());
+        }
+
+        for (VectorCacheKey victim: victims) {
+            vectors.remove(victim);
+        }
+        evictions.addAndGet(victims.size());
+        byteSize -= freedBytes;
+        vectors.put(key, vector);
+        byteSize += vectorBytes;
+    }
+
+    public synchronized void clear() {
+        vectors.clear();
+        byteSize = 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    public synchronized int getSize() {
+        return vectors.size();
+    }
+
+    public synchronized long getByteSize() {
+        return byteSize;
+    }
+}
@@ -0,0 +1,217 @@
+package com.dreamcloud.esa.vectorizer;
+
+import com.dreamcloud.esa.tfidf.PostingList;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the k highest scoring concepts of a vector without scoring every posting of its terms,
+ * using the No Random Access threshold algorithm (Fagin et al.) over the score sorted posting lists.
+ *
+ * The lists are scored in rounds, each going down every list to the postings that add less than a cutoff,
+ * which halves from round to round, so the heavy terms are read deepest. A document's partial score is a lower bound on its score,
+ * and since every list is sorted by descending score, the next posting of each list bounds what the rest of the list can add.
+ * Once the k-th highest lower bound is above the sum of those bounds, no document that hasn't been seen can make the top k,
+ * and the seen documents that still can are the candidates.
+ *
+ * The candidates are then scored exactly by going through the lists in term order, like exhaustive evaluation does
+ * (so the floats add up to the same scores), checking documents against the candidates instead of accumulating them.
+ * A list is left as soon as every candidate has been found in it, which is where postings are skipped outright.
+ * The result is the same vector that accumulating every posting and keeping the top k gives,
+ * as long as a document has at most one posting per list, as the collection writers write them.
+ *
+ * With many lists, the sum of their bounds stays above the k-th score until most of every list has been read,
+ * and the candidates are then most of the documents seen, so vectors of more than MAX_LISTS terms are better accumulated as usual
+ * (which evaluate() falls back to, though callers that would read the lists just for it should check first).
+ */
+public class TopKEvaluator {
+    public static final int MAX_LISTS = 16;
+
+    //Across every evaluator, for reporting
+    protected static final AtomicLong postingsScored = new AtomicLong(0);
+    protected static final AtomicLong postingsChecked = new AtomicLong(0);
+    protected static final AtomicLong postingsSkipped = new AtomicLong(0);
+
+    protected PostingList[] lists = new PostingList[16];
+    //Reused for the lists that are filled through addList(weight)
+    protected PostingList[] ownLists = new PostingList[16];
+    protected float[] weights = new float[16];
+    protected int listCount = 0;
+    protected int[] depths = new int[16];
+    protected long[] candidateSet = new long[0];
+    protected int[] candidates = new int[1024];
+
+    /**
+     * Forgets the lists of the last evaluation, keeping them to be reused.
+     */
+    public void reset() {
+        listCount = 0;
+    }
+
+    /**
+     * Adds a term's list, to be filled with its (pruned) postings, in the order the terms are accumulated in.
+     */
+    public PostingList addList(float weight) {
+        if (listCount == ownLists.length) {
+            ownLists = Arrays.copyOf(ownLists, listCount * 2);
+        }
+        if (ownLists[listCount] == null) {
+            ownLists[listCount] = new PostingList();
+        }
+        addList(ownLists[listCount], weight);
+        return lists[listCount - 1];
+    }
+
+    /**
+     * Adds a list that is already filled (and isn't modified).
+     */
+    public void addList(PostingList postings, float weight) {
+        if (listCount == lists.length) {
+            lists = Arrays.copyOf(lists, listCount * 2);
+            weights = Arrays.copyOf(weights, listCount * 2);
+            depths = Arrays.copyOf(depths, listCount * 2);
+        }
+        lists[listCount] = postings;
+        weights[listCount++] = weight;
+    }
+
+    protected float getContribution(int listIdx, int postingIdx) {
+        return (float) (lists[listIdx].scores[postingIdx] * (double) weights[listIdx]);
+    }
+
+    /**
+     * Builds the vector of the k highest scoring documents of the added lists.
+     * The accumulator must be empty, and is left empty.
+     */
+    public ConceptVector evaluate(ConceptAccumulator accumulator, int k) {
+        long scored = 0;
+        long checked = 0;
+        long skipped = 0;
+        if (listCount > MAX_LISTS) {
+            for (int listIdx = 0; listIdx < listCount; listIdx++) {
+                PostingList postings = lists[listIdx];
+                for (int postingIdx = 0; postingIdx < postings.size; postingIdx++) {
+                    accumulator.addScore(postings.documents[postingIdx], getContribution(listIdx, postingIdx));
+                }
+                scored += postings.size;
+            }
+            postingsScored.addAndGet(scored);
+            return accumulator.freeze(k);
+        }
+        Arrays.fill(depths, 0, listCount, 0);
+
+        //Score the heaviest postings first until the top k can't change
+        //Partial sums are added in a different order than exhaustive evaluation would, so the bounds allow for rounding
+        double slack = 1 - (listCount + 1) * Math.ulp(1.0f) * 4.0;
+        float threshold = 0;
+        double remainingBound = 0;
+        boolean certain = false;
+        float maxScore = 0;
+        float cutoff = 0;
+        for (int listIdx = 0; listIdx < listCount; listIdx++) {
+            if (lists[listIdx].size > 0) {
+                cutoff = Math.max(cutoff, getContribution(listIdx, 0) / 2);
+            }
+        }
+        while (true) {
+            remainingBound = 0;
+            for (int listIdx = 0; listIdx < listCount; listIdx++) {
+                PostingList postings = lists[listIdx];
+                int postingIdx = depths[listIdx];
+                float contribution = 0;
+                for (; postingIdx < postings.size; postingIdx++) {
+                    contribution = getContribution(listIdx, postingIdx);
+                    if (contribution < cutoff) {
+                        break;
+                    }
+                    int document = postings.documents[postingIdx];
+                    accumulator.addScore(document, contribution);
+                    maxScore = Math.max(maxScore, accumulator.scores[document]);
+                }
+                scored += postingIdx - depths[listIdx];
+                depths[listIdx] = postingIdx;
+                if (postingIdx < postings.size) {
+                    remainingBound += Math.max(0, contribution);
+                }
+            }
+            if (remainingBound == 0) {
+                //Everything has been read
+                break;
+            }
+            //The k-th score is no higher than the highest, which is much cheaper to know
+            if (remainingBound < maxScore * slack) {
+                float kthScore = accumulator.getKthScore(k);
+                if (kthScore > 0 && remainingBound < kthScore * slack) {
+                    threshold = (float) (kthScore * slack);
+                    certain = true;
+                    break;
+                }
+            }
+            cutoff /= 2;
+        }
+
+        //Documents that can still make the top k (every document, if the lists were read to the end)
+        int candidateCount = 0;
+        int documentCapacity = accumulator.getDocumentCapacity();
+        if (candidateSet.length < (documentCapacity + 63) / 64) {
+            candidateSet = new long[(documentCapacity + 63) / 64];
+        }
+        for (int touchedIdx = 0; touchedIdx < accumulator.size(); touchedIdx++) {
+            int document = accumulator.touched[touchedIdx];
+            if (!certain || accumulator.scores[document] + remainingBound >= threshold) {
+                if (candidateCount == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, candidateCount * 2);
+                }
+                candidates[candidateCount++] = document;
+                candidateSet[document >>> 6] |= 1L << document;
+            }
+        }
+        accumulator.clear();
+
+        //Score the candidates exactly, in term order
+        for (int listIdx = 0; listIdx < listCount; listIdx++) {
+            PostingList postings = lists[listIdx];
+            int found = 0;
+            int postingIdx = 0;
+            for (; postingIdx < postings.size && found < candidateCount; postingIdx++) {
+                int document = postings.documents[postingIdx];
+                if ((candidateSet[document >>> 6] & (1L << document)) != 0) {
+                    accumulator.addScore(document, getContribution(listIdx, postingIdx));
+                    found++;
+                }
+            }
+            checked += postingIdx;
+            skipped += postings.size - postingIdx;
+        }
+        for (int candidateIdx = 0; candidateIdx < candidateCount; candidateIdx++) {
+            candidateSet[candidates[candidateIdx] >>> 6] = 0;
+        }
+
+        postingsScored.addAndGet(scored);
+        postingsChecked.addAndGet(checked);
+        postingsSkipped.addAndGet(skipped);
+        return accumulator.freeze(k);
+    }
+
+    /**
+     * Postings added to partial scores while looking for the top k.
+     */
+    public static long getPostingsScored() {
+        return postingsScored.get();
+    }
+
+    /**
+     * Postings compared to the candidates while scoring them exactly.
+     */
+    public static long getPostingsChecked() {
+        return postingsChecked.get();
+    }
+
+    /**
+     * Postings never looked at after the lists were read.
+     */
+    public static long getPostingsSkipped() {
+        return postingsSkipped.get();
+    }
+}
@@ -1,102 +1,285 @@
 package com.dreamcloud.esa.vectorizer;
 
 import com.dreamcloud.esa.documentPreprocessor.DocumentPreprocessor;
+import com.dreamcloud.esa.fs.TermIdDictionary;
 import com.dreamcloud.esa.tfidf.CollectionInfo;
 import com.dreamcloud.esa.tfidf.DocumentScoreReader;
+import com.dreamcloud.esa.tfidf.PostingList;
 import com.dreamcloud.esa.tfidf.TfIdfAnalyzer;
-import com.dreamcloud.esa.tfidf.TfIdfScore;
-import org.eclipse.collections.impl.map.mutable.primitive.ObjectFloatHashMap;
+import com.dreamcloud.esa.tfidf.TermScores;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Vector;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class VectorBuilder {
-    public static Map<String, ConceptVector> cache = new ConcurrentHashMap<>();
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    //Postings are read into the same buffer for every term built on a thread
+    protected static ThreadLocal<PostingList> postingBuffers = ThreadLocal.withInitial(PostingList::new);
+    protected static ThreadLocal<ConceptAccumulator> accumulators = new ThreadLocal<>();
+    protected static ThreadLocal<TopKEvaluator> topKEvaluators = ThreadLocal.withInitial(TopKEvaluator::new);
     DocumentScoreReader scoreReader;
     TfIdfAnalyzer tfIdfAnalyzer;
     PruneOptions pruneOptions;
     DocumentPreprocessor preprocessor;
     CollectionInfo collectionInfo;
+    VectorCache cache;
+    protected int batchSize = DEFAULT_BATCH_SIZE;
 
-    public VectorBuilder(DocumentScoreReader scoreReader, CollectionInfo collectionInfo, TfIdfAnalyzer analyzer, DocumentPreprocessor preprocessor, PruneOptions pruneOptions) {
+    public VectorBuilder(DocumentScoreReader scoreReader, CollectionInfo collectionInfo, TfIdfAnalyzer analyzer, DocumentPreprocessor preprocessor, PruneOptions pruneOptions, VectorCache cache) {
         this.scoreReader = scoreReader;
         this.tfIdfAnalyzer = analyzer;
         this.collectionInfo = collectionInfo;
         this.preprocessor = preprocessor;
         this.pruneOptions = pruneOptions;
+        this.cache = cache;
+    }
+
+    public VectorBuilder(DocumentScoreReader scoreReader, CollectionInfo collectionInfo, TfIdfAnalyzer analyzer, DocumentPreprocessor preprocessor, PruneOptions pruneOptions) {
+        this(scoreReader, collectionInfo, analyzer, preprocessor, pruneOptions, null);
     }
 
     public VectorBuilder(DocumentScoreReader scoreReader, CollectionInfo collectionInfo, TfIdfAnalyzer tfIdfAnalyzer, DocumentPreprocessor preprocessor) {
         this(scoreReader, collectionInfo, tfIdfAnalyzer, preprocessor, null);
     }
 
+    /**
+     * Identifies everything besides the text that changes the vector.
+     * Components without a value based configuration are identified by instance, which is all an in-process cache needs.
+     */
+    protected long getConfiguration() {
+        long configuration = System.identityHashCode(scoreReader);
+        configuration = configuration * 31 + System.identityHashCode(tfIdfAnalyzer);
+        configuration = configuration * 31 + System.identityHashCode(preprocessor);
+        if (pruneOptions != null) {
+            //Read on every build, as the tuner changes the prune options in place
+            configuration = configuration * 31 + pruneOptions.windowSize;
+            configuration = configuration * 31 + Float.floatToIntBits(pruneOptions.dropOff);
+            configuration = configuration * 31 + pruneOptions.vectorLimit;
+        }
+        return configuration;
+    }
+
+    /**
+     * Sets how many documents buildAll() reads postings for at once.
+     * A batch keeps the (pruned) postings of all of its terms in memory until its vectors are built.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Builds the concept vector of a document.
+     * With a cache, the vector may be shared with other callers and must not be modified.
+     */
     public ConceptVector build(String document) throws Exception {
-        String originalDocument = document;
-        if (!cache.containsKey(originalDocument)) {
+        VectorCacheKey cacheKey = null;
+        if (cache != null) {
+            cacheKey = new VectorCacheKey(document, getConfiguration());
+            ConceptVector vector = cache.get(cacheKey);
+            if (vector != null) {
+                return vector;
+            }
+        }
+
+        if (preprocessor != null) {
+            document = preprocessor.process(document);
+        }
+        ConceptAccumulator accumulator = getAccumulator();
+        //Readers over a file index look terms up by id, the rest by name
+        TermIdDictionary termIds = scoreReader.getTermIds();
+        TermScores scores = termIds != null ? tfIdfAnalyzer.getTermScores(document, termIds) : tfIdfAnalyzer.getTermScores(document);
+        TopKEvaluator evaluator = null;
+        if (isEarlyTerminating() && countIndexTerms(scores, termIds) <= TopKEvaluator.MAX_LISTS) {
+            //Every term's postings are needed at once
+            evaluator = topKEvaluators.get();
+            evaluator.reset();
+        }
+        PostingList postings = postingBuffers.get();
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            if (evaluator != null && (termIds == null || scores.termIds[termIdx] >= 0)) {
+                postings = evaluator.addList((float) scores.scores[termIdx]);
+            }
+            if (termIds == null) {
+                scoreReader.getPostings(scores.terms[termIdx], postings);
+            } else if (scores.termIds[termIdx] >= 0) {
+                scoreReader.getPostings(scores.termIds[termIdx], postings);
+            } else {
+                //Not in the index, so there are no postings
+                continue;
+            }
+            if (evaluator != null) {
+                postings.size = getPruneLimit(postings);
+            } else {
+                accumulate(accumulator, postings, getPruneLimit(postings), (float) scores.scores[termIdx]);
+            }
+        }
+
+        ConceptVector vector = evaluator != null ? evaluator.evaluate(accumulator, pruneOptions.vectorLimit) : accumulator.freeze(pruneOptions != null ? pruneOptions.vectorLimit : 0);
+        if (cache != null) {
+            cache.put(cacheKey, vector);
+        }
+        return vector;
+    }
+
+    /**
+     * Builds the vectors of many documents, the same as calling build() for each of them.
+     *
+     * The documents are taken in batches that are analyzed up front, so the postings of a term are read only once per batch
+     * however many of its documents have the term. The vectors are then accumulated one at a time from the batch's postings.
+     */
+    public List<ConceptVector> buildAll(List<String> documents) throws Exception {
+        List<ConceptVector> vectors = new ArrayList<>(documents.size());
+        for (int batchStart = 0; batchStart < documents.size(); batchStart += batchSize) {
+            vectors.addAll(buildBatch(documents.subList(batchStart, Math.min(batchStart + batchSize, documents.size()))));
+        }
+        return vectors;
+    }
+
+    protected List<ConceptVector> buildBatch(List<String> documents) throws Exception {
+        ConceptVector[] vectors = new ConceptVector[documents.size()];
+        VectorCacheKey[] cacheKeys = new VectorCacheKey[documents.size()];
+        BatchTerm[][] documentTerms = new BatchTerm[documents.size()][];
+        float[][] documentWeights = new float[documents.size()][];
+        Map<String, BatchTerm> batchTerms = new HashMap<>();
+        TermIdDictionary termIds = scoreReader.getTermIds();
+        long configuration = cache != null ? getConfiguration() : 0;
+        for (int documentIdx = 0; documentIdx < documents.size(); documentIdx++) {
+            String document = documents.get(documentIdx);
+            if (cache != null) {
+                cacheKeys[documentIdx] = new VectorCacheKey(document, configuration);
+                vectors[documentIdx] = cache.get(cacheKeys[documentIdx]);
+                if (vectors[documentIdx] != null) {
+                    continue;
+                }
+            }
+
             if (preprocessor != null) {
                 document = preprocessor.process(document);
             }
-            ConceptVector vector = new ConceptVector(collectionInfo.getDocumentCount());
-            TfIdfScore[] scores = tfIdfAnalyzer.getTfIdfScores(document);
-            Map<String, Float> scoreMap = new HashMap<>();
-            String []terms = new String[scores.length];
-            int i = 0;
-            for (TfIdfScore score: scores) {
-                terms[i++] = score.getTerm();
-                scoreMap.put(score.getTerm(), (float) score.getScore());
+            TermScores scores = termIds != null ? tfIdfAnalyzer.getTermScores(document, termIds) : tfIdfAnalyzer.getTermScores(document);
+            BatchTerm[] terms = new BatchTerm[scores.size];
+            float[] weights = new float[scores.size];
+            int termCount = 0;
+            for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+                int termId = termIds != null ? scores.termIds[termIdx] : -1;
+                if (termIds != null && termId < 0) {
+                    //Not in the index, so there are no postings
+                    continue;
+                }
+                terms[termCount] = batchTerms.computeIfAbsent(scores.terms[termIdx], term -> new BatchTerm(term, termId));
+                weights[termCount++] = (float) scores.scores[termIdx];
             }
+            documentTerms[documentIdx] = Arrays.copyOf(terms, termCount);
+            documentWeights[documentIdx] = Arrays.copyOf(weights, termCount);
+        }
 
-            //We need to prune these scores!
-            Vector<TfIdfScore> scoreDocs = new Vector<>();
-            if (pruneOptions != null && pruneOptions.windowSize > 0) {
-                Vector<TfIdfScore> allTermScores = new Vector<>();
-                for (String term: terms) {
-                    Vector<TfIdfScore> termScores = new Vector<>();
-                    scoreReader.getTfIdfScores(term, termScores);
-                    for (int scoreIdx = 0; scoreIdx < termScores.size(); scoreIdx++) {
-                        allTermScores.add(termScores.get(scoreIdx));
-                        if (scoreIdx + pruneOptions.windowSize < termScores.size()) {
-                            float headScore = (float) termScores.get(scoreIdx).getScore();
-                            float tailScore = (float) termScores.get(scoreIdx + pruneOptions.windowSize).getScore();
-                            if (headScore - tailScore < headScore * pruneOptions.dropOff) {
-                                break;
-                            }
-                        }
-                    }
-                }
-                scoreDocs = allTermScores;
+        //Read each term once, in id order so a file index is read front to back
+        BatchTerm[] uniqueTerms = batchTerms.values().toArray(new BatchTerm[0]);
+        Arrays.sort(uniqueTerms, Comparator.comparingInt(term -> term.termId));
+        PostingList postings = postingBuffers.get();
+        for (BatchTerm term: uniqueTerms) {
+            if (termIds != null) {
+                scoreReader.getPostings(term.termId, postings);
             } else {
-                scoreReader.getTfIdfScores(terms, scoreDocs);
+                scoreReader.getPostings(term.term, postings);
             }
+            //Only the postings that survive pruning are kept
+            int limit = getPruneLimit(postings);
+            term.postings = new PostingList(limit);
+            System.arraycopy(postings.documents, 0, term.postings.documents, 0, limit);
+            System.arraycopy(postings.scores, 0, term.postings.scores, 0, limit);
+            term.postings.size = limit;
+        }
 
-            for (TfIdfScore docScore: scoreDocs) {
-                double weight = scoreMap.get(docScore.getTerm());
-                docScore.normalizeScore(weight);
-                vector.addScore(docScore.getDocument(), (float) docScore.getScore());
+        ConceptAccumulator accumulator = getAccumulator();
+        for (int documentIdx = 0; documentIdx < documents.size(); documentIdx++) {
+            if (vectors[documentIdx] != null) {
+                continue;
             }
-
-            if (pruneOptions != null && pruneOptions.vectorLimit > 0) {
-                TfIdfScore[] sortedScores = new TfIdfScore[vector.documentScores.size()];
-                int s = 0;
-                for (Integer documentId: vector.documentScores.keySet()) {
-                    sortedScores[s++] = new TfIdfScore(documentId, null, vector.getScore(documentId));
+            BatchTerm[] terms = documentTerms[documentIdx];
+            if (isEarlyTerminating()) {
+                TopKEvaluator evaluator = topKEvaluators.get();
+                evaluator.reset();
+                for (int termIdx = 0; termIdx < terms.length; termIdx++) {
+                    evaluator.addList(terms[termIdx].postings, documentWeights[documentIdx][termIdx]);
                 }
-
-                Arrays.sort(sortedScores, (t1, t2) -> Float.compare((float) t2.getScore(), (float) t1.getScore()));
-                vector.documentScores.clear();
-                int cutOff = Math.min(pruneOptions.vectorLimit, sortedScores.length);
-                for (int t=0; t<cutOff; t++) {
-                    vector.addScore(sortedScores[t].getDocument(), (float) sortedScores[t].getScore());
+                vectors[documentIdx] = evaluator.evaluate(accumulator, pruneOptions.vectorLimit);
+            } else {
+                for (int termIdx = 0; termIdx < terms.length; termIdx++) {
+                    accumulate(accumulator, terms[termIdx].postings, terms[termIdx].postings.size, documentWeights[documentIdx][termIdx]);
                 }
+                vectors[documentIdx] = accumulator.freeze(pruneOptions != null ? pruneOptions.vectorLimit : 0);
+            }
+            if (cache != null) {
+                cache.put(cacheKeys[documentIdx], vectors[documentIdx]);
+            }
+        }
+        return Arrays.asList(vectors);
+    }
+
+    /**
+     * Whether only the top concepts are wanted and they're found with a TopKEvaluator, which gives the same vector
+     * without scoring every posting.
+     */
+    protected boolean isEarlyTerminating() {
+        return pruneOptions != null && pruneOptions.earlyTermination && pruneOptions.vectorLimit > 0;
+    }
+
+    protected int countIndexTerms(TermScores scores, TermIdDictionary termIds) {
+        if (termIds == null) {
+            return scores.size;
+        }
+        int termCount = 0;
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            if (scores.termIds[termIdx] >= 0) {
+                termCount++;
             }
+        }
+        return termCount;
+    }
+
+    protected ConceptAccumulator getAccumulator() {
+        ConceptAccumulator accumulator = accumulators.get();
+        if (accumulator == null || accumulator.getDocumentCapacity() < collectionInfo.getDocumentCount()) {
+            accumulator = new ConceptAccumulator(collectionInfo.getDocumentCount());
+            accumulators.set(accumulator);
+        }
+        //Drop anything left behind by a build that failed part way
+        accumulator.clear();
+        return accumulator;
+    }
+
+    /**
+     * The number of postings to keep: the head of the list up to where the scores in a window stop dropping off.
+     */
+    protected int getPruneLimit(PostingList postings) {
+        return pruneOptions != null ? pruneOptions.getPruneLimit(postings.scores, postings.size) : postings.size;
+    }
 
-            //return vector;
-            cache.put(originalDocument, vector);
+    protected void accumulate(ConceptAccumulator accumulator, PostingList postings, int limit, float weight) {
+        double termWeight = weight;
+        for (int scoreIdx = 0; scoreIdx < limit; scoreIdx++) {
+            accumulator.addScore(postings.documents[scoreIdx], (float) (postings.scores[scoreIdx] * termWeight));
         }
+    }
+
+    protected static class BatchTerm {
+        public final String term;
+        //-1 when the reader looks terms up by name
+        public final int termId;
+        public PostingList postings;
 
-        return cache.get(originalDocument);
+        public BatchTerm(String term, int termId) {
+            this.term = term;
+            this.termId = termId;
+        }
     }
 }
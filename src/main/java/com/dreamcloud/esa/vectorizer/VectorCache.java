@@ -0,0 +1,20 @@
+package com.dreamcloud.esa.vectorizer;
+
+/**
+ * Caches built concept vectors.
+ * Implementations must be thread safe, and the counters are for sizing the cache from real traffic.
+ *
+ * The cache hands the same vector instance to every caller that asks for it, so a cached vector must be treated as read only:
+ * don't merge() into it or write to the arrays it returns.
+ */
+public interface VectorCache {
+    public ConceptVector get(VectorCacheKey key);
+    public void put(VectorCacheKey key, ConceptVector vector);
+    public void clear();
+    public long getHits();
+    public long getMisses();
+    public long getEvictions();
+    public long getRejections();
+    public int getSize();
+    public long getByteSize();
+}
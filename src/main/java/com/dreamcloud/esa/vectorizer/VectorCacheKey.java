@@ -0,0 +1,55 @@
+package com.dreamcloud.esa.vectorizer;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A 128 bit hash of a document's text and the configuration it's vectorized with.
+ * Holding the hash instead of the text keeps large documents out of the cache.
+ */
+public class VectorCacheKey {
+    protected static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
+    protected final long high;
+    protected final long low;
+
+    public VectorCacheKey(String text, long configuration) {
+        MessageDigest digest = digests.get();
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+            digest.update((byte) (configuration >>> shift));
+        }
+        byte[] hash = digest.digest();
+        long high = 0;
+        long low = 0;
+        for (int byteIdx = 0; byteIdx < Long.BYTES; byteIdx++) {
+            high = (high << 8) | (hash[byteIdx] & 0xFF);
+            low = (low << 8) | (hash[byteIdx + Long.BYTES] & 0xFF);
+        }
+        this.high = high;
+        this.low = low;
+    }
+
+    public long getHash() {
+        return high ^ low;
+    }
+
+    public boolean equals(Object other) {
+        if (!(other instanceof VectorCacheKey)) {
+            return false;
+        }
+        VectorCacheKey otherKey = (VectorCacheKey) other;
+        return high == otherKey.high && low == otherKey.low;
+    }
+
+    public int hashCode() {
+        return (int) low;
+    }
+}
@@ -0,0 +1,80 @@
+package com.dreamcloud.esa;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.dreamcloud.esa.analyzer.WikipediaArticle;
+import com.dreamcloud.esa.indexer.ArticlePipeline;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ArticlePipelineTest {
+    private static WikipediaArticle article(int id) {
+        WikipediaArticle article = new WikipediaArticle();
+        article.id = id;
+        return article;
+    }
+
+    @Test
+    public void testProcessesEveryArticle() throws IOException, InterruptedException {
+        Set<Integer> processed = ConcurrentHashMap.newKeySet();
+        //A tiny queue so the producer has to wait on the workers
+        ArticlePipeline pipeline = new ArticlePipeline(4, 2, article -> {
+            if (article.id % 7 == 0) {
+                Thread.sleep(1);
+            }
+            assertTrue(processed.add(article.id));
+        });
+        pipeline.start();
+        for (int id = 0; id < 1000; id++) {
+            pipeline.submit(article(id));
+        }
+        pipeline.finish();
+        assertEquals(1000, pipeline.getProcessed());
+        assertEquals(1000, processed.size());
+    }
+
+    @Test
+    public void testFailureStopsTheProducer() throws InterruptedException {
+        ArticlePipeline pipeline = new ArticlePipeline(2, 4, article -> {
+            if (article.id == 10) {
+                throw new IllegalStateException("bad article");
+            }
+        });
+        pipeline.start();
+        IOException failure = null;
+        try {
+            for (int id = 0; id < 100000; id++) {
+                pipeline.submit(article(id));
+            }
+            pipeline.finish();
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            pipeline.abort();
+        }
+        assertNotNull(failure);
+        assertTrue(failure.getCause() instanceof IllegalStateException);
+        assertFalse(pipeline.isRunning());
+    }
+
+    @Test
+    public void testAbortStopsTheWorkers() throws IOException, InterruptedException {
+        ArticlePipeline pipeline = new ArticlePipeline(4, 8, article -> Thread.sleep(1));
+        pipeline.start();
+        try {
+            for (int id = 0; id < 20; id++) {
+                pipeline.submit(article(id));
+            }
+            //The producer fails (e.g. a malformed dump) before the workers are told to finish
+            throw new IllegalStateException("bad dump");
+        } catch (IllegalStateException e) {
+            assertTrue(pipeline.isRunning());
+        } finally {
+            pipeline.abort();
+        }
+        assertFalse(pipeline.isRunning());
+        assertTrue(pipeline.getProcessed() <= 20);
+    }
+}
@@ -0,0 +1,235 @@
+package com.dreamcloud.esa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.dreamcloud.esa.fs.DocumentScoreMemoryReader;
+import com.dreamcloud.esa.fs.TermIndex;
+import com.dreamcloud.esa.fs.TermIndexReader;
+import com.dreamcloud.esa.tfidf.*;
+import com.dreamcloud.esa.vectorizer.PruneOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CollectionWriterTest {
+    private static final int NUM_DOCS = 2000;
+    private static final int NUM_TERMS = 200;
+    private static final int TERMS_PER_DOC = 40;
+
+    private File directory;
+    private Map<Integer, TfIdfScore[]> documents = new HashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("collection-writer-test").toFile();
+        Random random = new Random(42);
+        for (int documentId = 0; documentId < NUM_DOCS; documentId++) {
+            TfIdfScore[] scores = new TfIdfScore[TERMS_PER_DOC];
+            int termId = random.nextInt(NUM_TERMS);
+            for (int scoreIdx = 0; scoreIdx < TERMS_PER_DOC; scoreIdx++) {
+                termId = (termId + 1 + random.nextInt(3)) % NUM_TERMS;
+                scores[scoreIdx] = new TfIdfScore(documentId, "térm" + termId, random.nextFloat());
+            }
+            documents.put(documentId, scores);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (File file: directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private Map<String, Map<Integer, Float>> expectedPostings() {
+        Map<String, Map<Integer, Float>> postings = new HashMap<>();
+        for (TfIdfScore[] scores: documents.values()) {
+            for (TfIdfScore score: scores) {
+                postings.computeIfAbsent(score.getTerm(), k -> new HashMap<>()).put(score.getDocument(), (float) score.getScore());
+            }
+        }
+        return postings;
+    }
+
+    private void write(CollectionWriter writer) throws IOException {
+        writer.writeCollectionInfo(new CollectionInfo(NUM_DOCS, TERMS_PER_DOC));
+        for (Map.Entry<Integer, TfIdfScore[]> document: documents.entrySet()) {
+            writer.writeDocumentScores(document.getKey(), document.getValue());
+        }
+        writer.close();
+    }
+
+    private void writeConcurrently(CollectionWriter writer, int threadCount) throws IOException, InterruptedException {
+        writer.writeCollectionInfo(new CollectionInfo(NUM_DOCS, TERMS_PER_DOC));
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        for (Map.Entry<Integer, TfIdfScore[]> document: documents.entrySet()) {
+            executorService.submit(() -> writer.writeDocumentScores(document.getKey(), document.getValue()));
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+        writer.close();
+    }
+
+    private void assertIndex(File termIndexFile, File documentScoreFile) throws IOException {
+        TermIndexReader termIndexReader = new TermIndexReader();
+        termIndexReader.open(termIndexFile);
+        TermIndex termIndex = termIndexReader.readIndex();
+        termIndexReader.close();
+        assertEquals(NUM_DOCS, termIndex.getDocumentCount());
+
+        ScoreReader scoreReader = new ScoreReader(termIndex, new DocumentScoreMemoryReader(documentScoreFile));
+        Map<String, Map<Integer, Float>> expected = expectedPostings();
+        assertEquals(expected.keySet(), termIndex.getTerms());
+        for (String term: expected.keySet()) {
+            Vector<TfIdfScore> scores = new Vector<>();
+            scoreReader.getTfIdfScores(term, scores);
+            Map<Integer, Float> expectedScores = expected.get(term);
+            assertEquals(expectedScores.size(), scores.size());
+            for (int scoreIdx = 0; scoreIdx < scores.size(); scoreIdx++) {
+                TfIdfScore score = scores.get(scoreIdx);
+                assertEquals(expectedScores.get(score.getDocument()), score.getScore(), 0);
+                if (scoreIdx > 0) {
+                    assertTrue("postings must be score sorted", score.getScore() <= scores.get(scoreIdx - 1).getScore());
+                }
+            }
+
+            //Reading by term id finds the same postings
+            PostingList postings = new PostingList();
+            scoreReader.getPostings(scoreReader.getTermIds().getId(term), postings);
+            assertEquals(scores.size(), postings.size);
+            for (int scoreIdx = 0; scoreIdx < postings.size; scoreIdx++) {
+                assertEquals((int) scores.get(scoreIdx).getDocument(), postings.documents[scoreIdx]);
+                assertEquals(scores.get(scoreIdx).getScore(), postings.scores[scoreIdx], 0);
+            }
+        }
+    }
+
+    @Test
+    public void testDiskCollectionWriter() throws IOException {
+        File termIndexFile = new File(directory, "term-index.dc");
+        File documentScoreFile = new File(directory, "term-scores.dc");
+        DiskCollectionWriter writer = new DiskCollectionWriter(termIndexFile, documentScoreFile);
+        writer.setIdfModes("t");
+        write(writer);
+        assertIndex(termIndexFile, documentScoreFile);
+
+        TermIndexReader termIndexReader = new TermIndexReader();
+        termIndexReader.open(termIndexFile);
+        float[] idfTable = termIndexReader.readIndex().getIdfTables().get('t');
+        termIndexReader.close();
+        assertEquals(NUM_TERMS, idfTable.length);
+    }
+
+    @Test
+    public void testDiskCollectionWriterManyTerms() throws IOException {
+        //Several times more terms than close() encodes ahead of the one writing them, so the window has to slide
+        int numTerms = ForkJoinPool.commonPool().getParallelism() * 4 * 3 + 1;
+        documents.clear();
+        Random random = new Random(42);
+        for (int documentId = 0; documentId < NUM_DOCS; documentId++) {
+            TfIdfScore[] scores = new TfIdfScore[5];
+            for (int scoreIdx = 0; scoreIdx < scores.length; scoreIdx++) {
+                scores[scoreIdx] = new TfIdfScore(documentId, "term" + (documentId * scores.length + scoreIdx) % numTerms, random.nextFloat());
+            }
+            documents.put(documentId, scores);
+        }
+        File termIndexFile = new File(directory, "term-index.dc");
+        File documentScoreFile = new File(directory, "term-scores.dc");
+        write(new DiskCollectionWriter(termIndexFile, documentScoreFile));
+        assertIndex(termIndexFile, documentScoreFile);
+    }
+
+    private PruneOptions failingPruneOptions() {
+        //Fails encoding a term part way through the index
+        AtomicInteger encoded = new AtomicInteger(0);
+        return new PruneOptions() {
+            public int getPruneLimit(float[] scores, int size) {
+                if (encoded.incrementAndGet() == NUM_TERMS / 2) {
+                    throw new IllegalStateException("encoding failed");
+                }
+                return size;
+            }
+        };
+    }
+
+    private void assertWriteFails(CollectionWriter writer, File termIndexFile) throws IOException {
+        RuntimeException failure = null;
+        try {
+            write(writer);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        assertNotNull(failure);
+
+        //The files were closed, and the partial index isn't mistaken for a complete one
+        IOException readFailure = null;
+        TermIndexReader termIndexReader = new TermIndexReader();
+        try {
+            termIndexReader.open(termIndexFile);
+        } catch (IOException e) {
+            readFailure = e;
+        }
+        termIndexReader.close();
+        assertNotNull(readFailure);
+        assertTrue(readFailure.getMessage().contains("incomplete"));
+    }
+
+    @Test
+    public void testDiskCollectionWriterFailure() throws IOException {
+        File termIndexFile = new File(directory, "term-index.dc");
+        File documentScoreFile = new File(directory, "term-scores.dc");
+        assertWriteFails(new DiskCollectionWriter(termIndexFile, documentScoreFile, failingPruneOptions()), termIndexFile);
+    }
+
+    @Test
+    public void testExternalSortCollectionWriterFailure() throws IOException {
+        File termIndexFile = new File(directory, "term-index.dc");
+        File documentScoreFile = new File(directory, "term-scores.dc");
+        ExternalSortCollectionWriter writer = new ExternalSortCollectionWriter(termIndexFile, documentScoreFile, 64 * 1024);
+        writer.setPruneOptions(failingPruneOptions());
+        assertWriteFails(writer, termIndexFile);
+        assertEquals("run files should be cleaned up", 2, directory.listFiles().length);
+    }
+
+    @Test
+    public void testExternalSortCollectionWriter() throws IOException {
+        File termIndexFile = new File(directory, "term-index.dc");
+        File documentScoreFile = new File(directory, "term-scores.dc");
+        //Small enough to spill many runs that share terms
+        write(new ExternalSortCollectionWriter(termIndexFile, documentScoreFile, 64 * 1024));
+        assertIndex(termIndexFile, documentScoreFile);
+        assertEquals("run files should be cleaned up", 2, directory.listFiles().length);
+    }
+
+    @Test
+    public void testDiskCollectionWriterConcurrently() throws IOException, InterruptedException {
+        File termIndexFile = new File(directory, "term-index.dc");
+        File documentScoreFile = new File(directory, "term-scores.dc");
+        //Every term is shared by hundreds of documents, so threads constantly append to the same terms
+        for (int run = 0; run < 5; run++) {
+            writeConcurrently(new DiskCollectionWriter(termIndexFile, documentScoreFile), 8);
+            assertIndex(termIndexFile, documentScoreFile);
+        }
+    }
+
+    @Test
+    public void testExternalSortCollectionWriterConcurrently() throws IOException, InterruptedException {
+        File termIndexFile = new File(directory, "term-index.dc");
+        File documentScoreFile = new File(directory, "term-scores.dc");
+        writeConcurrently(new ExternalSortCollectionWriter(termIndexFile, documentScoreFile, 64 * 1024), 8);
+        assertIndex(termIndexFile, documentScoreFile);
+    }
+}
@@ -0,0 +1,87 @@
+package com.dreamcloud.esa;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.dreamcloud.esa.tools.SemanticSimilarityTool;
+import com.dreamcloud.esa.vectorizer.ConceptAccumulator;
+import com.dreamcloud.esa.vectorizer.ConceptVector;
+import org.eclipse.collections.api.map.primitive.MutableObjectFloatMap;
+import org.eclipse.collections.impl.factory.primitive.ObjectFloatMaps;
+
+/**
+ * Compares SemanticSimilarityTool.findSemanticSimilarity against the old hash map dot product.
+ * The vectors are built up front, so only the comparisons are timed.
+ *
+ * Not a unit test: run the main method, e.g. with exec:java or from the IDE.
+ */
+public class ConceptVectorBenchmark {
+    private static final int NUM_DOCS = 1000000;
+    private static final int NUM_VECTORS = 100;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(42);
+        ConceptAccumulator accumulator = new ConceptAccumulator(NUM_DOCS);
+        Map<String, ConceptVector> vectors = new HashMap<>();
+        Map<String, MutableObjectFloatMap<Integer>> hashVectors = new HashMap<>();
+        for (int vectorIdx = 0; vectorIdx < NUM_VECTORS; vectorIdx++) {
+            //Mix short and long vectors, concentrated on the same popular concepts
+            int vectorSize = vectorIdx % 4 == 0 ? 500 : 20000;
+            MutableObjectFloatMap<Integer> hashVector = ObjectFloatMaps.mutable.empty();
+            for (int scoreIdx = 0; scoreIdx < vectorSize; scoreIdx++) {
+                int document = (int) (NUM_DOCS * Math.pow(random.nextDouble(), 3));
+                float score = random.nextFloat();
+                accumulator.addScore(document, score);
+                hashVector.addToValue(document, score);
+            }
+            vectors.put("text" + vectorIdx, accumulator.freeze(0));
+            hashVectors.put("text" + vectorIdx, hashVector);
+        }
+        SemanticSimilarityTool similarityTool = new SemanticSimilarityTool(vectors::get);
+
+        System.out.println("Comparing every pair of " + NUM_VECTORS + " vectors:");
+        System.out.println("----------------------------------------");
+        for (int round = 0; round < ROUNDS; round++) {
+            double checksum = 0;
+            long start = System.nanoTime();
+            for (int former = 0; former < NUM_VECTORS; former++) {
+                for (int latter = 0; latter < NUM_VECTORS; latter++) {
+                    checksum += hashDotProduct(hashVectors.get("text" + former), hashVectors.get("text" + latter));
+                }
+            }
+            long hashTime = System.nanoTime() - start;
+
+            double arrayChecksum = 0;
+            start = System.nanoTime();
+            for (int former = 0; former < NUM_VECTORS; former++) {
+                for (int latter = 0; latter < NUM_VECTORS; latter++) {
+                    arrayChecksum += similarityTool.findSemanticSimilarity("text" + former, "text" + latter);
+                }
+            }
+            long arrayTime = System.nanoTime() - start;
+            System.out.println("round " + round + ":\thash map " + hashTime / 1000000 + " ms\tsorted arrays " + arrayTime / 1000000 + " ms\t(checksums " + (float) checksum + " / " + (float) arrayChecksum + ")");
+        }
+        System.out.println("----------------------------------------");
+    }
+
+    //The dot product ConceptVector used when it was backed by a hash map
+    private static float hashDotProduct(MutableObjectFloatMap<Integer> ourScores, MutableObjectFloatMap<Integer> theirScores) {
+        float norm1 = 0;
+        float norm2 = 0;
+        float dotProduct = 0;
+        for (int documentId: ourScores.keySet()) {
+            float ourScore = ourScores.get(documentId);
+            if (theirScores.containsKey(documentId)) {
+                dotProduct += ourScore * theirScores.get(documentId);
+            }
+            norm1 += ourScore * ourScore;
+        }
+        for (int documentId: theirScores.keySet()) {
+            float theirScore = theirScores.get(documentId);
+            norm2 += theirScore * theirScore;
+        }
+        return (float) (dotProduct / (Math.sqrt(norm1) * Math.sqrt((norm2))));
+    }
+}
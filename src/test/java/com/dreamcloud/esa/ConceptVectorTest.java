@@ -0,0 +1,130 @@
+package com.dreamcloud.esa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.dreamcloud.esa.vectorizer.ConceptAccumulator;
+import com.dreamcloud.esa.vectorizer.ConceptVector;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ConceptVectorTest {
+    private Map<Integer, Float> accumulate(ConceptAccumulator accumulator, long seed) {
+        Map<Integer, Float> expected = new HashMap<>();
+        Random random = new Random(seed);
+        for (int scoreIdx = 0; scoreIdx < 20000; scoreIdx++) {
+            int document = random.nextInt(5000);
+            float score = random.nextFloat();
+            accumulator.addScore(document, score);
+            expected.put(document, expected.getOrDefault(document, 0f) + score);
+        }
+        return expected;
+    }
+
+    @Test
+    public void testFreeze() {
+        ConceptAccumulator accumulator = new ConceptAccumulator(1000);
+        Map<Integer, Float> expected = accumulate(accumulator, 1);
+        ConceptVector vector = accumulator.freeze(0);
+        assertEquals(expected.size(), vector.size());
+        for (int documentIdx = 0; documentIdx < vector.size(); documentIdx++) {
+            if (documentIdx > 0) {
+                assertTrue(vector.getDocuments()[documentIdx - 1] < vector.getDocuments()[documentIdx]);
+            }
+            assertEquals(expected.get(vector.getDocuments()[documentIdx]), vector.getScores()[documentIdx], 0);
+        }
+        assertEquals(0, accumulator.size());
+    }
+
+    @Test
+    public void testFreezeTopScores() {
+        ConceptAccumulator accumulator = new ConceptAccumulator(5000);
+        Map<Integer, Float> expected = accumulate(accumulator, 2);
+        ConceptVector vector = accumulator.freeze(100);
+        assertEquals(100, vector.size());
+
+        float[] sortedScores = new float[expected.size()];
+        int scoreIdx = 0;
+        for (float score: expected.values()) {
+            sortedScores[scoreIdx++] = score;
+        }
+        Arrays.sort(sortedScores);
+        float cutOff = sortedScores[sortedScores.length - 100];
+        for (int documentIdx = 0; documentIdx < vector.size(); documentIdx++) {
+            int document = vector.getDocuments()[documentIdx];
+            assertTrue(vector.getScores()[documentIdx] >= cutOff);
+            assertEquals(expected.get(document), vector.getScore(document), 0);
+        }
+
+        //The accumulator is clean for the next vector
+        Map<Integer, Float> next = accumulate(accumulator, 3);
+        ConceptVector nextVector = accumulator.freeze(0);
+        for (Map.Entry<Integer, Float> entry: next.entrySet()) {
+            assertEquals(entry.getValue(), nextVector.getScore(entry.getKey()), 0);
+        }
+    }
+
+    @Test
+    public void testDotProduct() {
+        ConceptVector vector = new ConceptVector(new int[]{1, 3, 5, 9}, new float[]{1, 2, 3, 4}, 4);
+        ConceptVector other = new ConceptVector(new int[]{0, 3, 9, 12}, new float[]{5, 1, 2, 7}, 4);
+        double expected = (2 * 1 + 4 * 2) / (Math.sqrt(1 + 4 + 9 + 16) * Math.sqrt(25 + 1 + 4 + 49));
+        assertEquals(expected, vector.dotProduct(other), 1e-6);
+        assertEquals(expected, other.dotProduct(vector), 1e-6);
+
+        vector.merge(other);
+        assertArrayEquals(new int[]{0, 1, 3, 5, 9, 12}, Arrays.copyOf(vector.getDocuments(), vector.size()));
+        assertEquals(3, vector.getScore(3), 0);
+        assertEquals(6, vector.getScore(9), 0);
+        assertEquals(0, vector.getScore(2), 0);
+    }
+
+    @Test
+    public void testDotProductOfSkewedVectors() {
+        //Different enough in size to take the galloping join
+        ConceptAccumulator accumulator = new ConceptAccumulator(100000);
+        Map<Integer, Float> small = new HashMap<>();
+        Map<Integer, Float> large = new HashMap<>();
+        Random random = new Random(4);
+        for (int scoreIdx = 0; scoreIdx < 50; scoreIdx++) {
+            small.put(random.nextInt(100000), random.nextFloat());
+        }
+        for (int scoreIdx = 0; scoreIdx < 20000; scoreIdx++) {
+            large.put(random.nextInt(100000), random.nextFloat());
+        }
+        //Make sure some documents overlap
+        for (int document: small.keySet().toArray(new Integer[0])) {
+            if (random.nextBoolean()) {
+                large.put(document, random.nextFloat());
+            }
+        }
+        small.forEach(accumulator::addScore);
+        ConceptVector smallVector = accumulator.freeze(0);
+        large.forEach(accumulator::addScore);
+        ConceptVector largeVector = accumulator.freeze(0);
+
+        double dotProduct = 0;
+        double smallNorm = 0;
+        double largeNorm = 0;
+        for (Map.Entry<Integer, Float> entry: small.entrySet()) {
+            dotProduct += entry.getValue() * large.getOrDefault(entry.getKey(), 0f);
+            smallNorm += entry.getValue() * entry.getValue();
+        }
+        for (float score: large.values()) {
+            largeNorm += score * score;
+        }
+        double expected = dotProduct / (Math.sqrt(smallNorm) * Math.sqrt(largeNorm));
+        assertTrue(expected > 0);
+        assertEquals(expected, smallVector.dotProduct(largeVector), 1e-6);
+        assertEquals(expected, largeVector.dotProduct(smallVector), 1e-6);
+    }
+
+    @Test
+    public void testSortedDocumentIds() {
+        ConceptVector vector = new ConceptVector(new int[]{2, 5, 7, 9, 12}, new float[]{0.5f, -1f, 2f, 0.5f, 0f}, 5);
+        assertArrayEquals(new int[]{7, 2, 9, 12, 5}, vector.getSortedDocumentIds());
+        assertEquals(0, new ConceptVector().getSortedDocumentIds().length);
+    }
+}
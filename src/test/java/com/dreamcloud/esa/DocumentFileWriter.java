@@ -0,0 +1,29 @@
+package com.dreamcloud.esa;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import com.dreamcloud.esa.annoatation.handler.XmlWritingHandler;
+
+/**
+ * Test fixture: writes documents, given as their fields, to an XML or (with setRecordOutput) record file like the annotators do.
+ */
+class DocumentFileWriter extends XmlWritingHandler {
+    protected void handleDocument(Map<String, String> xmlFields) {
+    }
+
+    void write(File file, List<Map<String, String>> documents) throws Exception {
+        this.open(file);
+        this.writeDocumentBegin("docs");
+        for (Map<String, String> document: documents) {
+            this.writeStartElement("doc");
+            for (Map.Entry<String, String> field: document.entrySet()) {
+                this.writeElement(field.getKey(), field.getValue());
+            }
+            this.writeEndElement();
+        }
+        this.writeDocumentEnd();
+        this.close();
+    }
+}
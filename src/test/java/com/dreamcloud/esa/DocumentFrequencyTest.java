@@ -0,0 +1,125 @@
+package com.dreamcloud.esa;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.dreamcloud.esa.annoatation.RareWordDictionary;
+import com.dreamcloud.esa.indexer.WikiIndexerOptions;
+import com.dreamcloud.esa.tfidf.*;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DocumentFrequencyTest {
+    private File xmlFile;
+    private File recordFile;
+
+    private static class MapCollectionWriter implements CollectionWriter {
+        CollectionInfo collectionInfo;
+        Map<Integer, Map<String, Double>> scores = new ConcurrentHashMap<>();
+
+        public void writeCollectionInfo(CollectionInfo collectionInfo) {
+            this.collectionInfo = collectionInfo;
+        }
+
+        public void writeDocumentScores(int documentId, TfIdfScore[] scores) {
+            Map<String, Double> documentScores = new HashMap<>();
+            for (TfIdfScore score: scores) {
+                documentScores.put(score.getTerm(), score.getScore());
+            }
+            this.scores.put(documentId, documentScores);
+        }
+
+        public void close() {
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        xmlFile = File.createTempFile("documents", ".xml");
+        recordFile = File.createTempFile("documents", ".records");
+        List<Map<String, String>> documents = new ArrayList<>();
+        Random random = new Random(42);
+        for (int documentIdx = 0; documentIdx < 2000; documentIdx++) {
+            StringBuilder text = new StringBuilder();
+            int words = random.nextInt(100);
+            for (int wordIdx = 0; wordIdx < words; wordIdx++) {
+                text.append("word").append(random.nextInt(1000)).append(' ');
+            }
+            Map<String, String> document = new LinkedHashMap<>();
+            document.put("title", "Document " + documentIdx);
+            document.put("text", text.toString());
+            document.put("incomingLinks", String.valueOf(random.nextInt(10)));
+            document.put("outgoingLinks", "1");
+            document.put("terms", String.valueOf(words));
+            documents.add(document);
+        }
+        new DocumentFileWriter().write(xmlFile, documents);
+        DocumentFileWriter recordWriter = new DocumentFileWriter();
+        recordWriter.setRecordOutput(true);
+        recordWriter.write(recordFile, documents);
+    }
+
+    @After
+    public void tearDown() {
+        xmlFile.delete();
+        recordFile.delete();
+    }
+
+    private RareWordDictionary count(File file, int threadCount) throws Exception {
+        RareWordDictionary dictionary = new RareWordDictionary(new StandardAnalyzer(), 0);
+        dictionary.setThreadCount(threadCount);
+        dictionary.parse(file);
+        return dictionary;
+    }
+
+    @Test
+    public void testParallelCounts() throws Exception {
+        RareWordDictionary expected = count(xmlFile, 1);
+        assertEquals(2000, expected.getDocsRead());
+        assertTrue(expected.getDocumentFrequencies().size() > 900);
+        for (File file: new File[]{xmlFile, recordFile}) {
+            RareWordDictionary dictionary = count(file, 3);
+            assertEquals(expected.getDocsRead(), dictionary.getDocsRead());
+            assertEquals(expected.getAverageDocumentLength(), dictionary.getAverageDocumentLength(), 0.0);
+            assertEquals(expected.getDocumentFrequencies(), dictionary.getDocumentFrequencies());
+        }
+    }
+
+    @Test
+    public void testSinglePass() throws Exception {
+        WikiIndexerOptions options = new WikiIndexerOptions();
+        options.analyzerFactory = StandardAnalyzer::new;
+        options.tfIdfMode = "ltc";
+        options.threadCount = 3;
+        options.batchSize = 10;
+        //Some documents are counted but not indexed
+        options.minimumIncomingLinks = 3;
+
+        RareWordDictionary dictionary = count(xmlFile, 1);
+        CollectionInfo collectionInfo = new CollectionInfo(dictionary.getDocsRead(), dictionary.getAverageDocumentLength(), dictionary.getDocumentFrequencies());
+        MapCollectionWriter twoPass = new MapCollectionWriter();
+        new TfIdfWriter(xmlFile, twoPass, collectionInfo, options).index();
+
+        MapCollectionWriter singlePass = new MapCollectionWriter();
+        new TfIdfWriter(xmlFile, singlePass, options).index();
+
+        assertEquals(collectionInfo.getDocumentCount(), singlePass.collectionInfo.getDocumentCount());
+        assertEquals(collectionInfo.getAverageDocumentLength(), singlePass.collectionInfo.getAverageDocumentLength(), 0.0);
+        assertEquals(collectionInfo.getDocumentFrequencies(), singlePass.collectionInfo.getDocumentFrequencies());
+        assertTrue(twoPass.scores.size() < 2000);
+        assertEquals(twoPass.scores.keySet(), singlePass.scores.keySet());
+        for (Integer document: twoPass.scores.keySet()) {
+            Map<String, Double> expected = twoPass.scores.get(document);
+            Map<String, Double> actual = singlePass.scores.get(document);
+            assertEquals(expected.keySet(), actual.keySet());
+            for (String term: expected.keySet()) {
+                assertEquals(expected.get(term), actual.get(term), 1e-9);
+            }
+        }
+    }
+}
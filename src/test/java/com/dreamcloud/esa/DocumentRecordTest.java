@@ -0,0 +1,105 @@
+package com.dreamcloud.esa;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import com.dreamcloud.esa.annoatation.handler.DocumentRecordReader;
+import com.dreamcloud.esa.annoatation.handler.DocumentRecordWriter;
+import com.dreamcloud.esa.annoatation.handler.XmlReadingHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DocumentRecordTest {
+    private File xmlFile;
+    private File recordFile;
+    private List<Map<String, String>> documents = new ArrayList<>();
+
+    private static class CollectingHandler extends XmlReadingHandler {
+        List<Map<String, String>> documents = new ArrayList<>();
+
+        protected void handleDocument(Map<String, String> xmlFields) {
+            documents.add(new HashMap<>(xmlFields));
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        xmlFile = File.createTempFile("documents", ".xml.bz2");
+        recordFile = File.createTempFile("documents", ".records");
+        Random random = new Random(42);
+        for (int documentIdx = 0; documentIdx < 3000; documentIdx++) {
+            Map<String, String> document = new HashMap<>();
+            document.put("title", "Dökument " + documentIdx);
+            StringBuilder text = new StringBuilder();
+            int words = random.nextInt(200);
+            for (int wordIdx = 0; wordIdx < words; wordIdx++) {
+                text.append("word").append(random.nextInt(5000)).append(wordIdx % 17 == 0 ? " <ref>&amp; 😀</ref> " : " ");
+            }
+            document.put("text", text.toString());
+            document.put("incomingLinks", String.valueOf(random.nextInt(100)));
+            document.put("outgoingLinks", String.valueOf(random.nextInt(100)));
+            document.put("terms", String.valueOf(words));
+            documents.add(document);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        xmlFile.delete();
+        recordFile.delete();
+    }
+
+    @Test
+    public void testRecordsMatchXml() throws Exception {
+        new DocumentFileWriter().write(xmlFile, documents);
+        DocumentFileWriter recordWriter = new DocumentFileWriter();
+        recordWriter.setRecordOutput(true);
+        recordWriter.write(recordFile, documents);
+        assertTrue(DocumentRecordReader.isRecordFile(recordFile));
+        assertFalse(DocumentRecordReader.isRecordFile(xmlFile));
+        assertTrue(recordFile.length() < xmlFile.length() * 2);
+
+        CollectingHandler xmlHandler = new CollectingHandler();
+        xmlHandler.parse(xmlFile);
+        CollectingHandler recordHandler = new CollectingHandler();
+        recordHandler.parse(recordFile);
+        assertEquals(documents, xmlHandler.documents);
+        assertEquals(documents, recordHandler.documents);
+        assertEquals(documents.size(), recordHandler.getDocsRead());
+    }
+
+    @Test
+    public void testSplits() throws Exception {
+        for (boolean writeIndex: new boolean[]{true, false}) {
+            try (DocumentRecordWriter writer = new DocumentRecordWriter(recordFile, writeIndex)) {
+                for (Map<String, String> document: documents) {
+                    writer.startRecord();
+                    for (Map.Entry<String, String> field: document.entrySet()) {
+                        writer.writeField(field.getKey(), field.getValue());
+                    }
+                    writer.endRecord();
+                }
+            }
+
+            try (DocumentRecordReader reader = new DocumentRecordReader(recordFile)) {
+                assertEquals(documents.size(), reader.getRecordCount());
+                assertTrue(reader.getBlockCount() > 1);
+                int[] splits = reader.getSplits(3);
+                assertEquals(4, splits.length);
+                List<Map<String, String>> read = new ArrayList<>();
+                for (int splitIdx = 0; splitIdx < splits.length - 1; splitIdx++) {
+                    assertEquals(read.size(), reader.getFirstRecord(splits[splitIdx]));
+                    reader.read(splits[splitIdx], splits[splitIdx + 1], read::add);
+                }
+                assertEquals(documents, read);
+
+                List<Map<String, String>> readInParallel = new ArrayList<>();
+                reader.read(readInParallel::add, 3);
+                assertEquals(documents, readInParallel);
+            }
+        }
+    }
+}
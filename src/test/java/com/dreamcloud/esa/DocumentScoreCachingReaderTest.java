@@ -0,0 +1,105 @@
+package com.dreamcloud.esa;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.dreamcloud.esa.tfidf.DocumentScoreCachingReader;
+import com.dreamcloud.esa.tfidf.DocumentScoreReader;
+import com.dreamcloud.esa.tfidf.PostingList;
+import com.dreamcloud.esa.tfidf.TfIdfScore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DocumentScoreCachingReaderTest {
+    //Every term "termN" has N postings
+    private static class CountingReader implements DocumentScoreReader {
+        Map<String, AtomicInteger> reads = new HashMap<>();
+
+        public int getDocumentFrequency(String term) {
+            return Integer.parseInt(term.substring(4));
+        }
+
+        public void getTfIdfScores(String term, Vector<TfIdfScore> outVector) {
+            PostingList postings = new PostingList();
+            getPostings(term, postings);
+            for (int scoreIdx = 0; scoreIdx < postings.size; scoreIdx++) {
+                outVector.add(new TfIdfScore(postings.documents[scoreIdx], term, postings.scores[scoreIdx]));
+            }
+        }
+
+        public void getTfIdfScores(String[] terms, Vector<TfIdfScore> outVector) {
+            for (String term: terms) {
+                getTfIdfScores(term, outVector);
+            }
+        }
+
+        public void getPostings(String term, PostingList outPostings) {
+            reads.computeIfAbsent(term, k -> new AtomicInteger()).incrementAndGet();
+            outPostings.clear();
+            for (int document = 0; document < getDocumentFrequency(term); document++) {
+                outPostings.add(document, 1.0f / (document + 1));
+            }
+        }
+    }
+
+    @Test
+    public void testCachedPostings() throws IOException {
+        CountingReader reader = new CountingReader();
+        DocumentScoreCachingReader cachingReader = new DocumentScoreCachingReader(reader, 1000);
+        PostingList postings = new PostingList();
+        for (int readIdx = 0; readIdx < 3; readIdx++) {
+            cachingReader.getPostings("term100", postings);
+            assertEquals(100, postings.size);
+            assertEquals(0.5f, postings.scores[1], 0);
+        }
+        assertEquals(1, reader.reads.get("term100").get());
+        assertEquals(2, cachingReader.getHits());
+        assertEquals(1, cachingReader.getMisses());
+
+        //Scores read through the cache are the ones the reader has
+        Vector<TfIdfScore> expected = new Vector<>();
+        reader.getTfIdfScores(new String[]{"term100", "term3"}, expected);
+        Vector<TfIdfScore> scores = new Vector<>();
+        cachingReader.getTfIdfScores(new String[]{"term100", "term3"}, scores);
+        assertEquals(103, scores.size());
+        for (int scoreIdx = 0; scoreIdx < scores.size(); scoreIdx++) {
+            assertEquals(expected.get(scoreIdx).getTerm(), scores.get(scoreIdx).getTerm());
+            assertEquals(expected.get(scoreIdx).getDocument(), scores.get(scoreIdx).getDocument());
+            assertEquals(expected.get(scoreIdx).getScore(), scores.get(scoreIdx).getScore(), 0);
+        }
+        assertEquals(3, cachingReader.getHits());
+    }
+
+    @Test
+    public void testCapacityInPostings() throws IOException {
+        CountingReader reader = new CountingReader();
+        DocumentScoreCachingReader cachingReader = new DocumentScoreCachingReader(reader, 1000);
+        PostingList postings = new PostingList();
+        //Popular terms fill the cache
+        for (int readIdx = 0; readIdx < 5; readIdx++) {
+            for (int termIdx = 1; termIdx <= 4; termIdx++) {
+                cachingReader.getPostings("term" + termIdx * 100, postings);
+            }
+        }
+        assertEquals(1000, cachingReader.getCachedPostings());
+
+        //A scan of rare terms neither overflows the cache nor pushes the popular terms out
+        for (int termIdx = 1; termIdx <= 500; termIdx++) {
+            cachingReader.getPostings("term" + termIdx, postings);
+            assertTrue(cachingReader.getCachedPostings() <= 1000);
+        }
+        for (int termIdx = 1; termIdx <= 4; termIdx++) {
+            cachingReader.getPostings("term" + termIdx * 100, postings);
+            assertEquals(1, reader.reads.get("term" + termIdx * 100).get());
+        }
+
+        //Too big to ever be cached
+        cachingReader.getPostings("term5000", postings);
+        cachingReader.getPostings("term5000", postings);
+        assertEquals(5000, postings.size);
+        assertEquals(2, reader.reads.get("term5000").get());
+    }
+}
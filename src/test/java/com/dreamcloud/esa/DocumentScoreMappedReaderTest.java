@@ -0,0 +1,81 @@
+package com.dreamcloud.esa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import com.dreamcloud.esa.fs.DocumentScoreMappedReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DocumentScoreMappedReaderTest {
+    private File scoreFile;
+
+    @Before
+    public void setUp() throws IOException {
+        scoreFile = Files.createTempFile("mapped-reader-test", ".dc").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        scoreFile.delete();
+    }
+
+    private byte[] writeBytes(int length) throws IOException {
+        byte[] data = new byte[length];
+        for (int byteIdx = 0; byteIdx < length; byteIdx++) {
+            data[byteIdx] = (byte) (byteIdx * 31);
+        }
+        Files.write(scoreFile.toPath(), data);
+        return data;
+    }
+
+    private static void assertRead(byte[] data, DocumentScoreMappedReader reader, int offset, int length) throws IOException {
+        ByteBuffer bytes = reader.readBytes(offset, length);
+        assertEquals(length, bytes.remaining());
+        for (int byteIdx = 0; byteIdx < length; byteIdx++) {
+            assertEquals(data[offset + byteIdx], bytes.get());
+        }
+    }
+
+    @Test
+    public void testReadsAcrossSegments() throws IOException {
+        byte[] data = writeBytes(100);
+        //16 byte segments, so reads can start, end and span anywhere
+        DocumentScoreMappedReader reader = new DocumentScoreMappedReader(scoreFile, 16);
+        assertRead(data, reader, 0, 16);
+        assertRead(data, reader, 18, 8);
+        //Straddles one boundary, then several
+        assertRead(data, reader, 12, 8);
+        assertRead(data, reader, 5, 70);
+        //The last, partial segment
+        assertRead(data, reader, 90, 10);
+        assertRead(data, reader, 0, 100);
+        assertEquals(0, reader.readBytes(96, 0).remaining());
+        assertEquals(0, reader.readBytes(100, 0).remaining());
+
+        IOException failure = null;
+        try {
+            reader.readBytes(95, 8);
+        } catch (IOException e) {
+            failure = e;
+        }
+        assertNotNull(failure);
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        writeBytes(0);
+        IOException failure = null;
+        try {
+            new DocumentScoreMappedReader(scoreFile, 16);
+        } catch (IOException e) {
+            failure = e;
+        }
+        assertNotNull(failure);
+        assertTrue(failure.getMessage().contains("empty"));
+    }
+}
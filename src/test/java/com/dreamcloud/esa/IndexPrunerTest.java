@@ -0,0 +1,154 @@
+package com.dreamcloud.esa;
+
+import java.io.IOException;
+import java.util.*;
+
+import com.dreamcloud.esa.fs.TermIdDictionary;
+import com.dreamcloud.esa.fs.TermIndex;
+import com.dreamcloud.esa.indexer.IndexPruner;
+import com.dreamcloud.esa.tfidf.*;
+import com.dreamcloud.esa.vectorizer.ConceptVector;
+import com.dreamcloud.esa.vectorizer.PruneOptions;
+import com.dreamcloud.esa.vectorizer.VectorBuilder;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IndexPrunerTest {
+    private static final int NUM_DOCS = 1000;
+    private static final int NUM_TERMS = 30;
+
+    private TermIndexFixture fixture;
+    private List<String> texts;
+    private PruneOptions pruneOptions = new PruneOptions();
+
+    @Before
+    public void setUp() throws IOException {
+        //Some ties, which pruning has to cut the same way every time
+        fixture = new TermIndexFixture("index-pruner-test", NUM_DOCS, NUM_TERMS, random -> random.nextInt(5) == 0 ? 0.5 : Math.pow(random.nextDouble(), 3));
+        fixture.addTexts(50, NUM_TERMS);
+        texts = fixture.texts;
+        pruneOptions.windowSize = 20;
+        pruneOptions.dropOff = 0.1f;
+    }
+
+    @After
+    public void tearDown() {
+        fixture.delete();
+    }
+
+    private List<ConceptVector> buildVectors(ScoreReader scoreReader, PruneOptions pruneOptions) throws Exception {
+        //Document frequencies are the same in every index
+        TermIndex termIndex = fixture.readIndex("full");
+        CollectionInfo collectionInfo = new CollectionInfo(termIndex.getDocumentCount(), termIndex.getAverageDocumentLength(), termIndex.getDocumentFrequencies());
+        TfIdfAnalyzer analyzer = new TfIdfAnalyzer(new BM25Calculator(new TfIdfCalculator("ltc")), new StandardAnalyzer(), collectionInfo);
+        VectorBuilder builder = new VectorBuilder(scoreReader, collectionInfo, analyzer, null, pruneOptions);
+        List<ConceptVector> vectors = new ArrayList<>();
+        for (String text: texts) {
+            vectors.add(builder.build(text));
+        }
+        return vectors;
+    }
+
+    private void assertPruned(ScoreReader fullReader, String name) throws Exception {
+        ScoreReader prunedReader = fixture.getScoreReader(name);
+        TermIdDictionary fullTermIds = fullReader.getTermIds();
+        TermIdDictionary prunedTermIds = prunedReader.getTermIds();
+        assertEquals(fullTermIds.size(), prunedTermIds.size());
+        int prunedTerms = 0;
+        PostingList fullPostings = new PostingList();
+        PostingList prunedPostings = new PostingList();
+        for (int termId = 0; termId < fullTermIds.size(); termId++) {
+            String term = fullTermIds.getTerm(termId);
+            assertEquals(term, prunedTermIds.getTerm(termId));
+            //Document frequencies (and so idf) don't change
+            assertEquals(fullTermIds.getDocumentFrequency(termId), prunedTermIds.getDocumentFrequency(termId));
+
+            fullReader.getPostings(termId, fullPostings);
+            prunedReader.getPostings(termId, prunedPostings);
+            int limit = pruneOptions.getPruneLimit(fullPostings.scores, fullPostings.size);
+            assertEquals(term, limit, prunedPostings.size);
+            assertArrayEquals(Arrays.copyOf(fullPostings.documents, limit), Arrays.copyOf(prunedPostings.documents, prunedPostings.size));
+            assertArrayEquals(Arrays.copyOf(fullPostings.scores, limit), Arrays.copyOf(prunedPostings.scores, prunedPostings.size), 0);
+            if (limit < fullPostings.size) {
+                prunedTerms++;
+            }
+        }
+        assertTrue(prunedTerms > 0);
+        assertTrue(fixture.getDocumentScoreFile(name).length() < fixture.getDocumentScoreFile("full").length());
+
+        //Vectors from the pruned index are the same as pruning the full index per query
+        List<ConceptVector> expected = buildVectors(fullReader, pruneOptions);
+        List<ConceptVector> vectors = buildVectors(prunedReader, null);
+        for (int textIdx = 0; textIdx < texts.size(); textIdx++) {
+            ConceptVector expectedVector = expected.get(textIdx);
+            ConceptVector vector = vectors.get(textIdx);
+            assertEquals(expectedVector.size(), vector.size());
+            assertArrayEquals(Arrays.copyOf(expectedVector.getDocuments(), expectedVector.size()), Arrays.copyOf(vector.getDocuments(), vector.size()));
+            assertArrayEquals(Arrays.copyOf(expectedVector.getScores(), expectedVector.size()), Arrays.copyOf(vector.getScores(), vector.size()), 0);
+        }
+    }
+
+    @Test
+    public void testPruneWhileWriting() throws Exception {
+        DiskCollectionWriter fullWriter = new DiskCollectionWriter(fixture.getTermIndexFile("full"), fixture.getDocumentScoreFile("full"));
+        fixture.write(fullWriter);
+        ScoreReader fullReader = fixture.getScoreReader("full");
+
+        fixture.write(new DiskCollectionWriter(fixture.getTermIndexFile("disk"), fixture.getDocumentScoreFile("disk"), pruneOptions));
+        assertPruned(fullReader, "disk");
+
+        ExternalSortCollectionWriter externalWriter = new ExternalSortCollectionWriter(fixture.getTermIndexFile("external"), fixture.getDocumentScoreFile("external"), 16 * 1024);
+        externalWriter.setPruneOptions(pruneOptions);
+        fixture.write(externalWriter);
+        assertPruned(fullReader, "external");
+    }
+
+    @Test
+    public void testPruneExistingIndex() throws Exception {
+        DiskCollectionWriter fullWriter = new DiskCollectionWriter(fixture.getTermIndexFile("full"), fixture.getDocumentScoreFile("full"));
+        fullWriter.setIdfModes("t");
+        fixture.write(fullWriter);
+        TermIndex fullIndex = fixture.readIndex("full");
+        ScoreReader fullReader = fixture.getScoreReader("full");
+
+        IndexPruner pruner = new IndexPruner(pruneOptions);
+        pruner.prune(fullIndex, fullReader, fixture.getTermIndexFile("pruned"), fixture.getDocumentScoreFile("pruned"));
+        assertTrue(pruner.getPostingsWritten() < pruner.getPostingsRead());
+        assertPruned(fullReader, "pruned");
+        assertArrayEquals(fullIndex.getIdfTables().get('t'), fixture.readIndex("pruned").getIdfTables().get('t'), 0);
+
+        //Pruning with the same options again doesn't change anything
+        IndexPruner repruner = new IndexPruner(pruneOptions);
+        repruner.prune(fixture.readIndex("pruned"), fixture.getScoreReader("pruned"), fixture.getTermIndexFile("repruned"), fixture.getDocumentScoreFile("repruned"));
+        assertEquals(pruner.getPostingsWritten(), repruner.getPostingsRead());
+        assertEquals(repruner.getPostingsRead(), repruner.getPostingsWritten());
+    }
+
+    @Test
+    public void testPruneInPlace() throws Exception {
+        fixture.write(new DiskCollectionWriter(fixture.getTermIndexFile("full"), fixture.getDocumentScoreFile("full")));
+        ScoreReader fullReader = fixture.getScoreReader("full");
+        fixture.write(new DiskCollectionWriter(fixture.getTermIndexFile("inplace"), fixture.getDocumentScoreFile("inplace")));
+
+        IndexPruner pruner = new IndexPruner(pruneOptions);
+        pruner.pruneInPlace(fixture.readIndex("inplace"), fixture.getScoreReader("inplace"), fixture.getTermIndexFile("inplace"), fixture.getDocumentScoreFile("inplace"));
+        assertPruned(fullReader, "inplace");
+        //Nothing is left behind
+        assertEquals(4, fixture.directory.listFiles().length);
+
+        //Without a window nothing would be pruned, so the index is left alone
+        PruneOptions noWindow = new PruneOptions();
+        noWindow.dropOff = 0.1f;
+        IllegalArgumentException failure = null;
+        try {
+            new IndexPruner(noWindow).pruneInPlace(fixture.readIndex("full"), fullReader, fixture.getTermIndexFile("full"), fixture.getDocumentScoreFile("full"));
+        } catch (IllegalArgumentException e) {
+            failure = e;
+        }
+        assertNotNull(failure);
+        assertEquals(4, fixture.directory.listFiles().length);
+    }
+}
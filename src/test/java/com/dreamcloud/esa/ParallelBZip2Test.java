@@ -0,0 +1,154 @@
+package com.dreamcloud.esa;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import com.dreamcloud.esa.tools.BZipFileReader;
+import com.dreamcloud.esa.tools.ParallelBZip2InputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ParallelBZip2Test {
+    private File directory;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("parallel-bzip2-test").toFile();
+        //Enough text for a dozen 100k blocks, compressible enough to need the bit level scan
+        Random random = new Random(42);
+        String[] words = {"anarchism", "political", "philosophy", "über", "the", "of", "and", "😀", "\n"};
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 1200000) {
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(1000)).append(' ');
+        }
+        data = text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file: directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private File compress(String name, int blockSize, int streams) throws IOException {
+        File file = new File(directory, name);
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            int streamLength = data.length / streams;
+            for (int streamIdx = 0; streamIdx < streams; streamIdx++) {
+                int end = streamIdx == streams - 1 ? data.length : (streamIdx + 1) * streamLength;
+                BZip2CompressorOutputStream bzipStream = new BZip2CompressorOutputStream(new FilterOutputStream(outputStream) {
+                    public void close() {
+                    }
+                }, blockSize);
+                bzipStream.write(data, streamIdx * streamLength, end - streamIdx * streamLength);
+                bzipStream.close();
+            }
+        }
+        return file;
+    }
+
+    private byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8191];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        inputStream.close();
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void testBlocks() throws IOException {
+        File file = compress("single.xml.bz2", 1, 1);
+        assertArrayEquals(data, readAll(new ParallelBZip2InputStream(file, 1)));
+        assertArrayEquals(data, readAll(new ParallelBZip2InputStream(file, 4)));
+    }
+
+    @Test
+    public void testFalseMagic() throws IOException {
+        File file = compress("false-magic.xml.bz2", 1, 2);
+        //Split every block in two as if a magic number had turned up in the middle of it
+        InputStream inputStream = new ParallelBZip2InputStream(file, 2) {
+            private long[] secondHalf;
+
+            protected long[] scanBlock() throws IOException {
+                if (secondHalf != null) {
+                    long[] block = secondHalf;
+                    secondHalf = null;
+                    return block;
+                }
+                long[] block = super.scanBlock();
+                if (block != null) {
+                    long middle = (block[0] + block[1]) / 2;
+                    secondHalf = new long[]{middle, block[1]};
+                    block = new long[]{block[0], middle};
+                }
+                return block;
+            }
+        };
+        assertArrayEquals(data, readAll(inputStream));
+    }
+
+    @Test
+    public void testFalseEndOfStreamMagic() throws IOException {
+        File file = compress("false-end-of-stream.xml.bz2", 1, 2);
+        //Report an end of stream magic number in the middle of every block, before the real magic number that ends it
+        InputStream inputStream = new ParallelBZip2InputStream(file, 2) {
+            private long lastBlock = -1;
+
+            protected void foundMagic(long magic, long magicStart) {
+                if (lastBlock >= 0) {
+                    super.foundMagic(END_OF_STREAM_MAGIC, (lastBlock + magicStart) / 2);
+                }
+                lastBlock = magic == BLOCK_MAGIC ? magicStart : -1;
+                super.foundMagic(magic, magicStart);
+            }
+        };
+        assertArrayEquals(data, readAll(inputStream));
+    }
+
+    @Test
+    public void testMultistream() throws IOException {
+        File file = compress("multi.xml.bz2", 1, 7);
+        assertArrayEquals(data, readAll(new ParallelBZip2InputStream(file, 3)));
+    }
+
+    @Test
+    public void testMultistreamIndex() throws IOException {
+        File file = compress("dump-multistream.xml.bz2", 9, 5);
+        //Find where each stream starts, as Wikipedia's index would list them
+        byte[] compressed = Files.readAllBytes(file.toPath());
+        StringBuilder index = new StringBuilder();
+        for (int byteIdx = 1; byteIdx < compressed.length - 3; byteIdx++) {
+            if (compressed[byteIdx] == 'B' && compressed[byteIdx + 1] == 'Z' && compressed[byteIdx + 2] == 'h' && compressed[byteIdx + 3] == '9'
+                    && compressed[byteIdx + 4] == 0x31 && compressed[byteIdx + 5] == 0x41) {
+                index.append(byteIdx).append(":1:Page\n").append(byteIdx).append(":2:Other page\n");
+            }
+        }
+        File indexFile = BZipFileReader.getMultistreamIndex(file);
+        assertEquals("dump-multistream-index.txt.bz2", indexFile.getName());
+        try (OutputStream outputStream = new BZip2CompressorOutputStream(new FileOutputStream(indexFile))) {
+            outputStream.write(index.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        long[] offsets = ParallelBZip2InputStream.readStreamOffsets(indexFile);
+        assertEquals(5, offsets.length);
+        assertArrayEquals(data, readAll(new ParallelBZip2InputStream(file, offsets, 2)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        File file = compress("truncated.xml.bz2", 1, 1);
+        byte[] compressed = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), java.util.Arrays.copyOf(compressed, compressed.length / 2));
+        readAll(new ParallelBZip2InputStream(file, 2));
+    }
+}
@@ -0,0 +1,84 @@
+package com.dreamcloud.esa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import com.dreamcloud.esa.fs.DocumentScoreMappedReader;
+import com.dreamcloud.esa.fs.TermIndex;
+import com.dreamcloud.esa.fs.TermIndexReader;
+import com.dreamcloud.esa.tfidf.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PinnedScoreReaderTest {
+    private File directory;
+    private TermIndex termIndex;
+    private ScoreReader scoreReader;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("pinned-score-reader-test").toFile();
+        File termIndexFile = new File(directory, "term-index.dc");
+        File documentScoreFile = new File(directory, "term-scores.dc");
+        //"termN" appears in every Nth document, so low numbered terms are the heaviest
+        DiskCollectionWriter writer = new DiskCollectionWriter(termIndexFile, documentScoreFile);
+        writer.writeCollectionInfo(new CollectionInfo(1000, 10));
+        for (int documentId = 0; documentId < 1000; documentId++) {
+            TfIdfScore[] scores = new TfIdfScore[20];
+            int termCount = 0;
+            for (int termIdx = 1; termIdx <= 20; termIdx++) {
+                if (documentId % termIdx == 0) {
+                    scores[termCount++] = new TfIdfScore(documentId, "term" + termIdx, (documentId % 7 + 1) / (double) termIdx);
+                }
+            }
+            writer.writeDocumentScores(documentId, Arrays.copyOf(scores, termCount));
+        }
+        writer.close();
+
+        TermIndexReader termIndexReader = new TermIndexReader();
+        termIndexReader.open(termIndexFile);
+        termIndex = termIndexReader.readIndex();
+        termIndexReader.close();
+        scoreReader = new ScoreReader(termIndex, new DocumentScoreMappedReader(documentScoreFile));
+    }
+
+    @After
+    public void tearDown() {
+        for (File file: directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testPinnedPostings() throws IOException {
+        List<String> heaviestTerms = PinnedScoreReader.getHeaviestTerms(termIndex, 3);
+        assertEquals(new HashSet<>(Arrays.asList("term1", "term2", "term3")), new HashSet<>(heaviestTerms));
+
+        PinnedScoreReader pinnedScoreReader = new PinnedScoreReader(scoreReader, scoreReader, heaviestTerms);
+        assertEquals(3, pinnedScoreReader.getPinnedTermCount());
+        assertEquals(1000 + 500 + 334, pinnedScoreReader.getPinnedPostings());
+
+        PostingList expected = new PostingList();
+        PostingList actual = new PostingList();
+        for (int termIdx = 1; termIdx <= 20; termIdx++) {
+            scoreReader.getPostings("term" + termIdx, expected);
+            pinnedScoreReader.getPostings("term" + termIdx, actual);
+            assertEquals(expected.size, actual.size);
+            assertArrayEquals(Arrays.copyOf(expected.documents, expected.size), Arrays.copyOf(actual.documents, actual.size));
+            assertArrayEquals(Arrays.copyOf(expected.scores, expected.size), Arrays.copyOf(actual.scores, actual.size), 0);
+
+            int termId = scoreReader.getTermIds().getId("term" + termIdx);
+            pinnedScoreReader.getPostings(termId, actual);
+            assertEquals(expected.size, actual.size);
+            assertArrayEquals(Arrays.copyOf(expected.documents, expected.size), Arrays.copyOf(actual.documents, actual.size));
+            assertArrayEquals(Arrays.copyOf(expected.scores, expected.size), Arrays.copyOf(actual.scores, actual.size), 0);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.dreamcloud.esa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.dreamcloud.esa.fs.PostingCodec;
+import com.dreamcloud.esa.fs.QuantizedPostingCodec;
+import com.dreamcloud.esa.fs.RawPostingCodec;
+
+/**
+ * Compares the size of term-scores.dc and the encode and decode speed of the posting codecs,
+ * over generated score sorted lists with Zipf distributed lengths and a few high scores and a long tail like tf-idf.
+ * Also reports how far the quantized scores are from the original ones.
+ *
+ * Not a unit test: run the main method, e.g. with exec:java or from the IDE.
+ */
+public class PostingCodecBenchmark {
+    private static final int NUM_DOCS = 1000000;
+    private static final int NUM_TERMS = 20000;
+    private static final int MAX_LIST_SIZE = 200000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(42);
+        List<int[]> documentLists = new ArrayList<>();
+        List<float[]> scoreLists = new ArrayList<>();
+        long postings = 0;
+        for (int termIdx = 0; termIdx < NUM_TERMS; termIdx++) {
+            int size = Math.max(1, (int) Math.pow(MAX_LIST_SIZE, random.nextDouble() * random.nextDouble()));
+            int[] documents = new int[size];
+            float[] scores = new float[size];
+            for (int postingIdx = 0; postingIdx < size; postingIdx++) {
+                documents[postingIdx] = random.nextInt(NUM_DOCS);
+                scores[postingIdx] = (float) Math.pow(random.nextDouble(), 4);
+            }
+            //Score sorted, like the writers store them
+            Arrays.sort(scores);
+            for (int postingIdx = 0; postingIdx < size / 2; postingIdx++) {
+                float score = scores[postingIdx];
+                scores[postingIdx] = scores[size - 1 - postingIdx];
+                scores[size - 1 - postingIdx] = score;
+            }
+            documentLists.add(documents);
+            scoreLists.add(scores);
+            postings += size;
+        }
+        System.out.println(NUM_TERMS + " terms, " + postings + " postings");
+        System.out.println("----------------------------------------");
+
+        int[] decodedDocuments = new int[MAX_LIST_SIZE];
+        float[] decodedScores = new float[MAX_LIST_SIZE];
+        for (PostingCodec codec: new PostingCodec[]{new RawPostingCodec(), new QuantizedPostingCodec()}) {
+            List<ByteBuffer> encoded = new ArrayList<>();
+            long bytes = 0;
+            long encodeTime = Long.MAX_VALUE;
+            long decodeTime = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                encoded.clear();
+                bytes = 0;
+                long start = System.nanoTime();
+                for (int termIdx = 0; termIdx < NUM_TERMS; termIdx++) {
+                    ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+                    DataOutputStream outputStream = new DataOutputStream(byteStream);
+                    bytes += codec.encode(documentLists.get(termIdx), scoreLists.get(termIdx), documentLists.get(termIdx).length, outputStream);
+                    outputStream.flush();
+                    encoded.add(ByteBuffer.wrap(byteStream.toByteArray()));
+                }
+                encodeTime = Math.min(encodeTime, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int termIdx = 0; termIdx < NUM_TERMS; termIdx++) {
+                    codec.decode(encoded.get(termIdx).duplicate(), documentLists.get(termIdx).length, decodedDocuments, decodedScores);
+                }
+                decodeTime = Math.min(decodeTime, System.nanoTime() - start);
+            }
+
+            //How far the decoded scores are from the ones written
+            double errorSum = 0;
+            double maxError = 0;
+            for (int termIdx = 0; termIdx < NUM_TERMS; termIdx++) {
+                float[] scores = scoreLists.get(termIdx);
+                codec.decode(encoded.get(termIdx).duplicate(), scores.length, decodedDocuments, decodedScores);
+                //Documents may be reordered within a level, but the scores keep their order
+                for (int postingIdx = 0; postingIdx < scores.length; postingIdx++) {
+                    if (scores[postingIdx] > 0) {
+                        double error = Math.abs(decodedScores[postingIdx] - scores[postingIdx]) / scores[postingIdx];
+                        errorSum += error;
+                        maxError = Math.max(maxError, error);
+                    }
+                }
+            }
+
+            System.out.println(codec.getName() + ":");
+            System.out.println("size:\t\t" + (bytes / 1024 / 1024) + "MB\t(" + String.format("%.2f", (double) bytes / postings) + " bytes/posting)");
+            System.out.println("encode:\t\t" + String.format("%.2f", (double) encodeTime / postings) + "ns/posting\t(best of " + ROUNDS + ")");
+            System.out.println("decode:\t\t" + String.format("%.2f", (double) decodeTime / postings) + "ns/posting\t(best of " + ROUNDS + ")");
+            System.out.println("score error:\t" + String.format("%.4f", errorSum / postings) + " mean, " + String.format("%.4f", maxError) + " max (relative)");
+            System.out.println("----------------------------------------");
+        }
+    }
+}
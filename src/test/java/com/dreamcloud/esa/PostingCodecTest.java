@@ -0,0 +1,86 @@
+package com.dreamcloud.esa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.dreamcloud.esa.fs.PostingCodec;
+import com.dreamcloud.esa.fs.QuantizedPostingCodec;
+import com.dreamcloud.esa.fs.RawPostingCodec;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PostingCodecTest {
+    private static final int NUM_SCORES = 10000;
+
+    private int[] documents = new int[NUM_SCORES];
+    private float[] scores = new float[NUM_SCORES];
+
+    public PostingCodecTest() {
+        //Score sorted postings, like DiskCollectionWriter writes them
+        Random random = new Random(42);
+        for (int i = 0; i < NUM_SCORES; i++) {
+            documents[i] = i * 500 + random.nextInt(500);
+            scores[i] = 0.01f + random.nextFloat() * 0.3f;
+        }
+        Arrays.sort(scores);
+        for (int i = 0; i < NUM_SCORES / 2; i++) {
+            float score = scores[i];
+            scores[i] = scores[NUM_SCORES - 1 - i];
+            scores[NUM_SCORES - 1 - i] = score;
+        }
+    }
+
+    private ByteBuffer encode(PostingCodec codec) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream outputStream = new DataOutputStream(bytes);
+        int byteLength = codec.encode(documents, scores, NUM_SCORES, outputStream);
+        outputStream.flush();
+        assertEquals(bytes.size(), byteLength);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    @Test
+    public void testRawRoundTrip() throws IOException {
+        PostingCodec codec = new RawPostingCodec();
+        int[] decodedDocuments = new int[NUM_SCORES];
+        float[] decodedScores = new float[NUM_SCORES];
+        codec.decode(encode(codec), NUM_SCORES, decodedDocuments, decodedScores);
+        assertArrayEquals(documents, decodedDocuments);
+        assertTrue(Arrays.equals(scores, decodedScores));
+    }
+
+    @Test
+    public void testQuantizedRoundTrip() throws IOException {
+        PostingCodec codec = new QuantizedPostingCodec();
+        ByteBuffer encoded = encode(codec);
+        assertTrue("quantized postings should be smaller than raw postings", encoded.remaining() < NUM_SCORES * 8 / 2);
+
+        int[] decodedDocuments = new int[NUM_SCORES];
+        float[] decodedScores = new float[NUM_SCORES];
+        codec.decode(encoded, NUM_SCORES, decodedDocuments, decodedScores);
+        assertFalse(encoded.hasRemaining());
+
+        Map<Integer, Float> expectedScores = new HashMap<>();
+        for (int i = 0; i < NUM_SCORES; i++) {
+            expectedScores.put(documents[i], scores[i]);
+        }
+        //Levels are logarithmic, so the error is relative to the score
+        double relativeTolerance = Math.pow(scores[0] / scores[NUM_SCORES - 1], 1.0 / 254) - 1;
+        assertEquals(scores[0], decodedScores[0], 0);
+        assertEquals(scores[NUM_SCORES - 1], decodedScores[NUM_SCORES - 1], 0);
+        for (int i = 0; i < NUM_SCORES; i++) {
+            assertTrue(expectedScores.containsKey(decodedDocuments[i]));
+            float expectedScore = expectedScores.get(decodedDocuments[i]);
+            assertEquals(expectedScore, decodedScores[i], expectedScore * relativeTolerance);
+            if (i > 0) {
+                assertTrue("decoded scores must stay sorted", decodedScores[i] <= decodedScores[i - 1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.dreamcloud.esa;
+
+import java.util.Random;
+
+import com.dreamcloud.esa.tfidf.*;
+import com.dreamcloud.esa.tfidf.kernel.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScoringKernelTest {
+    private static TermScores randomScores(Random random) {
+        TermScores scores = new TermScores();
+        scores.size = 1 + random.nextInt(500);
+        scores.ensureCapacity(scores.size);
+        for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+            scores.terms[termIdx] = "term" + termIdx;
+            //Mostly small, but some past the kernel's log table
+            scores.frequencies[termIdx] = random.nextInt(10) == 0 ? 1 + random.nextInt(1000) : 1 + random.nextInt(3);
+            scores.length += scores.frequencies[termIdx];
+            scores.scores[termIdx] = random.nextDouble() * 10;
+        }
+        return scores;
+    }
+
+    private static TermInfo termInfo(TermScores scores) {
+        TermInfo termInfo = new TermInfo();
+        termInfo.dl = scores.length;
+        termInfo.avgDl = 150;
+        return termInfo;
+    }
+
+    @Test
+    public void testKernelSelection() {
+        assertTrue(ScoringKernelFactory.getKernel(new BM25Calculator(new TfIdfCalculator("ltc"))) instanceof BM25LogarithmicCosineKernel);
+        assertTrue(ScoringKernelFactory.getKernel(new BM25Calculator(new TfIdfCalculator("lbc"))) instanceof BM25LogarithmicCosineKernel);
+        assertTrue(ScoringKernelFactory.getKernel(new BM25Calculator(new TfIdfCalculator("ltn"))) instanceof GenericScoringKernel);
+        assertTrue(ScoringKernelFactory.getKernel(new BM25Calculator(new TfIdfCalculator("atc"))) instanceof GenericScoringKernel);
+        assertTrue(ScoringKernelFactory.getKernel(new TfIdfCalculator("ltc")) instanceof GenericScoringKernel);
+    }
+
+    @Test
+    public void testSpecializedKernelMatchesGeneric() {
+        Random random = new Random(42);
+        for (String mode: new String[]{"ltc", "lbc"}) {
+            BM25Calculator calculator = new BM25Calculator(new TfIdfCalculator(mode), 1.5, 0.75, 0.25);
+            ScoringKernel generic = new GenericScoringKernel(calculator);
+            ScoringKernel specialized = ScoringKernelFactory.getKernel(calculator);
+            for (int documentIdx = 0; documentIdx < 100; documentIdx++) {
+                TermScores expected = randomScores(random);
+                TermScores actual = new TermScores();
+                actual.ensureCapacity(expected.size);
+                actual.size = expected.size;
+                actual.length = expected.length;
+                System.arraycopy(expected.frequencies, 0, actual.frequencies, 0, expected.size);
+                System.arraycopy(expected.scores, 0, actual.scores, 0, expected.size);
+
+                generic.score(expected, termInfo(expected));
+                specialized.score(actual, termInfo(actual));
+                for (int termIdx = 0; termIdx < expected.size; termIdx++) {
+                    assertEquals(expected.scores[termIdx], actual.scores[termIdx], 1e-12);
+                }
+            }
+        }
+    }
+}
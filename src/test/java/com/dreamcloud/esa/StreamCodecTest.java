@@ -0,0 +1,86 @@
+package com.dreamcloud.esa;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import com.dreamcloud.esa.tools.BZipFileReader;
+import com.dreamcloud.esa.tools.ParallelBZip2InputStream;
+import com.dreamcloud.esa.tools.ParallelBZip2OutputStream;
+import com.dreamcloud.esa.tools.StreamCodec;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StreamCodecTest {
+    private File file;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("stream-codec", ".xml");
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder("<docs>");
+        while (text.length() < 300000) {
+            text.append("<doc><title>Ärticle ").append(random.nextInt(100000)).append("</title></doc>\n");
+        }
+        data = text.append("</docs>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private void write(StreamCodec codec, int threadCount) throws IOException {
+        write(codec.getOutputStream(new FileOutputStream(file), threadCount));
+    }
+
+    private void write(OutputStream outputStream) throws IOException {
+        try (outputStream) {
+            //Odd sized writes so chunks don't line up with them
+            for (int offset = 0; offset < data.length; offset += 7919) {
+                outputStream.write(data, offset, Math.min(7919, data.length - offset));
+            }
+        }
+    }
+
+    private byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        inputStream.close();
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (StreamCodec codec: StreamCodec.values()) {
+            write(codec, 1);
+            assertEquals(codec, StreamCodec.detect(file));
+            assertArrayEquals(codec.label, data, readAll(BZipFileReader.getInputStream(file)));
+        }
+    }
+
+    @Test
+    public void testParallelBZip2() throws IOException {
+        //Small chunks so the file holds a few streams
+        write(new ParallelBZip2OutputStream(new FileOutputStream(file), 3, 64 * 1024));
+        assertEquals(StreamCodec.BZIP2, StreamCodec.detect(file));
+        //Standard readers see a multistream file
+        assertArrayEquals(data, readAll(new BZip2CompressorInputStream(new BufferedInputStream(new FileInputStream(file)), true)));
+        assertArrayEquals(data, readAll(new ParallelBZip2InputStream(file, 2)));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        data = new byte[0];
+        write(StreamCodec.BZIP2, 2);
+        assertArrayEquals(data, readAll(BZipFileReader.getSequentialInputStream(file)));
+    }
+}
@@ -0,0 +1,205 @@
+package com.dreamcloud.esa;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import com.dreamcloud.esa.fs.*;
+import com.dreamcloud.esa.tfidf.*;
+import com.dreamcloud.esa.tfidf.strategy.InverseDocumentFrequencyStrategy;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TermDictionaryTest {
+    private File termIndexFile;
+    private Map<String, Integer> documentFrequencies = new HashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        termIndexFile = File.createTempFile("term-index", ".dc");
+        //Shared prefixes, multi-byte and supplementary characters, spread over many blocks
+        Random random = new Random(42);
+        String[] stems = {"index", "indexer", "ind", "über", "naïve", "😀smile", "�replacement", "z"};
+        for (int termIdx = 0; termIdx < 1000; termIdx++) {
+            documentFrequencies.put(stems[termIdx % stems.length] + termIdx, 1 + random.nextInt(100000));
+        }
+        documentFrequencies.put("a", 1);
+
+        TermIndexWriter termIndexWriter = new TermIndexWriter(100, 10);
+        termIndexWriter.setIdfModes("tb");
+        termIndexWriter.open(termIndexFile);
+        for (Map.Entry<String, Integer> entry: documentFrequencies.entrySet()) {
+            termIndexWriter.writeTerm(entry.getKey(), entry.getValue());
+        }
+        termIndexWriter.close();
+    }
+
+    @After
+    public void tearDown() {
+        termIndexFile.delete();
+    }
+
+    private TermIndex readIndex() throws IOException {
+        TermIndexReader termIndexReader = new TermIndexReader();
+        termIndexReader.open(termIndexFile);
+        TermIndex termIndex = termIndexReader.readIndex();
+        termIndexReader.close();
+        return termIndex;
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        TermIndex termIndex = readIndex();
+        for (Map.Entry<String, Integer> entry: documentFrequencies.entrySet()) {
+            TermIndexEntry termIndexEntry = termIndex.getEntry(entry.getKey());
+            assertNotNull(entry.getKey(), termIndexEntry);
+            assertEquals(entry.getKey(), termIndexEntry.term);
+            assertEquals((int) entry.getValue(), termIndexEntry.documentFrequency);
+            assertEquals(entry.getValue() * FileSystem.DOCUMENT_SCORE_BYTES, termIndexEntry.byteLength);
+        }
+        for (String missing: new String[]{"", "0", "b", "index", "index1", "indexer99999", "😀", "zz", "￿"}) {
+            assertNull(missing, termIndex.getEntry(missing));
+        }
+    }
+
+    @Test
+    public void testTerms() throws IOException {
+        Set<String> terms = readIndex().getTerms();
+        assertEquals(documentFrequencies.size(), terms.size());
+        assertEquals(documentFrequencies.keySet(), terms);
+        assertEquals(terms, documentFrequencies.keySet());
+        assertTrue(terms.contains("a"));
+        assertFalse(terms.contains("b"));
+        assertFalse(terms.contains(1));
+    }
+
+    @Test
+    public void testDocumentFrequencies() throws IOException {
+        Map<String, Integer> frequencies = readIndex().getDocumentFrequencies();
+        assertEquals(documentFrequencies.size(), frequencies.size());
+        assertEquals(documentFrequencies, new HashMap<>(frequencies));
+        assertTrue(frequencies.containsKey("a"));
+        assertFalse(frequencies.containsKey("b"));
+        assertNull(frequencies.get("b"));
+    }
+
+    @Test
+    public void testTermIds() throws IOException {
+        TermIndex termIndex = readIndex();
+        TermIdDictionary termIds = termIndex.getTermIds();
+        assertSame(termIds, termIndex.getTermIds());
+        assertEquals(documentFrequencies.size(), termIds.size());
+        Set<Integer> ids = new HashSet<>();
+        for (Map.Entry<String, Integer> entry: documentFrequencies.entrySet()) {
+            //Lookups read a prefix of a larger buffer, like an analyzer's term buffer
+            char[] buffer = Arrays.copyOf(entry.getKey().toCharArray(), entry.getKey().length() + 8);
+            int termId = termIds.getId(buffer, entry.getKey().length());
+            assertTrue(entry.getKey(), termId >= 0 && termId < termIds.size());
+            assertTrue(ids.add(termId));
+            assertEquals(entry.getKey(), termIds.getTerm(termId));
+            assertEquals((int) entry.getValue(), termIds.getDocumentFrequency(termId));
+            TermIndexEntry termIndexEntry = termIndex.getEntry(entry.getKey());
+            assertEquals(termIndexEntry.offset, termIds.getOffset(termId));
+            assertEquals(termIndexEntry.numScores, termIds.getNumScores(termId));
+            assertEquals(termIndexEntry.byteLength, termIds.getByteLength(termId));
+        }
+        for (String missing: new String[]{"", "0", "b", "index", "index1", "indexer99999", "😀", "zz", "￿"}) {
+            assertEquals(missing, -1, termIds.getId(missing));
+        }
+    }
+
+    @Test
+    public void testOffsetsFollowWriteOrder() throws IOException {
+        TermIndexReader termIndexReader = new TermIndexReader();
+        termIndexReader.open(termIndexFile);
+        TermDictionary dictionary = termIndexReader.mapDictionary();
+        //The terms section is still in write order, the dictionary must agree with it
+        TermIndexEntry entry;
+        while ((entry = termIndexReader.readTerm()) != null) {
+            assertEquals(entry.offset, dictionary.getEntry(entry.term).offset);
+        }
+        termIndexReader.close();
+    }
+
+    @Test
+    public void testIdfTables() throws IOException {
+        TermIndex termIndex = readIndex();
+        TermIdDictionary termIds = termIndex.getTermIds();
+        CollectionInfo collectionInfo = new CollectionInfo(termIndex.getDocumentCount(), termIndex.getAverageDocumentLength(), termIndex.getDocumentFrequencies());
+        collectionInfo.setIdfTables(termIndex.getIdfTables());
+        assertEquals(new HashSet<>(Arrays.asList('t', 'b')), termIndex.getIdfTables().keySet());
+        //'p' isn't stored, so its table is computed from the dictionary
+        for (char idfMode: new char[]{'t', 'b', 'p'}) {
+            float[] idfTable = collectionInfo.getIdfTable(idfMode, termIds);
+            assertEquals(termIds.size(), idfTable.length);
+            InverseDocumentFrequencyStrategy idfStrategy = TfIdfCalculator.getIdfStrategy(idfMode);
+            for (Map.Entry<String, Integer> entry: documentFrequencies.entrySet()) {
+                assertEquals((float) idfStrategy.idf(100, entry.getValue()), idfTable[termIds.getId(entry.getKey())], 0);
+            }
+        }
+
+        //Scoring with the tables matches scoring with the document frequencies
+        TfIdfAnalyzer analyzer = new TfIdfAnalyzer(new BM25Calculator(new TfIdfCalculator("lbc")), new StandardAnalyzer(), collectionInfo);
+        String text = "index0 index8 index8 a indexer1 z7 missing";
+        Map<String, Double> expected = new HashMap<>();
+        for (TfIdfScore score: analyzer.getTfIdfScores(text)) {
+            expected.put(score.getTerm(), score.getScore());
+        }
+        TfIdfScore[] scores = analyzer.getTfIdfScores(text, termIds);
+        assertEquals(expected.size(), scores.length);
+        for (TfIdfScore score: scores) {
+            assertEquals(expected.get(score.getTerm()), score.getScore(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testLegacyIndex() throws IOException {
+        //Version 1: no header, the document count and average length, then the terms with 32 bit offsets
+        File legacyFile = File.createTempFile("legacy-term-index", ".dc");
+        String[] terms = {"index", "indexer", "zebra"};
+        int[] frequencies = {12, 5, 40};
+        int[] offsets = {0, 12 * FileSystem.DOCUMENT_SCORE_BYTES, 17 * FileSystem.DOCUMENT_SCORE_BYTES};
+        try (DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(legacyFile))) {
+            outputStream.writeInt(100);
+            outputStream.writeFloat(37.5f);
+            for (int termIdx = 0; termIdx < terms.length; termIdx++) {
+                byte[] termBytes = terms[termIdx].getBytes();
+                outputStream.writeInt(termBytes.length);
+                outputStream.write(termBytes);
+                outputStream.writeInt(frequencies[termIdx]);
+                outputStream.writeInt(offsets[termIdx]);
+                outputStream.writeInt(frequencies[termIdx]);
+            }
+        }
+
+        try {
+            TermIndexReader termIndexReader = new TermIndexReader();
+            termIndexReader.open(legacyFile);
+            assertEquals(FileSystem.TERM_INDEX_LEGACY_VERSION, termIndexReader.getVersion());
+            assertNull(termIndexReader.mapDictionary());
+            TermIndex termIndex = termIndexReader.readIndex();
+            termIndexReader.close();
+
+            assertEquals(100, termIndex.getDocumentCount());
+            assertEquals(37.5, termIndex.getAverageDocumentLength(), 0);
+            assertTrue(termIndex.getIdfTables().isEmpty());
+            assertEquals(new HashSet<>(Arrays.asList(terms)), termIndex.getTerms());
+            for (int termIdx = 0; termIdx < terms.length; termIdx++) {
+                TermIndexEntry entry = termIndex.getEntry(terms[termIdx]);
+                assertEquals(terms[termIdx], entry.term);
+                assertEquals(frequencies[termIdx], entry.documentFrequency);
+                assertEquals(offsets[termIdx], entry.offset);
+                assertEquals(frequencies[termIdx], entry.numScores);
+                assertEquals(frequencies[termIdx] * FileSystem.DOCUMENT_SCORE_BYTES, entry.byteLength);
+            }
+            assertNull(termIndex.getEntry("missing"));
+        } finally {
+            legacyFile.delete();
+        }
+    }
+}
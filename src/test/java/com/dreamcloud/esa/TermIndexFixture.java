@@ -0,0 +1,93 @@
+package com.dreamcloud.esa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+import com.dreamcloud.esa.fs.DocumentScoreMappedReader;
+import com.dreamcloud.esa.fs.TermIndex;
+import com.dreamcloud.esa.fs.TermIndexReader;
+import com.dreamcloud.esa.tfidf.CollectionInfo;
+import com.dreamcloud.esa.tfidf.CollectionWriter;
+import com.dreamcloud.esa.tfidf.ScoreReader;
+import com.dreamcloud.esa.tfidf.TfIdfScore;
+
+/**
+ * Test fixture: a temporary directory and a generated collection to index into it.
+ * Document n has "term" + k for every k up to the term count that divides n, so the low terms have the longest posting lists.
+ */
+class TermIndexFixture {
+    final File directory;
+    final Random random = new Random(42);
+    final TfIdfScore[][] documents;
+    final List<String> texts = new ArrayList<>();
+
+    TermIndexFixture(String name, int documentCount, int termCount, ToDoubleFunction<Random> scores) throws IOException {
+        directory = Files.createTempDirectory(name).toFile();
+        documents = new TfIdfScore[documentCount][];
+        for (int documentId = 0; documentId < documentCount; documentId++) {
+            TfIdfScore[] documentScores = new TfIdfScore[termCount];
+            int documentTerms = 0;
+            for (int termIdx = 1; termIdx <= termCount; termIdx++) {
+                if (documentId % termIdx == 0) {
+                    documentScores[documentTerms++] = new TfIdfScore(documentId, "term" + termIdx, scores.applyAsDouble(random));
+                }
+            }
+            documents[documentId] = Arrays.copyOf(documentScores, documentTerms);
+        }
+    }
+
+    /**
+     * Adds texts of 1 to 15 words picked from term1 up to the given term, which may be past the indexed ones.
+     */
+    void addTexts(int count, int maxTerm) {
+        for (int textIdx = 0; textIdx < count; textIdx++) {
+            StringBuilder text = new StringBuilder();
+            int words = 1 + random.nextInt(15);
+            for (int wordIdx = 0; wordIdx < words; wordIdx++) {
+                text.append("term").append(1 + random.nextInt(maxTerm)).append(' ');
+            }
+            texts.add(text.toString());
+        }
+    }
+
+    void write(CollectionWriter writer) throws IOException {
+        writer.writeCollectionInfo(new CollectionInfo(documents.length, 10));
+        for (int documentId = 0; documentId < documents.length; documentId++) {
+            writer.writeDocumentScores(documentId, documents[documentId]);
+        }
+        writer.close();
+    }
+
+    File getTermIndexFile(String name) {
+        return new File(directory, name + "-index.dc");
+    }
+
+    File getDocumentScoreFile(String name) {
+        return new File(directory, name + "-scores.dc");
+    }
+
+    TermIndex readIndex(String name) throws IOException {
+        TermIndexReader termIndexReader = new TermIndexReader();
+        termIndexReader.open(getTermIndexFile(name));
+        TermIndex termIndex = termIndexReader.readIndex();
+        termIndexReader.close();
+        return termIndex;
+    }
+
+    ScoreReader getScoreReader(String name) throws IOException {
+        return new ScoreReader(readIndex(name), new DocumentScoreMappedReader(getDocumentScoreFile(name)));
+    }
+
+    void delete() {
+        for (File file: directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,72 @@
+package com.dreamcloud.esa;
+
+import java.util.*;
+
+import com.dreamcloud.esa.tools.TermTable;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TermTableTest {
+    @Test
+    public void testAddAndFind() {
+        TermTable table = new TermTable();
+        List<String> terms = new ArrayList<>();
+        for (int termIdx = 0; termIdx < 5000; termIdx++) {
+            String term = (termIdx % 3 == 0 ? "über" : "term") + termIdx;
+            terms.add(term);
+            assertEquals(termIdx, table.add(term));
+        }
+        assertEquals(5000, table.size());
+        for (int termIdx = 0; termIdx < terms.size(); termIdx++) {
+            //Only the first length chars of the buffer are the term
+            char[] buffer = Arrays.copyOf(terms.get(termIdx).toCharArray(), 64);
+            assertEquals(termIdx, table.find(buffer, terms.get(termIdx).length()));
+            assertEquals(termIdx, table.add(terms.get(termIdx)));
+            assertEquals(terms.get(termIdx), table.getTerm(termIdx));
+        }
+        assertEquals(5000, table.size());
+        assertEquals(-1, table.find("term3"));
+        assertEquals(-1, table.find(""));
+        assertEquals(-1, table.find("term"));
+    }
+
+    @Test
+    public void testOtherTable() {
+        TermTable vocabulary = new TermTable();
+        vocabulary.add("alpha");
+        vocabulary.add("beta");
+        TermTable document = new TermTable();
+        document.add("beta");
+        document.add("gamma");
+        assertEquals(1, vocabulary.find(document, 0));
+        assertEquals(-1, vocabulary.find(document, 1));
+        assertEquals(2, vocabulary.add(document, 1));
+        assertEquals("gamma", vocabulary.getTerm(2));
+    }
+
+    @Test
+    public void testClear() {
+        TermTable table = new TermTable();
+        for (int termIdx = 0; termIdx < 100; termIdx++) {
+            table.add("term" + termIdx);
+        }
+        assertEquals("term5", table.getTerm(5));
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(-1, table.find("term5"));
+        assertEquals(0, table.add("other"));
+        assertEquals("other", table.getTerm(0));
+
+        //Cleared again after growing, every term is gone and can be added back
+        for (int round = 0; round < 3; round++) {
+            table.clear();
+            for (int termIdx = 0; termIdx < 1000; termIdx++) {
+                assertEquals(-1, table.find("term" + termIdx));
+                assertEquals(termIdx, table.add("term" + termIdx));
+            }
+            for (int termIdx = 0; termIdx < 1000; termIdx++) {
+                assertEquals(termIdx, table.find("term" + termIdx));
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.dreamcloud.esa;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.dreamcloud.esa.annoatation.handler.XmlReadingHandler;
+import com.dreamcloud.esa.tfidf.*;
+import com.dreamcloud.esa.tfidf.kernel.GenericScoringKernel;
+import com.dreamcloud.esa.tfidf.kernel.ScoringKernel;
+import com.dreamcloud.esa.tfidf.kernel.ScoringKernelFactory;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+
+/**
+ * Measures the time and heap allocated per document by TfIdfAnalyzer, the way TfIdfWriter scores articles.
+ * getTfIdfScores copies every result into TfIdfScore objects, getTermScores reuses the thread's arrays.
+ * Then, for the modes with a specialized scoring kernel, compares it to the generic kernel:
+ * on its own (the idf already looked up, as the analyzer hands it over) and within getTermScores.
+ *
+ * Not a unit test: run the main method, e.g. with exec:java or from the IDE.
+ * Pass an article dump (XML or records, as written by the annotators) to score real articles,
+ * otherwise articles are generated with Zipf distributed terms.
+ */
+public class TfIdfAnalyzerBenchmark {
+    private static final int MAX_ARTICLES = 5000;
+    private static final int ROUNDS = 5;
+    private static final String[] KERNEL_MODES = {"ltc", "lbc"};
+
+    public static void main(String[] args) throws Exception {
+        List<String> articles = args.length > 0 ? readArticles(new File(args[0])) : generateArticles();
+
+        //Document frequencies from the same articles, like the document frequency pass before indexing
+        TermStatistics statistics = new TermStatistics();
+        StandardAnalyzer analyzer = new StandardAnalyzer();
+        for (String article: articles) {
+            statistics.addDocument(analyzer, article);
+        }
+        TfIdfAnalyzer tfIdfAnalyzer = new TfIdfAnalyzer(new BM25Calculator(new TfIdfCalculator("ltc")), analyzer, statistics.getCollectionInfo());
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        System.out.println("Scoring " + articles.size() + " articles (" + statistics.getTermCount() + " terms):");
+        System.out.println("----------------------------------------");
+        for (int round = 0; round < ROUNDS; round++) {
+            double checksum = 0;
+            long allocated = threadBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (String article: articles) {
+                for (TfIdfScore score: tfIdfAnalyzer.getTfIdfScores(article)) {
+                    checksum += score.getScore();
+                }
+            }
+            long scoreTime = System.nanoTime() - start;
+            long scoreBytes = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            double arrayChecksum = 0;
+            allocated = threadBean.getThreadAllocatedBytes(threadId);
+            start = System.nanoTime();
+            for (String article: articles) {
+                TermScores scores = tfIdfAnalyzer.getTermScores(article);
+                for (int termIdx = 0; termIdx < scores.size; termIdx++) {
+                    arrayChecksum += scores.scores[termIdx];
+                }
+            }
+            long arrayTime = System.nanoTime() - start;
+            long arrayBytes = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            System.out.println("Round " + (round + 1) + ":");
+            System.out.println("getTfIdfScores:\t" + (scoreTime / articles.size() / 1000) + "us\t" + (scoreBytes / articles.size()) + " bytes/article\t(" + checksum + ")");
+            System.out.println("getTermScores:\t" + (arrayTime / articles.size() / 1000) + "us\t" + (arrayBytes / articles.size()) + " bytes/article\t(" + arrayChecksum + ")");
+        }
+        System.out.println("----------------------------------------");
+
+        for (String mode: KERNEL_MODES) {
+            benchmarkKernels(mode, articles, analyzer, statistics);
+        }
+    }
+
+    private static void benchmarkKernels(String mode, List<String> articles, StandardAnalyzer analyzer, TermStatistics statistics) throws Exception {
+        BM25Calculator calculator = new BM25Calculator(new TfIdfCalculator(mode));
+        CollectionInfo collectionInfo = statistics.getCollectionInfo();
+        ScoringKernel[] kernels = {new GenericScoringKernel(calculator), ScoringKernelFactory.getKernel(calculator)};
+        TfIdfAnalyzer[] tfIdfAnalyzers = new TfIdfAnalyzer[kernels.length];
+        for (int kernelIdx = 0; kernelIdx < kernels.length; kernelIdx++) {
+            tfIdfAnalyzers[kernelIdx] = new TfIdfAnalyzer(calculator, analyzer, collectionInfo, kernels[kernelIdx]);
+        }
+
+        //The kernel's input for every article, so the kernel can be timed without the analysis and idf lookups
+        List<DocumentTerms> documents = new ArrayList<>();
+        List<double[]> idfs = new ArrayList<>();
+        for (String article: articles) {
+            DocumentTerms documentTerms = tfIdfAnalyzers[0].getTermFrequencies(article);
+            double[] documentIdfs = new double[documentTerms.terms.length];
+            for (int termIdx = 0; termIdx < documentIdfs.length; termIdx++) {
+                documentIdfs[termIdx] = calculator.idf(collectionInfo.getDocumentCount(), collectionInfo.getDocumentFrequency(documentTerms.terms[termIdx]));
+            }
+            documents.add(documentTerms);
+            idfs.add(documentIdfs);
+        }
+
+        System.out.println("Scoring kernels for " + mode + " under BM25:");
+        System.out.println("----------------------------------------");
+        TermScores scores = new TermScores();
+        TermInfo termInfo = new TermInfo();
+        for (int round = 0; round < ROUNDS; round++) {
+            System.out.println("Round " + (round + 1) + ":");
+            for (int kernelIdx = 0; kernelIdx < kernels.length; kernelIdx++) {
+                ScoringKernel kernel = kernels[kernelIdx];
+                double checksum = 0;
+                long start = System.nanoTime();
+                for (int documentIdx = 0; documentIdx < documents.size(); documentIdx++) {
+                    DocumentTerms documentTerms = documents.get(documentIdx);
+                    int size = documentTerms.terms.length;
+                    scores.ensureCapacity(size);
+                    scores.size = size;
+                    scores.length = documentTerms.length;
+                    System.arraycopy(documentTerms.terms, 0, scores.terms, 0, size);
+                    System.arraycopy(documentTerms.frequencies, 0, scores.frequencies, 0, size);
+                    System.arraycopy(idfs.get(documentIdx), 0, scores.scores, 0, size);
+                    termInfo.dl = documentTerms.length;
+                    termInfo.avgDl = collectionInfo.getAverageDocumentLength();
+                    kernel.score(scores, termInfo);
+                    checksum += scores.scores[0];
+                }
+                long kernelTime = System.nanoTime() - start;
+
+                double analyzerChecksum = 0;
+                start = System.nanoTime();
+                for (String article: articles) {
+                    analyzerChecksum += tfIdfAnalyzers[kernelIdx].getTermScores(article).scores[0];
+                }
+                long analyzerTime = System.nanoTime() - start;
+
+                String name = kernel.getClass().getSimpleName();
+                System.out.println(name + ":\t" + (kernelTime / documents.size()) + "ns kernel\t" + (analyzerTime / articles.size() / 1000) + "us getTermScores\t(" + checksum + ", " + analyzerChecksum + ")");
+            }
+        }
+        System.out.println("----------------------------------------");
+    }
+
+    private static List<String> readArticles(File file) throws Exception {
+        List<String> articles = new ArrayList<>();
+        XmlReadingHandler reader = new XmlReadingHandler() {
+            protected void handleDocument(Map<String, String> xmlFields) {
+                if (articles.size() < MAX_ARTICLES && xmlFields.get("text") != null) {
+                    articles.add(xmlFields.get("text"));
+                }
+            }
+        };
+        reader.parse(file);
+        return articles;
+    }
+
+    private static List<String> generateArticles() {
+        Random random = new Random(42);
+        Map<Integer, String> words = new HashMap<>();
+        List<String> articles = new ArrayList<>();
+        for (int articleIdx = 0; articleIdx < MAX_ARTICLES; articleIdx++) {
+            StringBuilder text = new StringBuilder();
+            int length = 100 + random.nextInt(1500);
+            for (int wordIdx = 0; wordIdx < length; wordIdx++) {
+                int rank = (int) Math.pow(200000, random.nextDouble());
+                text.append(words.computeIfAbsent(rank, r -> "w" + Integer.toString(r * 7919, 36))).append(' ');
+            }
+            articles.add(text.toString());
+        }
+        return articles;
+    }
+}
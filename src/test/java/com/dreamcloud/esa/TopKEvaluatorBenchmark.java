@@ -0,0 +1,120 @@
+package com.dreamcloud.esa;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.dreamcloud.esa.fs.DocumentScoreMappedReader;
+import com.dreamcloud.esa.fs.TermIndex;
+import com.dreamcloud.esa.fs.TermIndexReader;
+import com.dreamcloud.esa.tfidf.*;
+import com.dreamcloud.esa.vectorizer.PruneOptions;
+import com.dreamcloud.esa.vectorizer.TopKEvaluator;
+import com.dreamcloud.esa.vectorizer.VectorBuilder;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+
+/**
+ * Compares building top-k vectors by accumulating every posting with the early terminating TopKEvaluator,
+ * for queries of a few lengths, over a generated index with Zipf distributed terms.
+ *
+ * Not a unit test: run the main method, e.g. with exec:java or from the IDE.
+ */
+public class TopKEvaluatorBenchmark {
+    private static final int NUM_DOCS = 300000;
+    private static final int NUM_TERMS = 20000;
+    private static final int TERMS_PER_DOC = 40;
+    private static final int QUERIES = 500;
+    private static final int VECTOR_LIMIT = 100;
+    private static final int[] QUERY_LENGTHS = {3, 20, 200};
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        File directory = Files.createTempDirectory("top-k-benchmark").toFile();
+        File termIndexFile = new File(directory, "term-index.dc");
+        File documentScoreFile = new File(directory, "term-scores.dc");
+        Random random = new Random(42);
+        DiskCollectionWriter writer = new DiskCollectionWriter(termIndexFile, documentScoreFile);
+        writer.setIdfModes("t");
+        writer.writeCollectionInfo(new CollectionInfo(NUM_DOCS, TERMS_PER_DOC));
+        for (int documentId = 0; documentId < NUM_DOCS; documentId++) {
+            //Zipf distributed terms, each once per document, with a few high scores and a long tail like tf-idf
+            Set<Integer> terms = new HashSet<>();
+            while (terms.size() < TERMS_PER_DOC) {
+                terms.add((int) Math.pow(NUM_TERMS, random.nextDouble()));
+            }
+            TfIdfScore[] scores = new TfIdfScore[TERMS_PER_DOC];
+            int scoreIdx = 0;
+            for (int term: terms) {
+                scores[scoreIdx++] = new TfIdfScore(documentId, "w" + term, Math.pow(random.nextDouble(), 4));
+            }
+            writer.writeDocumentScores(documentId, scores);
+        }
+        writer.close();
+
+        TermIndexReader termIndexReader = new TermIndexReader();
+        termIndexReader.open(termIndexFile);
+        TermIndex termIndex = termIndexReader.readIndex();
+        termIndexReader.close();
+        ScoreReader scoreReader = new ScoreReader(termIndex, new DocumentScoreMappedReader(documentScoreFile));
+        CollectionInfo collectionInfo = new CollectionInfo(termIndex.getDocumentCount(), termIndex.getAverageDocumentLength(), termIndex.getDocumentFrequencies());
+        collectionInfo.setIdfTables(termIndex.getIdfTables());
+        TfIdfAnalyzer analyzer = new TfIdfAnalyzer(new BM25Calculator(new TfIdfCalculator("ltc")), new StandardAnalyzer(), collectionInfo);
+
+        PruneOptions exhaustiveOptions = new PruneOptions();
+        exhaustiveOptions.vectorLimit = VECTOR_LIMIT;
+        PruneOptions earlyOptions = new PruneOptions();
+        earlyOptions.vectorLimit = VECTOR_LIMIT;
+        earlyOptions.earlyTermination = true;
+        VectorBuilder exhaustiveBuilder = new VectorBuilder(scoreReader, collectionInfo, analyzer, null, exhaustiveOptions);
+        VectorBuilder earlyBuilder = new VectorBuilder(scoreReader, collectionInfo, analyzer, null, earlyOptions);
+
+        for (int queryLength: QUERY_LENGTHS) {
+            List<String> queries = new ArrayList<>();
+            for (int queryIdx = 0; queryIdx < QUERIES; queryIdx++) {
+                StringBuilder query = new StringBuilder();
+                for (int wordIdx = 0; wordIdx < queryLength; wordIdx++) {
+                    query.append('w').append((int) Math.pow(NUM_TERMS, random.nextDouble())).append(' ');
+                }
+                queries.add(query.toString());
+            }
+
+            System.out.println(queryLength + " term queries, top " + VECTOR_LIMIT + ":");
+            System.out.println("----------------------------------------");
+            for (int round = 0; round < ROUNDS; round++) {
+                double checksum = 0;
+                long start = System.nanoTime();
+                for (String query: queries) {
+                    checksum += exhaustiveBuilder.build(query).getNorm();
+                }
+                long exhaustiveTime = System.nanoTime() - start;
+
+                double earlyChecksum = 0;
+                long scored = TopKEvaluator.getPostingsScored();
+                long checked = TopKEvaluator.getPostingsChecked();
+                long skipped = TopKEvaluator.getPostingsSkipped();
+                start = System.nanoTime();
+                for (String query: queries) {
+                    earlyChecksum += earlyBuilder.build(query).getNorm();
+                }
+                long earlyTime = System.nanoTime() - start;
+
+                System.out.println("Round " + (round + 1) + ":");
+                System.out.println("exhaustive:\t" + (exhaustiveTime / QUERIES / 1000) + "us/query\t(" + checksum + ")");
+                System.out.println("early:\t\t" + (earlyTime / QUERIES / 1000) + "us/query\t(" + earlyChecksum + ")");
+                System.out.println("\t\tscored " + (TopKEvaluator.getPostingsScored() - scored) / QUERIES
+                        + ", checked " + (TopKEvaluator.getPostingsChecked() - checked) / QUERIES
+                        + ", skipped " + (TopKEvaluator.getPostingsSkipped() - skipped) / QUERIES + " postings/query");
+            }
+            System.out.println("----------------------------------------");
+        }
+
+        for (File file: directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,176 @@
+package com.dreamcloud.esa;
+
+import java.io.IOException;
+import java.util.*;
+
+import com.dreamcloud.esa.fs.DocumentScoreMappedReader;
+import com.dreamcloud.esa.fs.TermIdDictionary;
+import com.dreamcloud.esa.fs.TermIndex;
+import com.dreamcloud.esa.tfidf.*;
+import com.dreamcloud.esa.vectorizer.ConceptVector;
+import com.dreamcloud.esa.vectorizer.PruneOptions;
+import com.dreamcloud.esa.vectorizer.TopKEvaluator;
+import com.dreamcloud.esa.vectorizer.VectorBuilder;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class VectorBuilderTest {
+    private TermIndexFixture fixture;
+    private TermIndex termIndex;
+    private ScoreReader scoreReader;
+    private List<String> texts;
+
+    //Counts the posting lists read, by id or by name
+    private static class CountingScoreReader implements DocumentScoreReader {
+        final DocumentScoreReader reader;
+        final boolean byId;
+        int postingsRead = 0;
+
+        CountingScoreReader(DocumentScoreReader reader, boolean byId) {
+            this.reader = reader;
+            this.byId = byId;
+        }
+
+        public int getDocumentFrequency(String term) throws IOException {
+            return reader.getDocumentFrequency(term);
+        }
+
+        public void getTfIdfScores(String term, Vector<TfIdfScore> outVector) throws IOException {
+            reader.getTfIdfScores(term, outVector);
+        }
+
+        public void getTfIdfScores(String[] terms, Vector<TfIdfScore> outVector) throws IOException {
+            reader.getTfIdfScores(terms, outVector);
+        }
+
+        public void getPostings(String term, PostingList outPostings) throws IOException {
+            postingsRead++;
+            reader.getPostings(term, outPostings);
+        }
+
+        public TermIdDictionary getTermIds() {
+            return byId ? reader.getTermIds() : null;
+        }
+
+        public void getPostings(int termId, PostingList outPostings) throws IOException {
+            postingsRead++;
+            reader.getPostings(termId, outPostings);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        fixture = new TermIndexFixture("vector-builder-test", 1000, 20, Random::nextDouble);
+        fixture.write(new DiskCollectionWriter(fixture.getTermIndexFile("term"), fixture.getDocumentScoreFile("term")));
+        termIndex = fixture.readIndex("term");
+        scoreReader = new ScoreReader(termIndex, new DocumentScoreMappedReader(fixture.getDocumentScoreFile("term")));
+
+        //term21 and up aren't in the index
+        fixture.addTexts(50, 25);
+        texts = fixture.texts;
+        texts.add("");
+    }
+
+    @After
+    public void tearDown() {
+        fixture.delete();
+    }
+
+    private VectorBuilder getBuilder(DocumentScoreReader reader, PruneOptions pruneOptions) {
+        CollectionInfo collectionInfo = new CollectionInfo(termIndex.getDocumentCount(), termIndex.getAverageDocumentLength(), termIndex.getDocumentFrequencies());
+        TfIdfAnalyzer analyzer = new TfIdfAnalyzer(new BM25Calculator(new TfIdfCalculator("ltc")), new StandardAnalyzer(), collectionInfo);
+        return new VectorBuilder(reader, collectionInfo, analyzer, null, pruneOptions);
+    }
+
+    private static void assertVectorEquals(ConceptVector expected, ConceptVector actual) {
+        assertEquals(expected.size(), actual.size());
+        assertArrayEquals(Arrays.copyOf(expected.getDocuments(), expected.size()), Arrays.copyOf(actual.getDocuments(), actual.size()));
+        assertArrayEquals(Arrays.copyOf(expected.getScores(), expected.size()), Arrays.copyOf(actual.getScores(), actual.size()), 0);
+    }
+
+    @Test
+    public void testEarlyTermination() throws Exception {
+        //Short texts have few terms, so their top concepts are found long before the end of the lists
+        List<String> earlyTexts = new ArrayList<>(texts);
+        earlyTexts.addAll(Arrays.asList("term1", "term1 term2", "term2 term3 term3", "term20 term19"));
+        //More terms than the evaluator takes
+        StringBuilder longText = new StringBuilder();
+        for (int termIdx = 1; termIdx <= 20; termIdx++) {
+            longText.append("term").append(termIdx).append(' ');
+        }
+        earlyTexts.add(longText.toString());
+        long skipped = TopKEvaluator.getPostingsSkipped();
+        long scored = TopKEvaluator.getPostingsScored();
+        for (int vectorLimit: new int[]{1, 10, 300, 5000}) {
+            for (int windowSize: new int[]{0, 20}) {
+                PruneOptions exhaustiveOptions = new PruneOptions();
+                exhaustiveOptions.windowSize = windowSize;
+                exhaustiveOptions.dropOff = 0.1f;
+                exhaustiveOptions.vectorLimit = vectorLimit;
+                PruneOptions earlyOptions = new PruneOptions();
+                earlyOptions.windowSize = windowSize;
+                earlyOptions.dropOff = 0.1f;
+                earlyOptions.vectorLimit = vectorLimit;
+                earlyOptions.earlyTermination = true;
+
+                for (boolean byId: new boolean[]{true, false}) {
+                    VectorBuilder exhaustiveBuilder = getBuilder(new CountingScoreReader(scoreReader, byId), exhaustiveOptions);
+                    VectorBuilder earlyBuilder = getBuilder(new CountingScoreReader(scoreReader, byId), earlyOptions);
+                    earlyBuilder.setBatchSize(16);
+                    List<ConceptVector> batchVectors = earlyBuilder.buildAll(earlyTexts);
+                    for (int textIdx = 0; textIdx < earlyTexts.size(); textIdx++) {
+                        ConceptVector expected = exhaustiveBuilder.build(earlyTexts.get(textIdx));
+                        assertVectorEquals(expected, earlyBuilder.build(earlyTexts.get(textIdx)));
+                        assertVectorEquals(expected, batchVectors.get(textIdx));
+                    }
+                }
+            }
+        }
+        assertTrue(TopKEvaluator.getPostingsScored() > scored);
+        assertTrue(TopKEvaluator.getPostingsSkipped() > skipped);
+    }
+
+    @Test
+    public void testBuildAll() throws Exception {
+        PruneOptions pruneOptions = new PruneOptions();
+        pruneOptions.windowSize = 20;
+        pruneOptions.dropOff = 0.1f;
+        pruneOptions.vectorLimit = 300;
+        for (boolean byId: new boolean[]{true, false}) {
+            for (PruneOptions options: new PruneOptions[]{null, pruneOptions}) {
+                VectorBuilder builder = getBuilder(new CountingScoreReader(scoreReader, byId), options);
+                List<ConceptVector> expected = new ArrayList<>();
+                for (String text: texts) {
+                    expected.add(builder.build(text));
+                }
+
+                CountingScoreReader reader = new CountingScoreReader(scoreReader, byId);
+                VectorBuilder batchBuilder = getBuilder(reader, options);
+                batchBuilder.setBatchSize(16);
+                List<ConceptVector> vectors = batchBuilder.buildAll(texts);
+                assertEquals(expected.size(), vectors.size());
+                for (int textIdx = 0; textIdx < texts.size(); textIdx++) {
+                    assertVectorEquals(expected.get(textIdx), vectors.get(textIdx));
+                }
+
+                //Each batch reads the postings of its unique terms once
+                int expectedReads = 0;
+                for (int batchStart = 0; batchStart < texts.size(); batchStart += 16) {
+                    Set<String> batchTerms = new HashSet<>();
+                    for (String text: texts.subList(batchStart, Math.min(batchStart + 16, texts.size()))) {
+                        for (String term: text.split(" ")) {
+                            if (!term.isEmpty() && (!byId || Integer.parseInt(term.substring(4)) <= 20)) {
+                                batchTerms.add(term);
+                            }
+                        }
+                    }
+                    expectedReads += batchTerms.size();
+                }
+                assertEquals(expectedReads, reader.postingsRead);
+            }
+        }
+    }
+}
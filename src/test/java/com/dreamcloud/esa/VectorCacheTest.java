@@ -0,0 +1,109 @@
+package com.dreamcloud.esa;
+
+import com.dreamcloud.esa.vectorizer.ConceptVector;
+import com.dreamcloud.esa.vectorizer.TinyLfuVectorCache;
+import com.dreamcloud.esa.vectorizer.VectorCacheKey;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class VectorCacheTest {
+    private static ConceptVector vector(int size) {
+        return new ConceptVector(new int[size], new float[size], size);
+    }
+
+    @Test
+    public void testKeys() {
+        assertEquals(new VectorCacheKey("some text", 1), new VectorCacheKey("some text", 1));
+        assertFalse(new VectorCacheKey("some text", 1).equals(new VectorCacheKey("some text", 2)));
+        assertFalse(new VectorCacheKey("some text", 1).equals(new VectorCacheKey("some other text", 1)));
+    }
+
+    @Test
+    public void testByteBudget() {
+        ConceptVector vector = vector(1000);
+        long vectorBytes = TinyLfuVectorCache.getByteSize(vector);
+        TinyLfuVectorCache cache = new TinyLfuVectorCache(vectorBytes * 10);
+        for (int documentIdx = 0; documentIdx < 20; documentIdx++) {
+            VectorCacheKey key = new VectorCacheKey("document " + documentIdx, 0);
+            //Ask for the second half twice so each one is more popular than the first half it displaces
+            cache.get(key);
+            if (documentIdx >= 10) {
+                cache.get(key);
+            }
+            cache.put(key, vector);
+            assertTrue(cache.getByteSize() <= vectorBytes * 10);
+        }
+        assertEquals(10, cache.getSize());
+        assertEquals(10, cache.getEvictions());
+        assertEquals(30, cache.getMisses());
+        assertNotNull(cache.get(new VectorCacheKey("document 19", 0)));
+        assertNull(cache.get(new VectorCacheKey("document 0", 0)));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testAdmission() {
+        ConceptVector vector = vector(1000);
+        TinyLfuVectorCache cache = new TinyLfuVectorCache(TinyLfuVectorCache.getByteSize(vector) * 10);
+        for (int documentIdx = 0; documentIdx < 10; documentIdx++) {
+            VectorCacheKey key = new VectorCacheKey("popular " + documentIdx, 0);
+            for (int lookupIdx = 0; lookupIdx < 5; lookupIdx++) {
+                cache.get(key);
+            }
+            cache.put(key, vector);
+        }
+        //A scan of one-off documents shouldn't flush out the popular ones
+        for (int documentIdx = 0; documentIdx < 1000; documentIdx++) {
+            VectorCacheKey key = new VectorCacheKey("scan " + documentIdx, 0);
+            cache.get(key);
+            cache.put(key, vector);
+        }
+        for (int documentIdx = 0; documentIdx < 10; documentIdx++) {
+            assertNotNull(cache.get(new VectorCacheKey("popular " + documentIdx, 0)));
+        }
+        assertEquals(1000, cache.getRejections());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void testRejectedVectorIsNotCached() {
+        ConceptVector vector = vector(1000);
+        TinyLfuVectorCache cache = new TinyLfuVectorCache(TinyLfuVectorCache.getByteSize(vector) * 10);
+        for (int documentIdx = 0; documentIdx < 10; documentIdx++) {
+            VectorCacheKey key = new VectorCacheKey("document " + documentIdx, 0);
+            cache.get(key);
+            cache.put(key, vector);
+        }
+        //Asked for as often as each cached vector, which isn't enough to displace one
+        VectorCacheKey newKey = new VectorCacheKey("new document", 0);
+        cache.get(newKey);
+        cache.put(newKey, vector);
+        assertEquals(1, cache.getRejections());
+        assertEquals(0, cache.getEvictions());
+        assertNull(cache.get(newKey));
+        assertEquals(10, cache.getSize());
+        for (int documentIdx = 0; documentIdx < 10; documentIdx++) {
+            assertNotNull(cache.get(new VectorCacheKey("document " + documentIdx, 0)));
+        }
+    }
+
+    @Test
+    public void testRejectedReplacementKeepsPrevious() {
+        ConceptVector vector = vector(1000);
+        long vectorBytes = TinyLfuVectorCache.getByteSize(vector);
+        TinyLfuVectorCache cache = new TinyLfuVectorCache(vectorBytes * 10);
+        for (int documentIdx = 0; documentIdx < 10; documentIdx++) {
+            VectorCacheKey key = new VectorCacheKey("document " + documentIdx, 0);
+            cache.get(key);
+            cache.put(key, vector);
+        }
+        //A larger vector for a cached key still has to displace others, and can't
+        VectorCacheKey key = new VectorCacheKey("document 5", 0);
+        cache.put(key, vector(2000));
+        assertEquals(1, cache.getRejections());
+        assertEquals(0, cache.getEvictions());
+        assertSame(vector, cache.get(key));
+        assertEquals(10, cache.getSize());
+        assertEquals(vectorBytes * 10, cache.getByteSize());
+    }
+}